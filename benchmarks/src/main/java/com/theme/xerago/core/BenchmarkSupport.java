@@ -0,0 +1,75 @@
+package com.theme.xerago.core;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Stands in for the OSGi and Sling Models injection the benchmarked classes
+ * get on an instance.
+ */
+public final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+        // static methods only
+    }
+
+    /**
+     * @return the declared field of the given name, made accessible
+     */
+    public static Field field(Class<?> type, String name) {
+        try {
+            Field field = type.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("No field " + name + " in " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Sets a private field, e.g. an {@code @Reference} or injected value.
+     */
+    public static void inject(Object target, String name, Object value) {
+        try {
+            field(target.getClass(), name).set(target, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads a private field, e.g. the state a benchmark resets between rounds.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(Object target, String name) {
+        try {
+            return (T) field(target.getClass(), name).get(target);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Calls a declared method by name and argument count, e.g. the protected
+     * {@code activate} and {@code deactivate} methods of a component.
+     */
+    public static Object invoke(Object target, String name, Object... args) {
+        for (Method method : target.getClass().getDeclaredMethods()) {
+            if (name.equals(method.getName()) && method.getParameterCount() == args.length) {
+                try {
+                    method.setAccessible(true);
+                    return method.invoke(target, args);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                } catch (InvocationTargetException e) {
+                    throw new IllegalStateException("Could not call " + name + " of " + target.getClass().getName(),
+                            e.getCause());
+                }
+            }
+        }
+        throw new IllegalStateException("No method " + name + " with " + args.length + " arguments in "
+                + target.getClass().getName());
+    }
+
+}
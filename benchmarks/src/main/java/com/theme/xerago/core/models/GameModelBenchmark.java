@@ -0,0 +1,167 @@
+package com.theme.xerago.core.models;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.api.resource.ValueMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.theme.xerago.core.BenchmarkSupport;
+import com.theme.xerago.core.services.impl.GameConfigCacheImpl;
+
+/**
+ * Builds the client-side JSON of the wheel spin and pick a gift games from
+ * multifields of several sizes, both through the full {@code @PostConstruct}
+ * of a new model and through the JSON builder alone, and renders a wheel
+ * whose configuration is already in the {@link GameConfigCacheImpl}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GameModelBenchmark {
+
+    private static final MethodHandle BUILD_SEGMENTS_JSON =
+            privateMethod(WheelSpinGameModel.class, "buildSegmentsJson");
+
+    private static final MethodHandle BUILD_PRIZES_JSON =
+            privateMethod(PickAGiftModel.class, "buildPrizesJson");
+
+    private static final MethodHandle ACTIVATE_CACHE = privateMethod(GameConfigCacheImpl.class, "activate",
+            MethodType.methodType(void.class, GameConfigCacheImpl.Config.class));
+
+    private static final Field SEGMENTS = BenchmarkSupport.field(WheelSpinGameModel.class, "segments");
+    private static final Field RESOURCE = BenchmarkSupport.field(WheelSpinGameModel.class, "resource");
+    private static final Field CONFIG_CACHE = BenchmarkSupport.field(WheelSpinGameModel.class, "configCache");
+
+    @Param({ "6", "100", "1000" })
+    private int items;
+
+    private List<WheelSpinGameSegments> segments;
+    private WheelSpinGameModel wheelSpin;
+    private PickAGiftModel pickAGift;
+    private Resource component;
+    private GameConfigCacheImpl configCache;
+
+    @Setup
+    public void setUp() throws Throwable {
+        segments = new ArrayList<>(items);
+        List<PickAGiftPrizes> prizes = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            WheelSpinGameSegments segment = new WheelSpinGameSegments();
+            BenchmarkSupport.inject(segment, "text", "Prize " + i);
+            BenchmarkSupport.inject(segment, "color", "#FF6B6B");
+            BenchmarkSupport.inject(segment, "value", "You won prize " + i);
+            BenchmarkSupport.inject(segment, "probability", 1.0 / items);
+            // every other segment has no code, so the default code is generated
+            BenchmarkSupport.inject(segment, "redeemCode", i % 2 == 0 ? "WHEEL" + i : null);
+            segments.add(segment);
+
+            PickAGiftPrizes prize = new PickAGiftPrizes();
+            BenchmarkSupport.inject(prize, "text", "Gift " + i);
+            BenchmarkSupport.inject(prize, "value", "You picked gift " + i);
+            BenchmarkSupport.inject(prize, "icon", "gift");
+            BenchmarkSupport.inject(prize, "color", "#4ECDC4");
+            BenchmarkSupport.inject(prize, "probability", 1);
+            BenchmarkSupport.inject(prize, "redeemCode", i % 2 == 0 ? "GIFT" + i : null);
+            prizes.add(prize);
+        }
+        wheelSpin = new WheelSpinGameModel();
+        BenchmarkSupport.inject(wheelSpin, "segments", segments);
+        pickAGift = new PickAGiftModel();
+        BenchmarkSupport.inject(pickAGift, "prizes", prizes);
+
+        component = new SyntheticResource(null, "/content/page/jcr:content/wheel",
+                "xeragotheme/components/wheel-spin-game") {
+            @Override
+            public ValueMap getValueMap() {
+                return ValueMap.EMPTY;
+            }
+        };
+        configCache = new GameConfigCacheImpl();
+        ACTIVATE_CACHE.invokeExact(configCache, (GameConfigCacheImpl.Config) new GameConfigCacheImpl.Config() {
+            @Override
+            public int maxEntries() {
+                return 1000;
+            }
+
+            @Override
+            public long idleMinutes() {
+                return 60;
+            }
+
+            @Override
+            public String[] resource_paths() {
+                return new String[] { "/content" };
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return GameConfigCacheImpl.Config.class;
+            }
+        });
+    }
+
+    @Benchmark
+    public String wheelSpinInit() throws IllegalAccessException {
+        WheelSpinGameModel model = new WheelSpinGameModel();
+        SEGMENTS.set(model, segments);
+        model.init();
+        return model.getSegmentsJson();
+    }
+
+    @Benchmark
+    public String wheelSpinInitCached() throws IllegalAccessException {
+        WheelSpinGameModel model = new WheelSpinGameModel();
+        SEGMENTS.set(model, segments);
+        RESOURCE.set(model, component);
+        CONFIG_CACHE.set(model, configCache);
+        model.init();
+        return model.getSegmentsJson();
+    }
+
+    @Benchmark
+    public String wheelSpinBuildSegmentsJson() throws Throwable {
+        BUILD_SEGMENTS_JSON.invokeExact(wheelSpin);
+        return wheelSpin.getSegmentsJson();
+    }
+
+    @Benchmark
+    public String pickAGiftBuildPrizesJson() throws Throwable {
+        BUILD_PRIZES_JSON.invokeExact(pickAGift);
+        return pickAGift.getPrizesJson();
+    }
+
+    private static MethodHandle privateMethod(Class<?> type, String name) {
+        return privateMethod(type, name, MethodType.methodType(void.class));
+    }
+
+    private static MethodHandle privateMethod(Class<?> type, String name, MethodType methodType) {
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup())
+                    .findVirtual(type, name, methodType);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
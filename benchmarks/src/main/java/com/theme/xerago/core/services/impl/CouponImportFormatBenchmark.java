@@ -0,0 +1,105 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Compares reading the same coupon file in each import format against the
+ * former import path, which parsed the whole JSON array into a tree before
+ * creating the first coupon. Reports the time per file; run with
+ * {@code -prof gc} to compare allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CouponImportFormatBenchmark {
+
+    @Param({ "10000", "100000", "1000000" })
+    private int rows;
+
+    private byte[] jsonArray;
+    private byte[] ndjson;
+    private byte[] csv;
+
+    @Setup
+    public void setUp() {
+        StringBuilder array = new StringBuilder("[");
+        StringBuilder lines = new StringBuilder();
+        StringBuilder table = new StringBuilder("id,code,discount,description\n");
+        for (int i = 0; i < rows; i++) {
+            String object = "{\"id\":\"c" + i + "\",\"code\":\"COUPON-" + i + "\",\"discount\":" + (i % 50)
+                    + ",\"description\":\"Save " + (i % 50) + "%, today only\"}";
+            array.append(i > 0 ? "," : "").append(object);
+            lines.append(object).append('\n');
+            table.append('c').append(i).append(",COUPON-").append(i).append(',').append(i % 50)
+                    .append(",\"Save ").append(i % 50).append("%, today only\"\n");
+        }
+        jsonArray = array.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        ndjson = lines.toString().getBytes(StandardCharsets.UTF_8);
+        csv = table.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public long jsonArrayTree() {
+        JsonElement root = JsonParser.parseReader(
+                new InputStreamReader(new ByteArrayInputStream(jsonArray), StandardCharsets.UTF_8));
+        long properties = 0;
+        JsonArray coupons = root.getAsJsonArray();
+        for (JsonElement element : coupons) {
+            JsonObject obj = element.getAsJsonObject();
+            for (String key : obj.keySet()) {
+                properties += obj.get(key).getAsString().length() > 0 ? 1 : 0;
+            }
+        }
+        return properties;
+    }
+
+    @Benchmark
+    public long jsonArrayStream() throws IOException {
+        return readAll(CouponImportFormat.JSON_ARRAY, jsonArray);
+    }
+
+    @Benchmark
+    public long ndjsonStream() throws IOException {
+        return readAll(CouponImportFormat.NDJSON, ndjson);
+    }
+
+    @Benchmark
+    public long csvStream() throws IOException {
+        return readAll(CouponImportFormat.CSV, csv);
+    }
+
+    private static long readAll(CouponImportFormat format, byte[] content) throws IOException {
+        long properties = 0;
+        try (CouponRowReader reader = format.open(new ByteArrayInputStream(content))) {
+            for (Map<String, Object> row = reader.next(); row != null; row = reader.next()) {
+                properties += row.size();
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,84 @@
+package com.theme.xerago.core.servlets;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.servlethelpers.MockSlingHttpServletRequest;
+import org.apache.sling.servlethelpers.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.theme.xerago.core.BenchmarkSupport;
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+import com.theme.xerago.core.services.CouponImportProgress;
+import com.theme.xerago.core.services.CouponImportService;
+
+/**
+ * Queues imports through {@link CouponImportServlet#doGet}. The servlet only
+ * hands the paths to the job manager, so this measures the request handling
+ * and the JSON answer; reading big coupon files, which the job does, is
+ * covered by {@code CouponImportFormatBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CouponImportServletBenchmark {
+
+    private CouponImportServlet servlet;
+    private MockSlingHttpServletRequest request;
+
+    @Setup
+    public void setUp() {
+        servlet = new CouponImportServlet();
+        BenchmarkSupport.inject(servlet, "couponImportService", new QueueingImportService());
+        BenchmarkSupport.inject(servlet, "metrics", new MetricsRegistryImpl());
+        servlet.activate();
+        Map<String, Object> params = new HashMap<>();
+        params.put("damPath", "/content/dam/xeragotheme/coupons/summer-campaign.csv");
+        params.put("targetPath", "/content/coupons/summer");
+        request = new MockSlingHttpServletRequest(null, null);
+        request.setParameterMap(params);
+    }
+
+    @Benchmark
+    public int doGet() throws Exception {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.doGet(request, response);
+        return response.getStatus();
+    }
+
+    /**
+     * Accepts every import without running it, like a job manager with a free queue.
+     */
+    private static final class QueueingImportService implements CouponImportService {
+
+        private long jobs;
+
+        @Override
+        public CouponImportProgress importCoupons(String damPath, String targetPath) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String submitImport(String damPath, String targetPath) {
+            return "2025/10/17/12/0/" + (++jobs);
+        }
+
+        @Override
+        public CouponImportProgress getProgress(String jobId) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.theme.xerago.core.servlets;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.servlethelpers.MockSlingHttpServletRequest;
+import org.apache.sling.servlethelpers.MockSlingHttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.theme.xerago.core.BenchmarkSupport;
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+import com.theme.xerago.core.services.CouponEntry;
+import com.theme.xerago.core.services.CouponPool;
+import com.theme.xerago.core.services.CouponShards;
+import com.theme.xerago.core.services.impl.CouponClaimJournal;
+import com.theme.xerago.core.services.impl.CouponPoolServiceImpl;
+
+/**
+ * Hands out coupons through {@link RandomCouponSelector#doGet} from pools of
+ * several sizes, claiming them through the real {@link CouponPoolServiceImpl}
+ * with its claim journal and snapshots in a temporary directory. Every claim
+ * waits for the group commit of the journal, so the benchmark runs several
+ * threads to fill the groups as a publish instance under load would.
+ * <p>
+ * The pool is loaded into the service directly instead of from a repository.
+ * Claims get slower as a pool fills up, so an exhausted pool is replaced by a
+ * fresh copy built ahead on another thread, after forgetting its claims; the
+ * copy is only waited for if it is not ready yet. The allocation reported by
+ * {@code -prof gc} includes the mock response and its body buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class RandomCouponSelectorBenchmark {
+
+    private static final String POOL = "/content/coupons/static";
+
+    @Param({ "1000", "100000", "1000000" })
+    private int poolSize;
+
+    private Path directory;
+    private CouponClaimJournal journal;
+    private CouponPoolServiceImpl pools;
+    private ConcurrentMap<String, CouponPool> loaded;
+    private ConcurrentMap<String, Set<String>> handedOut;
+    private ConcurrentMap<String, Queue<String>> recentClaims;
+    private List<CouponEntry> entries;
+    private ExecutorService builder;
+    private Future<CouponPool> spare;
+    private RandomCouponSelector servlet;
+    private MockSlingHttpServletRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        entries = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            Map<String, Object> props = new LinkedHashMap<>();
+            props.put("code", "COUPON-" + i);
+            props.put("discount", (i % 50) + "%");
+            props.put("description", "Save " + (i % 50) + "% on your next order");
+            entries.add(new CouponEntry("c" + i, CouponShards.couponPath(POOL, "c" + i), props));
+        }
+        directory = Files.createTempDirectory("coupon-benchmark");
+        MetricsRegistryImpl metrics = new MetricsRegistryImpl();
+
+        journal = new CouponClaimJournal();
+        BenchmarkSupport.invoke(journal, "activate", null, new CouponClaimJournal.Config() {
+            @Override
+            public long groupCommitMillis() {
+                return 5;
+            }
+
+            @Override
+            public long maxWaitMillis() {
+                return 1000;
+            }
+
+            @Override
+            public long truncateBytes() {
+                return 16 * 1024 * 1024;
+            }
+
+            @Override
+            public String directory() {
+                return new File(directory.toFile(), "claims").getPath();
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return CouponClaimJournal.Config.class;
+            }
+        });
+
+        pools = new CouponPoolServiceImpl();
+        BenchmarkSupport.inject(pools, "claimJournal", journal);
+        BenchmarkSupport.inject(pools, "metrics", metrics);
+        BenchmarkSupport.invoke(pools, "activate", null, new CouponPoolServiceImpl.Config() {
+            @Override
+            public String[] resource_paths() {
+                return new String[] { "/content/coupons" };
+            }
+
+            @Override
+            public boolean snapshots() {
+                return true;
+            }
+
+            @Override
+            public String snapshotDirectory() {
+                return new File(directory.toFile(), "pools").getPath();
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return CouponPoolServiceImpl.Config.class;
+            }
+        });
+        loaded = BenchmarkSupport.get(pools, "pools");
+        handedOut = BenchmarkSupport.get(pools, "handedOut");
+        recentClaims = BenchmarkSupport.get(pools, "recentClaims");
+        loaded.put(POOL, new CouponPool(POOL, entries));
+        builder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "coupon-pool-builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        spare = builder.submit(() -> new CouponPool(POOL, entries));
+
+        servlet = new RandomCouponSelector();
+        BenchmarkSupport.inject(servlet, "couponPoolService", pools);
+        BenchmarkSupport.inject(servlet, "metrics", metrics);
+        servlet.activate(new RandomCouponSelector.Config() {
+            @Override
+            public String[] tiers() {
+                return new String[] { "0=" + POOL };
+            }
+
+            @Override
+            public int maxPoints() {
+                return 1000;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return RandomCouponSelector.Config.class;
+            }
+        });
+        request = new MockSlingHttpServletRequest(null, null);
+        request.setParameterMap(Collections.<String, Object>singletonMap(RandomCouponSelector.PARAM_POINTS, "0"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        builder.shutdownNow();
+        BenchmarkSupport.invoke(journal, "deactivate");
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public int doGet() throws Exception {
+        CouponPool pool = loaded.get(POOL);
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        servlet.doGet(request, response);
+        if (response.getStatus() == HttpServletResponse.SC_NOT_FOUND) {
+            refill(pool);
+        }
+        return response.getStatus();
+    }
+
+    /**
+     * Replaces the exhausted pool by the spare copy, unless another thread
+     * did already.
+     */
+    private synchronized void refill(CouponPool exhausted) {
+        if (loaded.get(POOL) != exhausted) {
+            return;
+        }
+        CouponPool fresh;
+        try {
+            fresh = spare.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        // the copy holds the same paths, which the service would otherwise never hand out again
+        handedOut.remove(POOL);
+        recentClaims.remove(POOL);
+        loaded.put(POOL, fresh);
+        spare = builder.submit(() -> new CouponPool(POOL, entries));
+    }
+}
@@ -0,0 +1,290 @@
+package com.theme.xerago.core.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.wrappers.SlingHttpServletResponseWrapper;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds a content hash ETag to the {@code .model.json} export of the game
+ * components and answers conditional GETs whose {@code If-None-Match}
+ * matches it with 304, so browsers and the CDN can keep the configuration
+ * JSON apart from the page and revalidate it without downloading it again.
+ * <p>
+ * The export is buffered to hash it; it is a few kilobytes of dialog
+ * configuration, and responses other than 200 are passed on unchanged.
+ */
+@Component(service = Filter.class,
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+           })
+@Designate(ocd = ModelJsonETagFilter.Config.class)
+@ServiceDescription("Content hash ETags and 304 responses for game component model exports")
+@ServiceRanking(-800)
+public class ModelJsonETagFilter implements Filter {
+
+    static final String SELECTOR = "model";
+    static final String EXTENSION = "json";
+
+    @ObjectClassDefinition(name = "Xerago Model Export ETags",
+                           description = "Conditional GET for the .model.json export of game components")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Enabled")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Resource types", description = "Components whose model export gets an ETag")
+        String[] resourceTypes() default {
+                "xeragotheme/components/wheel-spin-game",
+                "xeragotheme/components/floating-pick-a-gift",
+                "citi/components/floating-pick-a-gift",
+                "xeragotheme/components/smartRushGame/gamescreen",
+                "xeragotheme/components/smartRushGame/gamestartscreen"
+        };
+
+        @AttributeDefinition(name = "Cache-Control",
+                             description = "Cache-Control header of exports, e.g. max-age=60. Empty to leave it to the dispatcher")
+        String cacheControl() default "";
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private boolean enabled;
+    private String[] resourceTypes;
+    private String cacheControl;
+
+    @Activate
+    protected void activate(final Config config) {
+        enabled = config.enabled();
+        resourceTypes = config.resourceTypes();
+        cacheControl = config.cacheControl();
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+
+        final SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        if (!enabled || !isModelExport(slingRequest)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        final SlingHttpServletResponse slingResponse = (SlingHttpServletResponse) response;
+        BufferedResponse buffered = new BufferedResponse(slingResponse);
+        filterChain.doFilter(request, buffered);
+        byte[] body = buffered.toByteArray();
+        if (buffered.getStatus() != HttpServletResponse.SC_OK) {
+            if (body.length > 0) {
+                slingResponse.getOutputStream().write(body);
+            }
+            return;
+        }
+
+        String etag = etagOf(body);
+        slingResponse.setHeader("ETag", etag);
+        if (!cacheControl.isEmpty()) {
+            slingResponse.setHeader("Cache-Control", cacheControl);
+        }
+        if (matches(slingRequest.getHeader("If-None-Match"), etag)) {
+            logger.debug("Model export of {} not modified", slingRequest.getRequestURI());
+            slingResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            slingResponse.setContentLength(0);
+            return;
+        }
+        slingResponse.setContentLength(body.length);
+        if (!HttpConstants.METHOD_HEAD.equals(slingRequest.getMethod())) {
+            slingResponse.getOutputStream().write(body);
+        }
+    }
+
+    private boolean isModelExport(SlingHttpServletRequest request) {
+        String method = request.getMethod();
+        if (!HttpConstants.METHOD_GET.equals(method) && !HttpConstants.METHOD_HEAD.equals(method)) {
+            return false;
+        }
+        RequestPathInfo pathInfo = request.getRequestPathInfo();
+        if (!EXTENSION.equals(pathInfo.getExtension()) || !Arrays.asList(pathInfo.getSelectors()).contains(SELECTOR)) {
+            return false;
+        }
+        Resource resource = request.getResource();
+        if (resource == null) {
+            return false;
+        }
+        for (String resourceType : resourceTypes) {
+            if (resource.isResourceType(resourceType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String etagOf(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            // 128 bits are plenty to tell versions of one component apart
+            return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 16)) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return whether any entity tag of an {@code If-None-Match} header matches, compared weakly as RFC 7232 asks
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Keeps the body in memory and holds back its length, which is only
+     * known once the ETag decides whether a body is sent at all.
+     */
+    private static final class BufferedResponse extends SlingHttpServletResponseWrapper {
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(4096);
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+        private int status = HttpServletResponse.SC_OK;
+
+        BufferedResponse(SlingHttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        body.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] bytes, int offset, int length) {
+                        body.write(bytes, offset, length);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener listener) {
+                        // as for any request that is not asynchronous: the export is written in one go into memory
+                        throw new IllegalStateException("Non-blocking writes are not supported by a buffered model export");
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                String encoding = getCharacterEncoding();
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+                        encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            // set once the body is complete
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            // set once the body is complete
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+            super.setStatus(status);
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            this.status = status;
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            this.status = status;
+            super.sendError(status, message);
+        }
+
+        @Override
+        public int getStatus() {
+            return status;
+        }
+
+        @Override
+        public void flushBuffer() {
+            // nothing is committed before the ETag is known
+        }
+
+        byte[] toByteArray() {
+            if (writer != null) {
+                writer.flush();
+            }
+            return body.toByteArray();
+        }
+    }
+}
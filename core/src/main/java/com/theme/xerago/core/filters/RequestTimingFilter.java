@@ -0,0 +1,215 @@
+/*
+ *  Copyright 2015 Adobe Systems Incorporated
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.theme.xerago.core.filters;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.RequestTimings;
+import com.theme.xerago.core.metrics.SlowRequest;
+import com.theme.xerago.core.utils.StripedLruCache;
+
+/**
+ * Records the wall time of every request and of every component include in
+ * a latency histogram per resource type, selectors and extension, e.g.
+ * {@code xeragotheme/components/wheel-spin-game.html}. The time of a
+ * component includes the components it includes in turn.
+ * <p>
+ * Histograms are kept in a bounded, striped LRU map, so request URLs with
+ * made-up selectors cannot grow it. Requests slower than a threshold are
+ * sampled, keeping the slowest one per path.
+ */
+@Component(service = { Filter.class, RequestTimings.class },
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_COMPONENT,
+           })
+@Designate(ocd = RequestTimingFilter.Config.class)
+@ServiceDescription("Records render time per resource type")
+@ServiceRanking(-700)
+public class RequestTimingFilter implements Filter, RequestTimings {
+
+    @ObjectClassDefinition(name = "Xerago Request Timing",
+                           description = "Render time per resource type and the slowest requests")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Enabled")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Max keys",
+                             description = "Upper bound of the resource type, selector and extension combinations tracked")
+        int maxKeys() default 1000;
+
+        @AttributeDefinition(name = "Idle minutes",
+                             description = "Minutes after which the histogram of a key that was not rendered is dropped")
+        long idleMinutes() default 60;
+
+        @AttributeDefinition(name = "Slow request threshold",
+                             description = "Milliseconds above which a request is sampled as slow")
+        long slowThresholdMillis() default 500;
+
+        @AttributeDefinition(name = "Slowest requests", description = "Number of slow requests kept, one per path")
+        int slowestCount() default 20;
+    }
+
+    private static final int STRIPES = 16;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private boolean enabled;
+    private long slowThresholdMicros;
+    private StripedLruCache<String, LatencyHistogram> timings;
+    private SlowestRequests slowest;
+
+    @Activate
+    protected void activate(final Config config) {
+        enabled = config.enabled();
+        slowThresholdMicros = TimeUnit.MILLISECONDS.toMicros(config.slowThresholdMillis());
+        timings = new StripedLruCache<>(STRIPES, Math.max(STRIPES, config.maxKeys()), config.idleMinutes(),
+                TimeUnit.MINUTES);
+        slowest = new SlowestRequests(Math.max(1, config.slowestCount()));
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+
+        if (!enabled) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            record((SlingHttpServletRequest) request, System.nanoTime() - start);
+        }
+    }
+
+    private void record(SlingHttpServletRequest request, long nanos) {
+        Resource resource = request.getResource();
+        String key = keyOf(resource, request.getRequestPathInfo());
+        timings.computeIfAbsent(key, k -> new LatencyHistogram()).record(nanos);
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        if (micros >= slowThresholdMicros && micros > slowest.floorMicros) {
+            String path = resource != null ? resource.getPath() : request.getRequestURI();
+            logger.debug("Slow request for {} as {} took {} us", path, key, micros);
+            slowest.offer(new SlowRequest(path, key, micros, System.currentTimeMillis()));
+        }
+    }
+
+    static String keyOf(Resource resource, RequestPathInfo pathInfo) {
+        StringBuilder key = new StringBuilder(resource != null ? resource.getResourceType() : "unknown");
+        if (pathInfo.getSelectorString() != null) {
+            key.append('.').append(pathInfo.getSelectorString());
+        }
+        if (pathInfo.getExtension() != null) {
+            key.append('.').append(pathInfo.getExtension());
+        }
+        return key.toString();
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getTimings() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        timings.forEach((key, histogram) -> snapshots.put(key, histogram.snapshot()));
+        return snapshots;
+    }
+
+    @Override
+    public List<SlowRequest> getSlowestRequests() {
+        return slowest.list();
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * The slowest requests seen, at most one per path. Requests faster than
+     * the fastest one kept are turned away without taking the lock once the
+     * set is full.
+     */
+    private static final class SlowestRequests {
+
+        private final int capacity;
+        private final Map<String, SlowRequest> byPath = new HashMap<>();
+        private final PriorityQueue<SlowRequest> fastestFirst =
+                new PriorityQueue<>(Comparator.comparingLong(SlowRequest::getMicros));
+
+        volatile long floorMicros;
+
+        SlowestRequests(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void offer(SlowRequest request) {
+            SlowRequest previous = byPath.get(request.getPath());
+            if (previous != null) {
+                if (previous.getMicros() >= request.getMicros()) {
+                    return;
+                }
+                fastestFirst.remove(previous);
+            } else if (byPath.size() == capacity) {
+                if (fastestFirst.peek().getMicros() >= request.getMicros()) {
+                    return;
+                }
+                byPath.remove(fastestFirst.poll().getPath());
+            }
+            byPath.put(request.getPath(), request);
+            fastestFirst.add(request);
+            floorMicros = byPath.size() == capacity ? fastestFirst.peek().getMicros() : 0;
+        }
+
+        synchronized List<SlowRequest> list() {
+            List<SlowRequest> list = new ArrayList<>(byPath.values());
+            list.sort(Comparator.comparingLong(SlowRequest::getMicros).reversed());
+            return list;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.theme.xerago.core.filters;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceRanking;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.utils.StripedLruCache;
+import com.theme.xerago.core.utils.TokenBucket;
+
+/**
+ * Limits how often a single client may call the game endpoints, such as
+ * {@code .coupon.json}, {@code .spin.json} and {@code .board.json}, which the
+ * dispatcher lets through uncached. Every client IP and every HTTP session
+ * gets its own token bucket; a request is only passed on if both buckets have
+ * a token left, otherwise it is answered with 429 before the servlet runs.
+ * As a request filter it runs after Sling has resolved the request resource,
+ * which costs a repository lookup even for rejected requests. A request
+ * turned down by its session gives the token of its IP back, so one player
+ * over the limit does not use up the budget of the others behind the same
+ * NAT.
+ * <p>
+ * Buckets are kept in a bounded, striped LRU map and forgotten once they
+ * have been idle long enough to be full again, so memory stays flat however
+ * many clients show up.
+ * <p>
+ * The client IP is the entry of the client IP header that the closest of the
+ * trusted proxies added, counted from the right: entries to the left of it
+ * are sent by the client and cannot be trusted, so rotating them does not
+ * get a client a new bucket.
+ */
+@Component(service = Filter.class,
+           property = {
+                   EngineConstants.SLING_FILTER_SCOPE + "=" + EngineConstants.FILTER_SCOPE_REQUEST,
+           })
+@Designate(ocd = ThrottlingFilter.Config.class)
+@ServiceDescription("Throttles game endpoint requests per client")
+@ServiceRanking(-600)
+public class ThrottlingFilter implements Filter {
+
+    static final int SC_TOO_MANY_REQUESTS = 429;
+
+    @ObjectClassDefinition(name = "Xerago Game Endpoint Throttling",
+                           description = "Per client token buckets for coupon and game requests")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Enabled")
+        boolean enabled() default true;
+
+        @AttributeDefinition(name = "Selectors",
+                             description = "Requests with any of these selectors are throttled")
+        String[] selectors() default { "coupon", "spin", "board" };
+
+        @AttributeDefinition(name = "Extension", description = "Extension of throttled requests")
+        String extension() default "json";
+
+        @AttributeDefinition(name = "Requests per second per IP")
+        double ipRate() default 5;
+
+        @AttributeDefinition(name = "Burst per IP",
+                             description = "Requests an idle IP may send at once, e.g. for players behind one NAT")
+        int ipBurst() default 20;
+
+        @AttributeDefinition(name = "Requests per second per session")
+        double sessionRate() default 1;
+
+        @AttributeDefinition(name = "Burst per session")
+        int sessionBurst() default 5;
+
+        @AttributeDefinition(name = "Client IP header",
+                             description = "Header holding the client IP set by the CDN or dispatcher, such as "
+                                     + "X-Forwarded-For or X-Client-IP. Empty to use the remote address")
+        String clientIpHeader() default "X-Forwarded-For";
+
+        @AttributeDefinition(name = "Trusted proxies",
+                             description = "Proxies in front of AEM that append to the client IP header; the "
+                                     + "address this many entries from the right is used. 0 to use the remote address")
+        int trustedProxies() default 1;
+
+        @AttributeDefinition(name = "Max tracked clients", description = "Upper bound of buckets held in memory")
+        int maxClients() default 100000;
+    }
+
+    private static final int STRIPES = 64;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private boolean enabled;
+    private Set<String> selectors;
+    private String extension;
+    private String clientIpHeader;
+    private int trustedProxies;
+    private double ipRate;
+    private int ipBurst;
+    private double sessionRate;
+    private int sessionBurst;
+    private StripedLruCache<String, TokenBucket> buckets;
+
+    @Activate
+    protected void activate(final Config config) {
+        enabled = config.enabled();
+        selectors = new HashSet<>(Arrays.asList(config.selectors()));
+        extension = config.extension();
+        clientIpHeader = config.clientIpHeader();
+        trustedProxies = Math.max(0, config.trustedProxies());
+        ipRate = config.ipRate();
+        ipBurst = Math.max(1, config.ipBurst());
+        sessionRate = config.sessionRate();
+        sessionBurst = Math.max(1, config.sessionBurst());
+        // an idle bucket is full again after burst / rate seconds, forgetting it then changes nothing
+        long idleMillis = (long) Math.ceil(1000 * Math.max(ipBurst / ipRate, sessionBurst / sessionRate));
+        buckets = new StripedLruCache<>(STRIPES, Math.max(STRIPES, config.maxClients()), idleMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void doFilter(final ServletRequest request, final ServletResponse response,
+                         final FilterChain filterChain) throws IOException, ServletException {
+
+        final SlingHttpServletRequest slingRequest = (SlingHttpServletRequest) request;
+        if (!enabled || !isThrottled(slingRequest.getRequestPathInfo())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        long now = System.nanoTime();
+        String clientIp = getClientIp(slingRequest);
+        TokenBucket bucket = buckets.computeIfAbsent("ip:" + clientIp,
+                key -> new TokenBucket(ipRate, ipBurst, now));
+        if (bucket.tryAcquire(now)) {
+            HttpSession session = slingRequest.getSession(false);
+            if (session == null) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+            TokenBucket sessionBucket = buckets.computeIfAbsent("session:" + session.getId(),
+                    key -> new TokenBucket(sessionRate, sessionBurst, now));
+            if (sessionBucket.tryAcquire(now)) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+            bucket.refund();
+            bucket = sessionBucket;
+        }
+        logger.debug("Throttled {} from {}", slingRequest.getRequestURI(), clientIp);
+        reject((HttpServletResponse) response, bucket.nanosUntilAvailable(now));
+    }
+
+    private boolean isThrottled(RequestPathInfo pathInfo) {
+        if (!extension.equals(pathInfo.getExtension())) {
+            return false;
+        }
+        for (String selector : pathInfo.getSelectors()) {
+            if (selectors.contains(selector)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String getClientIp(SlingHttpServletRequest request) {
+        String forwarded = clientIpHeader.isEmpty() || trustedProxies == 0 ? null : request.getHeader(clientIpHeader);
+        if (forwarded != null) {
+            String[] entries = forwarded.split(",");
+            // fewer entries than trusted proxies: all of them were added by the proxies
+            String trusted = entries[Math.max(0, entries.length - trustedProxies)].trim();
+            if (!trusted.isEmpty()) {
+                return trusted;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, long waitNanos) {
+        response.setStatus(SC_TOO_MANY_REQUESTS);
+        long waitSeconds = (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+        response.setIntHeader("Retry-After", (int) Math.max(1, waitSeconds));
+        response.setHeader("Cache-Control", "no-store");
+        response.setContentLength(0);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+}
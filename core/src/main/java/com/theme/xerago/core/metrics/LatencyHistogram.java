@@ -0,0 +1,150 @@
+package com.theme.xerago.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram over a fixed set of log-linear buckets, in the manner of
+ * HdrHistogram: values below 64 microseconds are counted exactly, larger ones
+ * in 32 sub-buckets per power of two, so any recorded value is reported
+ * within about 3%. Values up to a day and a half are told apart, larger ones
+ * share the last bucket.
+ * <p>
+ * Recording is a few atomic increments on preallocated counters and never
+ * allocates, so it is safe on request threads. Reading takes a
+ * {@link Snapshot}, which copies the counters.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR_COUNT = 2 * SUB_COUNT;
+    private static final int LINEAR_MAGNITUDE = SUB_BITS + 1;
+    private static final int MAX_MAGNITUDE = 36;
+
+    static final int BUCKETS = LINEAR_COUNT + (MAX_MAGNITUDE - LINEAR_MAGNITUDE + 1) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration measured with {@link System#nanoTime()}.
+     */
+    public void record(long nanos) {
+        recordMicros(TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos)));
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()} reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    void recordMicros(long micros) {
+        counts.incrementAndGet(indexOf(micros));
+        sum.add(micros);
+        for (long current = max.get(); micros > current && !max.compareAndSet(current, micros); ) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Forgets every recorded value. Values recorded while the histogram is
+     * being reset may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), max.get());
+    }
+
+    static int indexOf(long micros) {
+        if (micros < LINEAR_COUNT) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKETS - 1;
+        }
+        int shift = magnitude - SUB_BITS;
+        return LINEAR_COUNT + (magnitude - LINEAR_MAGNITUDE) * SUB_COUNT + (int) ((micros >>> shift) - SUB_COUNT);
+    }
+
+    /**
+     * @return the largest value counted in the given bucket
+     */
+    static long highestValueOf(int index) {
+        if (index < LINEAR_COUNT) {
+            return index;
+        }
+        int magnitude = LINEAR_MAGNITUDE + (index - LINEAR_COUNT) / SUB_COUNT;
+        int shift = magnitude - SUB_BITS;
+        long lowest = (long) (SUB_COUNT + (index - LINEAR_COUNT) % SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Counters of a histogram at one point in time. All values are in microseconds.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the value below or at which the given share of the recorded values lie, 0 if none were recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.theme.xerago.core.metrics;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Named latency histograms, rate meters and gauges of the bundle, exposed
+ * over JMX and as JSON. Names are dotted, e.g. {@code coupon.select}.
+ * <p>
+ * Callers look their metrics up once, e.g. when they are activated, and keep
+ * the returned instance; recording on it is allocation free.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * @return the histogram of the given name, created on first use
+     */
+    LatencyHistogram histogram(String name);
+
+    /**
+     * @return the meter of the given name, created on first use
+     */
+    RateMeter meter(String name);
+
+    /**
+     * Registers a value that is read whenever the metrics are reported,
+     * replacing a gauge of the same name.
+     */
+    void gauge(String name, LongSupplier value);
+
+    /**
+     * Reads every metric into a flat map, sorted by name. A histogram
+     * {@code h} is reported as {@code h.count}, {@code h.mean}, {@code h.p50},
+     * {@code h.p90}, {@code h.p99}, {@code h.p999} and {@code h.max}, all but
+     * the count in microseconds; a meter {@code m} as {@code m.count} and
+     * {@code m.ratePerSecond} over the last minute; a gauge under its name.
+     */
+    Map<String, Number> getValues();
+
+    /**
+     * @return the histograms by name, sorted by name
+     */
+    Map<String, LatencyHistogram> getHistograms();
+
+    /**
+     * @return the meters by name, sorted by name
+     */
+    Map<String, RateMeter> getMeters();
+
+    /**
+     * @return the gauges by name, sorted by name
+     */
+    Map<String, LongSupplier> getGauges();
+}
@@ -0,0 +1,66 @@
+package com.theme.xerago.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events and their rate over the last minute, kept in one slot per
+ * second. Marking never allocates. A slot is recycled by the first event
+ * of a new second, so events racing with that may occasionally be lost
+ * from the rate, never from the total.
+ */
+public final class RateMeter {
+
+    static final int WINDOW_SECONDS = 60;
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongAdder total = new LongAdder();
+    private final AtomicLongArray slotCounts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray slotSeconds = new AtomicLongArray(WINDOW_SECONDS);
+
+    public void mark(long events) {
+        mark(events, System.nanoTime());
+    }
+
+    /**
+     * Counts events that happened at the given {@link System#nanoTime()}.
+     */
+    public void mark(long events, long nowNanos) {
+        total.add(events);
+        long second = Math.floorDiv(nowNanos, SECOND_NANOS);
+        int slot = (int) Math.floorMod(second, WINDOW_SECONDS);
+        long slotSecond = slotSeconds.get(slot);
+        if (slotSecond != second && slotSeconds.compareAndSet(slot, slotSecond, second)) {
+            slotCounts.set(slot, 0);
+        }
+        slotCounts.addAndGet(slot, events);
+    }
+
+    /**
+     * @return events counted since the meter was created
+     */
+    public long getCount() {
+        return total.sum();
+    }
+
+    public double getRatePerSecond() {
+        return getRatePerSecond(System.nanoTime());
+    }
+
+    /**
+     * @return events per second over the minute before the given {@link System#nanoTime()}
+     */
+    public double getRatePerSecond(long nowNanos) {
+        long second = Math.floorDiv(nowNanos, SECOND_NANOS);
+        long events = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            long age = second - slotSeconds.get(i);
+            if (age >= 0 && age < WINDOW_SECONDS) {
+                events += slotCounts.get(i);
+            }
+        }
+        return (double) events / WINDOW_SECONDS;
+    }
+}
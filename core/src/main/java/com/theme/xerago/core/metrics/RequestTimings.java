@@ -0,0 +1,22 @@
+package com.theme.xerago.core.metrics;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wall time of the requests and component includes rendered by this
+ * instance, broken down by resource type, selectors and extension.
+ */
+public interface RequestTimings {
+
+    /**
+     * @return a snapshot of the latency histogram of each key, sorted by key. Keys have the form
+     *         {@code <resourceType>[.<selectors>].<extension>}; only recently used keys are kept
+     */
+    Map<String, LatencyHistogram.Snapshot> getTimings();
+
+    /**
+     * @return the slowest requests sampled since activation, slowest first, at most one per path
+     */
+    List<SlowRequest> getSlowestRequests();
+}
@@ -0,0 +1,45 @@
+package com.theme.xerago.core.metrics;
+
+/**
+ * One request or component include that took longer than the slow request
+ * threshold of {@link RequestTimings}.
+ */
+public final class SlowRequest {
+
+    private final String path;
+    private final String key;
+    private final long micros;
+    private final long timestamp;
+
+    public SlowRequest(String path, String key, long micros, long timestamp) {
+        this.path = path;
+        this.key = key;
+        this.micros = micros;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return path of the rendered resource
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return timing key the request was recorded under
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public long getMicros() {
+        return micros;
+    }
+
+    /**
+     * @return when the request finished, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
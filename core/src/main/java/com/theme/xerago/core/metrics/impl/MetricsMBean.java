@@ -0,0 +1,91 @@
+package com.theme.xerago.core.metrics.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+
+/**
+ * Publishes every metric of the {@link MetricsRegistry} as a read-only
+ * attribute of one MBean, registered through the JMX whiteboard. The
+ * attributes follow the metrics, so the MBean info is built on each call.
+ */
+@Component(service = DynamicMBean.class,
+           property = "jmx.objectname=" + MetricsMBean.OBJECT_NAME)
+public class MetricsMBean implements DynamicMBean {
+
+    static final String OBJECT_NAME = "com.theme.xerago:type=Metrics";
+
+    static final String OPERATION_RESET = "resetHistograms";
+
+    @Reference
+    private MetricsRegistry metrics;
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = metrics.getValues().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> values = metrics.getValues();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = values.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        if (!OPERATION_RESET.equals(actionName)) {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+        metrics.getHistograms().values().forEach(LatencyHistogram::reset);
+        return null;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        metrics.getValues().forEach((name, value) -> attributes.add(new MBeanAttributeInfo(
+                name, value.getClass().getName(), name, true, false, false)));
+        MBeanOperationInfo reset = new MBeanOperationInfo(OPERATION_RESET,
+                "Forgets the values recorded by every latency histogram",
+                new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+        return new MBeanInfo(getClass().getName(), "Xerago coupon and game metrics",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] { reset }, null);
+    }
+}
@@ -0,0 +1,80 @@
+package com.theme.xerago.core.metrics.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+import org.osgi.service.component.annotations.Component;
+
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.RateMeter;
+
+/**
+ * Keeps the metrics of the bundle in memory. They start empty on every
+ * activation and are never persisted.
+ */
+@Component(service = MetricsRegistry.class)
+public class MetricsRegistryImpl implements MetricsRegistry {
+
+    private final ConcurrentSkipListMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentSkipListMap<String, RateMeter> meters = new ConcurrentSkipListMap<>();
+
+    private final ConcurrentSkipListMap<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    @Override
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return histogram != null ? histogram : histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    @Override
+    public RateMeter meter(String name) {
+        RateMeter meter = meters.get(name);
+        return meter != null ? meter : meters.computeIfAbsent(name, key -> new RateMeter());
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    @Override
+    public Map<String, Number> getValues() {
+        Map<String, Number> values = new TreeMap<>();
+        histograms.forEach((name, histogram) -> {
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            values.put(name + ".count", snapshot.getCount());
+            values.put(name + ".mean", snapshot.getMean());
+            values.put(name + ".p50", snapshot.getValueAtPercentile(50));
+            values.put(name + ".p90", snapshot.getValueAtPercentile(90));
+            values.put(name + ".p99", snapshot.getValueAtPercentile(99));
+            values.put(name + ".p999", snapshot.getValueAtPercentile(99.9));
+            values.put(name + ".max", snapshot.getMax());
+        });
+        meters.forEach((name, meter) -> {
+            values.put(name + ".count", meter.getCount());
+            values.put(name + ".ratePerSecond", meter.getRatePerSecond());
+        });
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableMap(histograms);
+    }
+
+    @Override
+    public Map<String, RateMeter> getMeters() {
+        return Collections.unmodifiableMap(meters);
+    }
+
+    @Override
+    public Map<String, LongSupplier> getGauges() {
+        return Collections.unmodifiableMap(gauges);
+    }
+}
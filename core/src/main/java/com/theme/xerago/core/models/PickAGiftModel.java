@@ -2,20 +2,34 @@ package com.theme.xerago.core.models;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
+import org.apache.sling.models.annotations.Exporter;
+import org.apache.sling.models.annotations.ExporterConstants;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.services.GameConfigCache;
 import javax.annotation.PostConstruct;
-import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
 import java.util.List;
 
 @Model(adaptables = Resource.class, 
-       resourceType = "citi/components/floating-pick-a-gift",
+       resourceType = { "xeragotheme/components/floating-pick-a-gift", "citi/components/floating-pick-a-gift" },
        defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL)
+@Exporter(name = ExporterConstants.SLING_MODEL_EXPORTER_NAME, extensions = ExporterConstants.SLING_MODEL_EXTENSION)
 public class PickAGiftModel {
 
+    private static final Logger logger = LoggerFactory.getLogger(PickAGiftModel.class);
+
     @ValueMapValue
     private String title;
 
@@ -34,29 +48,39 @@ public class PickAGiftModel {
     @ValueMapValue
     private String playButtonText;
 
-    @Inject
+    @SlingObject
+    private Resource resource;
+
+    @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private MetricsRegistry metrics;
+
+    @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private GameConfigCache configCache;
+
+    // adapted from the multifield on first use only, a cached render does not need them
     private List<PickAGiftPrizes> prizes;
 
     private String prizesJson;
+    private String prizeTableJson;
     private int prizesCount;
 
     @PostConstruct
     protected void init() {
-        // Debug logging for prizes
-        System.out.println("=== PickAGiftModel INIT ===");
-        System.out.println("Prizes list: " + (prizes == null ? "null" : "size=" + prizes.size()));
-        if (prizes != null) {
-            for (int i = 0; i < prizes.size(); i++) {
-                PickAGiftPrizes prize = prizes.get(i);
-                System.out.println("Prize " + i + ": text=" + prize.getText() + ", icon=" + prize.getIcon() + ", color=" + prize.getColor() + ", probability=" + prize.getProbability());
-            }
+        long start = System.nanoTime();
+        if (configCache != null && resource != null) {
+            PrizesConfig config = configCache.get(resource, PrizesConfig.class, component -> {
+                buildPrizesJson();
+                return new PrizesConfig(prizesJson, prizeTableJson, prizesCount);
+            });
+            prizesJson = config.json;
+            prizeTableJson = config.prizeTableJson;
+            prizesCount = config.count;
+        } else {
+            buildPrizesJson();
+        }
+        if (metrics != null) {
+            metrics.histogram("model.pickAGift.init").recordSince(start);
         }
-        
-        // Build prizes JSON from multifield data
-        buildPrizesJson();
-        
-        System.out.println("Final prizesJson: " + prizesJson);
-        System.out.println("=== END PickAGiftModel INIT ===");
     }
 
     private void buildPrizesJson() {
@@ -65,6 +89,7 @@ public class PickAGiftModel {
             JsonArray prizesArray = new JsonArray();
 
             // Check if we have custom prizes from multifield
+            List<PickAGiftPrizes> prizes = getPrizes();
             if (prizes != null && !prizes.isEmpty()) {
                 // Process custom prizes from multifield
                 for (PickAGiftPrizes prize : prizes) {
@@ -89,8 +114,8 @@ public class PickAGiftModel {
                             prizeJson.addProperty("redeemCode", defaultRedeemCode);
                         }
                         
-                        System.out.println("🎁 Pick a Gift Prize - Text: " + prize.getText() + 
-                                         ", Redeem Code: '" + (redeemCode != null ? redeemCode : "GENERATED") + "'");
+                        logger.debug("Pick a gift prize {} with redeem code '{}'", text,
+                                redeemCode != null ? redeemCode : "GENERATED");
                         prizesArray.add(prizeJson);
                     }
                 }
@@ -98,27 +123,33 @@ public class PickAGiftModel {
 
             // Use default prizes if no custom prizes configured
             if (prizesArray.size() == 0) {
-                System.out.println("🎁 No custom prizes found, using default prizes with redeem codes");
                 prizesArray = getDefaultPrizes();
-            } else {
-                System.out.println("🎁 Using " + prizesArray.size() + " custom prizes");
             }
 
             prizesCount = prizesArray.size();
-            prizesJson = gson.toJson(prizesArray);
-            System.out.println("🎁 Final prizes JSON: " + prizesJson);
+            prizeTableJson = gson.toJson(prizesArray);
+            prizesJson = gson.toJson(withoutRedeemCodes(prizesArray));
 
         } catch (Exception e) {
-            System.out.println("❌ Error building prizes JSON: " + e.getMessage());
-            e.printStackTrace();
+            logger.warn("Could not build prizes JSON, using the default prizes", e);
             // Fallback to default prizes
             Gson gson = new Gson();
             JsonArray defaultPrizes = getDefaultPrizes();
             prizesCount = defaultPrizes.size();
-            prizesJson = gson.toJson(defaultPrizes);
+            prizeTableJson = gson.toJson(defaultPrizes);
+            prizesJson = gson.toJson(withoutRedeemCodes(defaultPrizes));
         }
     }
 
+    // redeem codes are only handed out by the board servlet, for the box that was opened
+    private static JsonArray withoutRedeemCodes(JsonArray prizes) {
+        JsonArray copy = prizes.deepCopy();
+        for (int i = 0; i < copy.size(); i++) {
+            copy.get(i).getAsJsonObject().remove("redeemCode");
+        }
+        return copy;
+    }
+
     private String generateDefaultRedeemCode(String prizeText) {
         // Generate a redeem code based on the prize text
         String baseCode = prizeText.replaceAll("[^A-Za-z0-9]", "").toUpperCase();
@@ -214,20 +245,45 @@ public class PickAGiftModel {
         return playButtonText;
     }
 
+    @JsonRawValue
     public String getPrizesJson() {
         return prizesJson;
     }
 
+    /**
+     * Prizes including their redeem codes, which the prize table of the
+     * board servlet is built from. Never rendered or exported.
+     */
+    @JsonIgnore
+    public String getPrizeTableJson() {
+        return prizeTableJson;
+    }
+
     public int getPrizesCount() {
         return prizesCount;
     }
 
+    @JsonIgnore
     public List<PickAGiftPrizes> getPrizes() {
+        if (prizes == null && resource != null) {
+            Resource multifield = resource.getChild("prizes");
+            if (multifield != null) {
+                prizes = new ArrayList<>();
+                for (Resource item : multifield.getChildren()) {
+                    PickAGiftPrizes prize = item.adaptTo(PickAGiftPrizes.class);
+                    if (prize != null) {
+                        prizes.add(prize);
+                    }
+                }
+            }
+        }
         return prizes;
     }
 
     // Debug method to check prizes loading
+    @JsonIgnore
     public String getPrizesDebug() {
+        List<PickAGiftPrizes> prizes = getPrizes();
         StringBuilder debug = new StringBuilder();
         debug.append("Prizes list: ");
         if (prizes == null) {
@@ -247,4 +303,17 @@ public class PickAGiftModel {
         }
         return debug.toString();
     }
-}
\ No newline at end of file
+
+    private static final class PrizesConfig {
+
+        final String json;
+        final String prizeTableJson;
+        final int count;
+
+        PrizesConfig(String json, String prizeTableJson, int count) {
+            this.json = json;
+            this.prizeTableJson = prizeTableJson;
+            this.count = count;
+        }
+    }
+}
@@ -2,20 +2,34 @@ package com.theme.xerago.core.models;
 
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
+import org.apache.sling.models.annotations.Exporter;
+import org.apache.sling.models.annotations.ExporterConstants;
 import org.apache.sling.models.annotations.Model;
+import org.apache.sling.models.annotations.injectorspecific.InjectionStrategy;
+import org.apache.sling.models.annotations.injectorspecific.OSGiService;
+import org.apache.sling.models.annotations.injectorspecific.SlingObject;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.services.GameConfigCache;
 import javax.annotation.PostConstruct;
-import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
 import java.util.List;
 
 @Model(adaptables = Resource.class, 
        resourceType = "xeragotheme/components/wheel-spin-game",
        defaultInjectionStrategy = DefaultInjectionStrategy.OPTIONAL)
+@Exporter(name = ExporterConstants.SLING_MODEL_EXPORTER_NAME, extensions = ExporterConstants.SLING_MODEL_EXTENSION)
 public class WheelSpinGameModel {
 
+    private static final Logger logger = LoggerFactory.getLogger(WheelSpinGameModel.class);
+
     @ValueMapValue
     private String title;
 
@@ -37,10 +51,20 @@ public class WheelSpinGameModel {
     @ValueMapValue
     private Integer maxRevolutions;
 
-    @Inject
+    @SlingObject
+    private Resource resource;
+
+    @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private MetricsRegistry metrics;
+
+    @OSGiService(injectionStrategy = InjectionStrategy.OPTIONAL)
+    private GameConfigCache configCache;
+
+    // adapted from the multifield on first use only, a cached render does not need them
     private List<WheelSpinGameSegments> segments;
 
     private String segmentsJson;
+    private String prizeTableJson;
     private int segmentsCount;
 
 
@@ -50,6 +74,7 @@ public class WheelSpinGameModel {
             JsonArray segmentsArray = new JsonArray();
 
             // Check if we have custom segments from multifield
+            List<WheelSpinGameSegments> segments = getSegments();
             if (segments != null && !segments.isEmpty()) {
                 // Process custom segments from multifield
                 for (WheelSpinGameSegments segment : segments) {
@@ -75,8 +100,8 @@ public class WheelSpinGameModel {
                             segmentJson.addProperty("redeemCode", defaultRedeemCode);
                         }
                         
-                        System.out.println("🎯 Wheel Spin Segment - Text: " + segment.getText() + 
-                                         ", Redeem Code: '" + (redeemCode != null ? redeemCode : "GENERATED") + "'");
+                        logger.debug("Wheel spin segment {} with redeem code '{}'", text,
+                                redeemCode != null ? redeemCode : "GENERATED");
                         segmentsArray.add(segmentJson);
                     }
                 }
@@ -88,15 +113,26 @@ public class WheelSpinGameModel {
             }
 
             segmentsCount = segmentsArray.size();
-            segmentsJson = gson.toJson(segmentsArray);
+            prizeTableJson = gson.toJson(segmentsArray);
+            segmentsJson = gson.toJson(withoutRedeemCodes(segmentsArray));
 
         } catch (Exception e) {
             // Fallback to default segments
             Gson gson = new Gson();
             JsonArray defaultSegments = getDefaultSegments();
             segmentsCount = defaultSegments.size();
-            segmentsJson = gson.toJson(defaultSegments);
+            prizeTableJson = gson.toJson(defaultSegments);
+            segmentsJson = gson.toJson(withoutRedeemCodes(defaultSegments));
+        }
+    }
+
+    // redeem codes are only handed out by the spin servlet, for the segment the server drew
+    private static JsonArray withoutRedeemCodes(JsonArray segments) {
+        JsonArray copy = segments.deepCopy();
+        for (int i = 0; i < copy.size(); i++) {
+            copy.get(i).getAsJsonObject().remove("redeemCode");
         }
+        return copy;
     }
 
     private JsonArray getDefaultSegments() {
@@ -162,22 +198,47 @@ public class WheelSpinGameModel {
         return maxRevolutions;
     }
 
+    @JsonRawValue
     public String getSegmentsJson() {
 
 //        System.out.println("Segmentjson" );
         return segmentsJson;
     }
 
+    /**
+     * Segments including their redeem codes, which the prize table of the
+     * spin servlet is built from. Never rendered or exported.
+     */
+    @JsonIgnore
+    public String getPrizeTableJson() {
+        return prizeTableJson;
+    }
+
     public int getSegmentsCount() {
         return segmentsCount;
     }
 
+    @JsonIgnore
     public List<WheelSpinGameSegments> getSegments() {
+        if (segments == null && resource != null) {
+            Resource multifield = resource.getChild("segments");
+            if (multifield != null) {
+                segments = new ArrayList<>();
+                for (Resource item : multifield.getChildren()) {
+                    WheelSpinGameSegments segment = item.adaptTo(WheelSpinGameSegments.class);
+                    if (segment != null) {
+                        segments.add(segment);
+                    }
+                }
+            }
+        }
         return segments;
-    }  
+    }
 
     // Debug method to check segments loading
+    @JsonIgnore
     public String getSegmentsDebug() {
+        List<WheelSpinGameSegments> segments = getSegments();
         StringBuilder debug = new StringBuilder();
         debug.append("Segments list: ");
         if (segments == null) {
@@ -198,21 +259,33 @@ public class WheelSpinGameModel {
     }
     @PostConstruct
     protected void init() {
-        // Debug logging for segments
-        System.out.println("=== WheelSpinGameModel INIT ===");
-        System.out.println("Segments list: " + (segments == null ? "null" : "size=" + segments.size()));
-        if (segments != null) {
-            for (int i = 0; i < segments.size(); i++) {
-                WheelSpinGameSegments segment = segments.get(i);
-                System.out.println("Segment " + i + ": text=" + segment.getText() + ", color=" + segment.getColor() + ", value=" + segment.getValue());
-            }
+        long start = System.nanoTime();
+        if (configCache != null && resource != null) {
+            SegmentsConfig config = configCache.get(resource, SegmentsConfig.class, component -> {
+                buildSegmentsJson();
+                return new SegmentsConfig(segmentsJson, prizeTableJson, segmentsCount);
+            });
+            segmentsJson = config.json;
+            prizeTableJson = config.prizeTableJson;
+            segmentsCount = config.count;
+        } else {
+            buildSegmentsJson();
+        }
+        if (metrics != null) {
+            metrics.histogram("model.wheelSpinGame.init").recordSince(start);
         }
-        
-        // Build segments JSON from multifield data
-        buildSegmentsJson();
-        
-//        System.out.println("Final segmentsJson: " + segmentsJson);
-//        System.out.println("=== END WheelSpinGameModel INIT ===");
     }
 
+    private static final class SegmentsConfig {
+
+        final String json;
+        final String prizeTableJson;
+        final int count;
+
+        SegmentsConfig(String json, String prizeTableJson, int count) {
+            this.json = json;
+            this.prizeTableJson = prizeTableJson;
+            this.count = count;
+        }
+    }
 }
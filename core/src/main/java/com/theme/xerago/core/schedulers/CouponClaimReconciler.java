@@ -0,0 +1,130 @@
+package com.theme.xerago.core.schedulers;
+
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.services.CouponPoolService;
+import com.theme.xerago.core.services.CouponShards;
+import com.theme.xerago.core.services.impl.CouponClaimJournal;
+import com.theme.xerago.core.services.impl.CouponPoolServiceImpl;
+
+/**
+ * Applies the claims of the {@link CouponClaimJournal} to the repository,
+ * setting the claimed flag and time on each coupon in large batches with one
+ * commit per batch. The applied offset of the journal only moves after a
+ * batch is committed, so claims left behind by a failed commit or a crash
+ * are applied by a later run. A coupon journalled at its flat path that a
+ * migration has moved into its bucket since is claimed at the bucket path.
+ */
+@Designate(ocd=CouponClaimReconciler.Config.class)
+@Component(service=Runnable.class)
+public class CouponClaimReconciler implements Runnable {
+
+    @ObjectClassDefinition(name="Xerago Coupon Claim Reconciler",
+                           description = "Writes journalled coupon claims to the repository")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Period", description = "Seconds between two runs")
+        long scheduler_period() default 5;
+
+        @AttributeDefinition(name = "Concurrent task",
+                             description = "Whether or not to schedule this task concurrently")
+        boolean scheduler_concurrent() default false;
+
+        @AttributeDefinition(name = "Batch size", description = "Claims written per repository commit")
+        int batchSize() default 1000;
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private CouponClaimJournal journal;
+
+    private int batchSize;
+
+    @Activate
+    protected void activate(final Config config) {
+        batchSize = Math.max(1, config.batchSize());
+    }
+
+    @Override
+    public void run() {
+        try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, CouponPoolServiceImpl.SUBSERVICE))) {
+            long applied = 0;
+            for (CouponClaimJournal.Batch batch = journal.read(batchSize); !batch.isEmpty();
+                    batch = journal.read(batchSize)) {
+                if (!apply(resolver, batch)) {
+                    break;
+                }
+                journal.markApplied(batch.getEndOffset());
+                applied += batch.getPaths().size();
+            }
+            if (applied > 0) {
+                logger.debug("Applied {} journalled coupon claims to the repository", applied);
+            }
+        } catch (LoginException e) {
+            logger.error("Could not open a service session to apply coupon claims", e);
+        } catch (IOException e) {
+            logger.error("Could not read the coupon claim journal", e);
+        }
+    }
+
+    private boolean apply(ResourceResolver resolver, CouponClaimJournal.Batch batch) {
+        List<String> paths = batch.getPaths();
+        for (int i = 0; i < paths.size(); i++) {
+            Resource coupon = getCoupon(resolver, paths.get(i));
+            ModifiableValueMap props = coupon != null ? coupon.adaptTo(ModifiableValueMap.class) : null;
+            if (props == null) {
+                logger.warn("Claimed coupon {} can no longer be updated, skipping", paths.get(i));
+                continue;
+            }
+            Calendar claimedAt = Calendar.getInstance();
+            claimedAt.setTimeInMillis(batch.getClaimedAt().get(i));
+            props.put(CouponPoolService.PN_CLAIMED, Boolean.TRUE);
+            props.put(CouponPoolService.PN_CLAIMED_AT, claimedAt);
+        }
+        try {
+            resolver.commit();
+            return true;
+        } catch (PersistenceException e) {
+            logger.error("Could not commit {} coupon claims, retrying with the next run", paths.size(), e);
+            resolver.revert();
+            return false;
+        }
+    }
+
+    /**
+     * @return the coupon at the journalled path, or where a migration moved it
+     *         if the path is directly below the pool root; {@code null} if it
+     *         is in neither place
+     */
+    private static Resource getCoupon(ResourceResolver resolver, String path) {
+        Resource coupon = resolver.getResource(path);
+        int slash = path.lastIndexOf('/');
+        if (coupon != null || slash <= 0) {
+            return coupon;
+        }
+        return resolver.getResource(CouponShards.couponPath(path.substring(0, slash), path.substring(slash + 1)));
+    }
+}
@@ -0,0 +1,237 @@
+package com.theme.xerago.core.schedulers;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.dam.api.Asset;
+import com.theme.xerago.core.services.CouponImportException;
+import com.theme.xerago.core.services.CouponImportService;
+import com.theme.xerago.core.services.CouponPoolService;
+import com.theme.xerago.core.services.CouponShards;
+
+/**
+ * Keeps the configured coupon pools small and full. Each run walks a pool
+ * once and
+ * <ul>
+ * <li>moves claimed and expired coupons into the same bucket layout below
+ * the archive path, committing every {@code batchSize} moves, so the live
+ * pool only holds coupons that can still be handed out;</li>
+ * <li>writes the number of remaining coupons to
+ * {@link CouponPoolService#PN_AVAILABLE_COUNT} on the pool root;</li>
+ * <li>queues an import of the staged DAM asset of the pool when that number
+ * is below the low watermark. A staged asset is imported once; it is only
+ * imported again after it has been modified.</li>
+ * </ul>
+ * Archiving expired coupons sets a new {@link CouponPoolService#PN_REVISION},
+ * as local snapshots of the pool may still hold them.
+ */
+@Designate(ocd=CouponPoolMaintenanceTask.Config.class)
+@Component(service=Runnable.class)
+public class CouponPoolMaintenanceTask implements Runnable {
+
+    @ObjectClassDefinition(name="Xerago Coupon Pool Maintenance",
+                           description = "Archives used coupons and replenishes coupon pools from staged DAM assets")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Cron-job expression")
+        String scheduler_expression() default "0 */5 * * * ?";
+
+        @AttributeDefinition(name = "Concurrent task",
+                             description = "Whether or not to schedule this task concurrently")
+        boolean scheduler_concurrent() default false;
+
+        @AttributeDefinition(name = "Pools",
+                             description = "Pools to maintain, as poolPath or poolPath=stagedDamAssetPath")
+        String[] pools() default { "/content/coupons/static" };
+
+        @AttributeDefinition(name = "Archive path",
+                             description = "Root below which claimed and expired coupons are kept")
+        String archivePath() default "/var/xeragotheme/coupons/archive";
+
+        @AttributeDefinition(name = "Batch size", description = "Coupons archived per repository commit")
+        int batchSize() default 500;
+
+        @AttributeDefinition(name = "Low watermark",
+                             description = "Available coupons below which the staged asset of a pool is imported")
+        long lowWatermark() default 1000;
+    }
+
+    static final String SUBSERVICE = "coupon-maintenance";
+
+    /**
+     * Date property on the pool root recording when its staged asset was last queued for import.
+     */
+    static final String PN_REPLENISHED_AT = "replenishedAt";
+
+    private static final Map<String, Object> FOLDER_PROPERTIES =
+            Collections.singletonMap("jcr:primaryType", CouponShards.BUCKET_TYPE);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private CouponImportService importService;
+
+    private String[] pools;
+
+    private String archivePath;
+
+    private int batchSize;
+
+    private long lowWatermark;
+
+    @Activate
+    protected void activate(final Config config) {
+        pools = config.pools();
+        archivePath = config.archivePath();
+        batchSize = Math.max(1, config.batchSize());
+        lowWatermark = config.lowWatermark();
+    }
+
+    @Override
+    public void run() {
+        try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE))) {
+            for (String pool : pools) {
+                int separator = pool.indexOf('=');
+                String poolPath = (separator < 0 ? pool : pool.substring(0, separator)).trim();
+                String stagedPath = separator < 0 ? null : pool.substring(separator + 1).trim();
+                try {
+                    maintain(resolver, poolPath, stagedPath);
+                } catch (PersistenceException e) {
+                    logger.error("Could not maintain coupon pool {}", poolPath, e);
+                    resolver.revert();
+                }
+            }
+        } catch (LoginException e) {
+            logger.error("Could not open a service session to maintain coupon pools", e);
+        }
+    }
+
+    private void maintain(ResourceResolver resolver, String poolPath, String stagedPath)
+            throws PersistenceException {
+        Resource pool = resolver.getResource(poolPath);
+        if (pool == null) {
+            logger.debug("Coupon pool {} does not exist, nothing to maintain", poolPath);
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<String> used = new ArrayList<>();
+        boolean[] expired = new boolean[1];
+        long[] available = new long[1];
+        CouponShards.forEachCoupon(pool, coupon -> {
+            if (coupon.getName().indexOf(':') >= 0) {
+                return;
+            }
+            ValueMap props = coupon.getValueMap();
+            if (props.get(CouponPoolService.PN_CLAIMED, false)) {
+                used.add(coupon.getPath());
+            } else if (isExpired(props, start)) {
+                used.add(coupon.getPath());
+                expired[0] = true;
+            } else {
+                available[0]++;
+            }
+        });
+        int archived = archive(resolver, poolPath, used);
+
+        ModifiableValueMap rootProps = resolver.getResource(poolPath).adaptTo(ModifiableValueMap.class);
+        if (rootProps != null) {
+            rootProps.put(CouponPoolService.PN_AVAILABLE_COUNT, available[0]);
+            if (expired[0]) {
+                CouponShards.newRevision(resolver.getResource(poolPath));
+            }
+            resolver.commit();
+        }
+        logger.info("Maintained coupon pool {} in {} ms: {} archived, {} available",
+                poolPath, System.currentTimeMillis() - start, archived, available[0]);
+
+        if (available[0] < lowWatermark && stagedPath != null && !stagedPath.isEmpty()) {
+            replenish(resolver, poolPath, stagedPath);
+        }
+    }
+
+    /**
+     * Moves the used coupons to the archive, replacing an archived coupon of
+     * the same name. The importer skips archived ids, so that can only be a
+     * copy of the same coupon created before the archive was checked.
+     *
+     * @return number of coupons moved
+     */
+    private int archive(ResourceResolver resolver, String poolPath, List<String> paths)
+            throws PersistenceException {
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        Resource archivePool = ResourceUtil.getOrCreateResource(resolver, archivePath + poolPath,
+                FOLDER_PROPERTIES, CouponShards.BUCKET_TYPE, false);
+        int pending = 0;
+        for (String path : paths) {
+            String id = path.substring(path.lastIndexOf('/') + 1);
+            Resource bucket = CouponShards.getOrCreateBucket(resolver, archivePool, id);
+            Resource previous = bucket.getChild(id);
+            if (previous != null) {
+                resolver.delete(previous);
+            }
+            resolver.move(path, bucket.getPath());
+            if (++pending == batchSize) {
+                resolver.commit();
+                pending = 0;
+            }
+        }
+        resolver.commit();
+        return paths.size();
+    }
+
+    private void replenish(ResourceResolver resolver, String poolPath, String stagedPath)
+            throws PersistenceException {
+        Resource staged = resolver.getResource(stagedPath);
+        Asset asset = staged != null ? staged.adaptTo(Asset.class) : null;
+        if (asset == null) {
+            logger.warn("Coupon pool {} is running low but its staged asset {} does not exist", poolPath, stagedPath);
+            return;
+        }
+        ModifiableValueMap rootProps = resolver.getResource(poolPath).adaptTo(ModifiableValueMap.class);
+        Calendar replenishedAt = rootProps.get(PN_REPLENISHED_AT, Calendar.class);
+        if (replenishedAt != null && asset.getLastModified() <= replenishedAt.getTimeInMillis()) {
+            logger.warn("Coupon pool {} is running low and {} was already imported, stage a new file",
+                    poolPath, stagedPath);
+            return;
+        }
+        try {
+            String jobId = importService.submitImport(stagedPath, poolPath);
+            rootProps.put(PN_REPLENISHED_AT, Calendar.getInstance());
+            resolver.commit();
+            logger.info("Coupon pool {} is running low, queued import job {} of {}", poolPath, jobId, stagedPath);
+        } catch (CouponImportException e) {
+            logger.error("Could not queue the replenishment of coupon pool {} from {}", poolPath, stagedPath, e);
+        }
+    }
+
+    private static boolean isExpired(ValueMap props, long now) {
+        Calendar expiresAt = props.get(CouponPoolService.PN_EXPIRES_AT, Calendar.class);
+        return expiresAt != null && expiresAt.getTimeInMillis() <= now;
+    }
+}
@@ -0,0 +1,15 @@
+package com.theme.xerago.core.services;
+
+/**
+ * Signals that a coupon could not be handed out because its claim could not
+ * be recorded, as opposed to an exhausted pool. The coupon is not returned to
+ * anybody; the request may be retried.
+ */
+public class CouponClaimException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CouponClaimException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,160 @@
+package com.theme.xerago.core.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Immutable copy of a single coupon node, detached from the resource
+ * resolver it was read with so it can be kept in a {@link CouponPool}.
+ * <p>
+ * Only public properties are kept; namespaced system properties such as
+ * {@code jcr:primaryType} are dropped. The JSON payload sent to visitors is
+ * rendered once, when the entry is created, and served as is afterwards.
+ */
+public final class CouponEntry {
+
+    private final String name;
+    private final String path;
+    private final byte[] json;
+    private Map<String, Object> properties;
+
+    public CouponEntry(String name, String path, Map<String, Object> properties) {
+        this.name = name;
+        this.path = path;
+        Map<String, Object> publicProperties = new LinkedHashMap<>();
+        properties.forEach((key, value) -> {
+            if (isPublic(key)) {
+                publicProperties.put(key, value);
+            }
+        });
+        this.properties = Collections.unmodifiableMap(publicProperties);
+        this.json = toJson(publicProperties);
+    }
+
+    private CouponEntry(String name, String path, byte[] json) {
+        this.name = name;
+        this.path = path;
+        this.json = json;
+    }
+
+    /**
+     * Restores an entry from its pre-rendered JSON payload, e.g. as read from
+     * a pool snapshot. The properties are only parsed if they are asked for,
+     * and then carry JSON types: numbers become doubles, dates strings.
+     */
+    public static CouponEntry fromJson(String name, String path, byte[] json) {
+        return new CouponEntry(name, path, json);
+    }
+
+    /**
+     * Creates an entry from the current state of the given coupon resource.
+     */
+    public static CouponEntry fromResource(Resource coupon) {
+        return new CouponEntry(coupon.getName(), coupon.getPath(), coupon.getValueMap());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Map<String, Object> getProperties() {
+        if (properties == null) {
+            // restored entry, racing threads parse the same payload to equal maps
+            properties = Collections.unmodifiableMap(parseJson(json));
+        }
+        return properties;
+    }
+
+    /**
+     * @return length in bytes of the UTF-8 encoded JSON payload
+     */
+    public int getJsonLength() {
+        return json.length;
+    }
+
+    /**
+     * @return the pre-rendered payload itself, not a copy
+     */
+    byte[] getJsonBytes() {
+        return json;
+    }
+
+    /**
+     * Writes the pre-rendered UTF-8 JSON payload of this coupon.
+     */
+    public void writeJson(OutputStream out) throws IOException {
+        out.write(json);
+    }
+
+    /**
+     * @return whether the property belongs in the visitor payload; namespaced
+     *         properties ({@code jcr:}, {@code sling:}, ...) and the claim
+     *         bookkeeping do not
+     */
+    static boolean isPublic(String propertyName) {
+        return propertyName.indexOf(':') < 0
+                && !CouponPoolService.PN_CLAIMED.equals(propertyName)
+                && !CouponPoolService.PN_CLAIMED_AT.equals(propertyName);
+    }
+
+    private static byte[] toJson(Map<String, Object> properties) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(bytes, StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                writer.name(property.getKey());
+                writeValue(writer, property.getValue());
+            }
+            writer.endObject();
+        } catch (IOException e) {
+            // cannot happen when writing to memory
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, Object> parseJson(byte[] json) {
+        Type type = new TypeToken<LinkedHashMap<String, Object>>() { }.getType();
+        return new Gson().fromJson(new String(json, StandardCharsets.UTF_8), type);
+    }
+
+    private static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Calendar) {
+            writer.value(((Calendar) value).toInstant().toString());
+        } else if (value.getClass().isArray()) {
+            writer.beginArray();
+            for (int i = 0, n = Array.getLength(value); i < n; i++) {
+                writeValue(writer, Array.get(value, i));
+            }
+            writer.endArray();
+        } else {
+            writer.value(value.toString());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.theme.xerago.core.services;
+
+/**
+ * Signals that a coupon import could not be started or was aborted, as
+ * opposed to single rows that are skipped or fail.
+ */
+public class CouponImportException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public CouponImportException(String message) {
+        super(message);
+    }
+
+    public CouponImportException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
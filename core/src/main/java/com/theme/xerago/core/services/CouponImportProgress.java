@@ -0,0 +1,99 @@
+package com.theme.xerago.core.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counters of one coupon import. Updated by the importing thread and
+ * safe to read from any other thread while the import is running.
+ */
+public final class CouponImportProgress {
+
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long endNanos;
+    private volatile String error;
+
+    public void created(long rows) {
+        created.addAndGet(rows);
+    }
+
+    public void skipped() {
+        skipped.incrementAndGet();
+    }
+
+    public void failed(long rows) {
+        failed.addAndGet(rows);
+    }
+
+    /**
+     * Stops the clock; {@link #getRowsPerSecond()} is frozen afterwards.
+     */
+    public void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * Records why the import was aborted.
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * @return why the import was aborted, {@code null} if it was not
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFinished() {
+        return endNanos != 0;
+    }
+
+    /**
+     * @return rows read so far, whatever became of them
+     */
+    public long getProcessed() {
+        return created.get() + skipped.get() + failed.get();
+    }
+
+    /**
+     * @return rows written to the repository and committed
+     */
+    public long getCreated() {
+        return created.get();
+    }
+
+    /**
+     * @return rows whose coupon already existed
+     */
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return rows that were invalid or could not be committed
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getElapsedMillis() {
+        long end = isFinished() ? endNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    public long getRowsPerSecond() {
+        long millis = getElapsedMillis();
+        return millis > 0 ? getProcessed() * 1000 / millis : getProcessed();
+    }
+
+    @Override
+    public String toString() {
+        return "created " + getCreated() + ", skipped " + getSkipped() + ", failed " + getFailed()
+                + " in " + getElapsedMillis() + " ms (" + getRowsPerSecond() + " rows/s)";
+    }
+}
@@ -0,0 +1,52 @@
+package com.theme.xerago.core.services;
+
+/**
+ * Imports coupons from a DAM asset into a coupon pool, either in the calling
+ * thread or as a background Sling job.
+ */
+public interface CouponImportService {
+
+    /**
+     * Topic of the Sling jobs that run submitted imports.
+     */
+    String JOB_TOPIC = "xeragotheme/coupons/import";
+
+    /**
+     * Job property holding the path of the DAM asset to import.
+     */
+    String PN_DAM_PATH = "damPath";
+
+    /**
+     * Job property holding the path of the target pool.
+     */
+    String PN_TARGET_PATH = "targetPath";
+
+    /**
+     * Streams the coupons of the asset into the pool, committing in batches
+     * so that neither the heap nor the repository transaction grows with the
+     * size of the file. Coupons whose id already exists in the pool, or
+     * repeats an earlier row of the file, are skipped.
+     *
+     * @param damPath path of a DAM asset holding coupons with an {@code id}: a JSON array of objects,
+     *                newline delimited JSON or CSV with a header record, told apart by MIME type
+     * @param targetPath path of the pool root, created if missing
+     * @return the final counters of the import
+     * @throws CouponImportException if the asset cannot be read or is malformed
+     */
+    CouponImportProgress importCoupons(String damPath, String targetPath) throws CouponImportException;
+
+    /**
+     * Queues an import as a background job and returns at once.
+     *
+     * @return the id of the job, to be passed to {@link #getProgress(String)}
+     * @throws CouponImportException if the job could not be queued
+     */
+    String submitImport(String damPath, String targetPath) throws CouponImportException;
+
+    /**
+     * @param jobId id returned by {@link #submitImport(String, String)}
+     * @return the counters of the job, or {@code null} if the job has not
+     *         started on this instance yet or is no longer remembered
+     */
+    CouponImportProgress getProgress(String jobId);
+}
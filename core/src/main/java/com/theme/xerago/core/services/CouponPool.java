@@ -0,0 +1,304 @@
+package com.theme.xerago.core.services;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Snapshot of the coupons in one pool, kept off-heap in a {@link CouponStore}
+ * so that pools of millions of coupons do not weigh on the garbage
+ * collector. The coupons of a snapshot never change; changes in the
+ * repository produce a new snapshot through
+ * {@link #apply(Collection, Collection)} which the owning
+ * {@link CouponPoolService} then publishes.
+ * <p>
+ * The only mutable state is one claim bit per entry, kept off-heap as well.
+ * Bits are set with compare-and-set on 64 entry words, so claiming never
+ * locks and each slot of a snapshot is handed out at most once.
+ */
+public final class CouponPool {
+
+    private static final VarHandle LONGS =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Removed entries are kept as claimed slots until they make up more than
+     * this share of the store, then the live ones are copied into a new store.
+     */
+    private static final int COMPACT_DIVISOR = 4;
+
+    private final String path;
+    private final CouponStore store;
+    private final int words;
+    private final ByteBuffer claimBits;
+    private final ByteBuffer removedBits;
+    private final AtomicInteger available;
+    private int removed;
+
+    public CouponPool(String path, List<CouponEntry> entries) {
+        this(path, CouponStore.of(path, entries));
+    }
+
+    private CouponPool(String path, CouponStore store) {
+        this.path = path;
+        this.store = store;
+        this.words = (store.size() + 63) >>> 6;
+        // compare-and-set through the view needs 8 byte aligned longs
+        this.claimBits = ByteBuffer.allocateDirect(words * 8 + 7).alignedSlice(8).order(ByteOrder.nativeOrder());
+        this.removedBits = ByteBuffer.allocateDirect(words * 8).order(ByteOrder.nativeOrder());
+        this.available = new AtomicInteger(store.size());
+        int tail = store.size() & 63;
+        if (tail != 0) {
+            // slots past the end of the last word count as claimed so the scan never returns them
+            LONGS.setVolatile(claimBits, (words - 1) * 8, -1L << tail);
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return number of slots, including those of entries removed since the
+     *         store was last compacted
+     */
+    public int size() {
+        return store.size();
+    }
+
+    public boolean isEmpty() {
+        return store.size() == removed;
+    }
+
+    /**
+     * @return number of entries of this snapshot that have not been claimed yet
+     */
+    public int available() {
+        return available.get();
+    }
+
+    /**
+     * Creates a heap copy of the entry in the given slot.
+     */
+    public CouponEntry get(int index) {
+        return store.get(path, index);
+    }
+
+    /**
+     * @return whether the entry in the given slot was removed from the pool;
+     *         such slots are never claimed
+     */
+    public boolean isRemoved(int index) {
+        return (removedBits.getLong((index >>> 6) * 8) & (1L << (index & 63))) != 0;
+    }
+
+    /**
+     * @return whether the snapshot still holds the coupon at the given path,
+     *         or any coupon below it if it is a bucket
+     */
+    public boolean contains(String couponPath) {
+        String prefix = path + "/";
+        if (!couponPath.startsWith(prefix)) {
+            return false;
+        }
+        String relativePath = couponPath.substring(prefix.length());
+        int index = store.indexOf(relativePath);
+        if (index >= 0) {
+            return !isRemoved(index);
+        }
+        if (isBucketPath(relativePath)) {
+            String bucketPrefix = relativePath + "/";
+            for (int i = 0; i < store.size(); i++) {
+                if (!isRemoved(i) && store.relativePath(i).startsWith(bucketPrefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Claims an unclaimed slot, starting the search at a random position.
+     * Fully claimed words are skipped 64 entries at a time.
+     *
+     * @return the index of the claimed entry, or {@code -1} if every entry of this snapshot is claimed
+     */
+    public int claimSlot() {
+        if (available.get() <= 0 || words == 0) {
+            return -1;
+        }
+        int start = ThreadLocalRandom.current().nextInt(store.size());
+        int offset = start & 63;
+        for (int i = 0; i < words; i++) {
+            int word = ((start >>> 6) + i) % words;
+            long bits = claimWord(word);
+            while (bits != -1L) {
+                int bit = (Long.numberOfTrailingZeros(Long.rotateRight(~bits, offset)) + offset) & 63;
+                if (LONGS.compareAndSet(claimBits, word * 8, bits, bits | (1L << bit))) {
+                    available.decrementAndGet();
+                    return (word << 6) + bit;
+                }
+                bits = claimWord(word);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Marks the given slot as claimed without handing it out.
+     *
+     * @return {@code true} if the slot was unclaimed before this call
+     */
+    public boolean markClaimed(int index) {
+        int word = index >>> 6;
+        long mask = 1L << (index & 63);
+        long bits = claimWord(word);
+        while ((bits & mask) == 0) {
+            if (LONGS.compareAndSet(claimBits, word * 8, bits, bits | mask)) {
+                available.decrementAndGet();
+                return true;
+            }
+            bits = claimWord(word);
+        }
+        return false;
+    }
+
+    /**
+     * Marks every entry whose path is in the given set as claimed.
+     */
+    public void markClaimed(Set<String> paths) {
+        String prefix = path + "/";
+        for (String claimed : paths) {
+            if (claimed.startsWith(prefix)) {
+                int index = store.indexOf(claimed.substring(prefix.length()));
+                if (index >= 0) {
+                    markClaimed(index);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a new snapshot in which the given entries replace (or are added
+     * next to) the existing ones and the entries at or below the given paths
+     * are gone. This snapshot is left untouched; the new one starts with the
+     * claims made on this one so far.
+     * <p>
+     * As long as entries are only removed, the new snapshot shares the store
+     * of this one and merely marks the removed slots.
+     *
+     * @param upserts entries that were added or changed
+     * @param removedPaths paths of coupons or buckets that no longer exist
+     */
+    public CouponPool apply(Collection<CouponEntry> upserts, Collection<String> removedPaths) {
+        if (upserts.isEmpty() && removedPaths.isEmpty()) {
+            return this;
+        }
+        BitSet dropped = removedSlots();
+        String prefix = path + "/";
+        for (CouponEntry upsert : upserts) {
+            dropSlot(dropped, upsert.getPath().substring(prefix.length()));
+        }
+        for (String removedPath : removedPaths) {
+            if (removedPath.startsWith(prefix)) {
+                dropSlot(dropped, removedPath.substring(prefix.length()));
+            }
+        }
+        if (upserts.isEmpty() && dropped.cardinality() * COMPACT_DIVISOR <= store.size()) {
+            CouponPool next = new CouponPool(path, store);
+            for (int word = 0; word < words; word++) {
+                LONGS.setVolatile(next.claimBits, word * 8, claimWord(word));
+            }
+            next.available.set(next.countUnclaimed());
+            for (int index = dropped.nextSetBit(0); index >= 0; index = dropped.nextSetBit(index + 1)) {
+                next.markRemoved(index);
+            }
+            return next;
+        }
+        int[] kept = new int[store.size() - dropped.cardinality() + upserts.size()];
+        CouponPool next = new CouponPool(path, store.with(path, dropped, upserts, kept));
+        for (int index = 0, keptCount = store.size() - dropped.cardinality(); index < keptCount; index++) {
+            if (isClaimed(kept[index])) {
+                next.markClaimed(index);
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Finds the slot of the coupon, or the slots below a removed bucket.
+     */
+    private void dropSlot(BitSet dropped, String relativePath) {
+        int index = store.indexOf(relativePath);
+        if (index >= 0) {
+            dropped.set(index);
+        } else if (isBucketPath(relativePath)) {
+            String bucketPrefix = relativePath + "/";
+            for (int i = 0; i < store.size(); i++) {
+                if (!dropped.get(i) && store.relativePath(i).startsWith(bucketPrefix)) {
+                    dropped.set(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the path names a bucket of the sharded layout rather than a coupon
+     */
+    private static boolean isBucketPath(String relativePath) {
+        String[] names = relativePath.split("/");
+        if (names.length > CouponShards.LEVELS) {
+            return false;
+        }
+        for (String name : names) {
+            if (name.length() != 2 || Character.digit(name.charAt(0), 16) < 0
+                    || Character.digit(name.charAt(1), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void markRemoved(int index) {
+        int word = index >>> 6;
+        removedBits.putLong(word * 8, removedBits.getLong(word * 8) | (1L << (index & 63)));
+        removed++;
+        markClaimed(index);
+    }
+
+    private BitSet removedSlots() {
+        BitSet slots = new BitSet(store.size());
+        if (removed > 0) {
+            for (int word = 0; word < words; word++) {
+                long bits = removedBits.getLong(word * 8);
+                for (; bits != 0; bits &= bits - 1) {
+                    slots.set((word << 6) + Long.numberOfTrailingZeros(bits));
+                }
+            }
+        }
+        return slots;
+    }
+
+    private int countUnclaimed() {
+        int unclaimed = 0;
+        for (int word = 0; word < words; word++) {
+            unclaimed += Long.bitCount(~claimWord(word));
+        }
+        return unclaimed;
+    }
+
+    private boolean isClaimed(int index) {
+        return (claimWord(index >>> 6) & (1L << (index & 63))) != 0;
+    }
+
+    private long claimWord(int word) {
+        return (long) LONGS.getVolatile(claimBits, word * 8);
+    }
+}
@@ -0,0 +1,58 @@
+package com.theme.xerago.core.services;
+
+/**
+ * Keeps an in-memory snapshot of each coupon pool so that handing out a
+ * coupon does not need to list the pool in the repository. Snapshots are
+ * loaded on first use and kept current from resource change events.
+ */
+public interface CouponPoolService {
+
+    /**
+     * Boolean property set on a coupon node once it has been handed out.
+     */
+    String PN_CLAIMED = "claimed";
+
+    /**
+     * Date property recording when a coupon was handed out.
+     */
+    String PN_CLAIMED_AT = "claimedAt";
+
+    /**
+     * Optional date property after which a coupon is no longer handed out.
+     */
+    String PN_EXPIRES_AT = "expiresAt";
+
+    /**
+     * Long property on the pool root holding the number of coupons that were
+     * neither claimed nor expired when the pool maintenance last counted them.
+     */
+    String PN_AVAILABLE_COUNT = "availableCount";
+
+    /**
+     * String property on the pool root that changes whenever coupons are
+     * added or moved in bulk, e.g. by an import, and whenever the pool
+     * service observes a change of a coupon that is not one of its own
+     * claims. A local snapshot of the pool is only trusted while the
+     * revision it was taken at is still current.
+     */
+    String PN_REVISION = "revision";
+
+    /**
+     * @param poolPath absolute path of the pool root, e.g. {@code /content/coupons/static}
+     * @return the current snapshot of the pool, or {@code null} if the pool root does not exist
+     */
+    CouponPool getPool(String poolPath);
+
+    /**
+     * Hands out a coupon of the given pool. Every coupon is returned by at
+     * most one call on this instance; the claim is journalled on local disk
+     * before it is returned and written back to the repository
+     * asynchronously. Other publish instances only see the claim once it is
+     * in the repository.
+     *
+     * @param poolPath absolute path of the pool root
+     * @return the claimed coupon, or {@code null} if the pool does not exist or is exhausted
+     * @throws CouponClaimException if the claim could not be journalled in time
+     */
+    CouponEntry claim(String poolPath);
+}
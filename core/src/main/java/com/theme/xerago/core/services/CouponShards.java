@@ -0,0 +1,161 @@
+package com.theme.xerago.core.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Layout of a sharded coupon pool. Coupons are not stored as direct children
+ * of the pool root but two bucket levels below it, picked from a hash of the
+ * coupon id: {@code <pool>/<h1>/<h2>/<id>}, with 256 buckets per level. Even
+ * a pool of millions of coupons then only has a few dozen children per node.
+ * <p>
+ * Buckets are {@code sling:Folder} nodes, coupons never are. Readers tell the
+ * two apart by that, which lets pools that still hold flat coupons next to
+ * buckets work until {@link #migrate(ResourceResolver, Resource, int)} has
+ * moved them.
+ */
+public final class CouponShards {
+
+    /**
+     * Primary type of bucket nodes.
+     */
+    public static final String BUCKET_TYPE = "sling:Folder";
+
+    /**
+     * Number of bucket levels between the pool root and a coupon.
+     */
+    public static final int LEVELS = 2;
+
+    private static final String PN_PRIMARY_TYPE = "jcr:primaryType";
+
+    private static final Map<String, Object> BUCKET_PROPERTIES =
+            Collections.singletonMap(PN_PRIMARY_TYPE, BUCKET_TYPE);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private CouponShards() {
+        // static methods only
+    }
+
+    /**
+     * @return path of the bucket the coupon with the given id belongs in, relative to the pool root
+     */
+    public static String bucketPath(String couponId) {
+        // spread String.hashCode (stable across JVMs) over 16 bits
+        int bucket = (couponId.hashCode() * 0x9E3779B9) >>> 16;
+        return new String(new char[] {
+                HEX[(bucket >>> 12) & 0xf], HEX[(bucket >>> 8) & 0xf], '/',
+                HEX[(bucket >>> 4) & 0xf], HEX[bucket & 0xf] });
+    }
+
+    /**
+     * @return absolute path of the coupon with the given id in the given pool
+     */
+    public static String couponPath(String poolPath, String couponId) {
+        return poolPath + "/" + bucketPath(couponId) + "/" + couponId;
+    }
+
+    /**
+     * @return whether the resource is a bucket rather than a coupon
+     */
+    public static boolean isBucket(Resource resource) {
+        return BUCKET_TYPE.equals(resource.getValueMap().get(PN_PRIMARY_TYPE, String.class));
+    }
+
+    /**
+     * Returns the bucket the coupon with the given id belongs in, creating
+     * missing bucket levels. Nothing is committed.
+     */
+    public static Resource getOrCreateBucket(ResourceResolver resolver, Resource pool, String couponId)
+            throws PersistenceException {
+        Resource bucket = pool;
+        for (String name : bucketPath(couponId).split("/")) {
+            Resource child = bucket.getChild(name);
+            bucket = child != null ? child : resolver.create(bucket, name, BUCKET_PROPERTIES);
+        }
+        return bucket;
+    }
+
+    /**
+     * Collects every coupon of the pool, descending into buckets at any depth.
+     */
+    public static void collectCoupons(Resource parent, List<Resource> coupons) {
+        forEachCoupon(parent, coupons::add);
+    }
+
+    /**
+     * Passes every coupon of the pool to the consumer without collecting
+     * them, descending into buckets at any depth.
+     */
+    public static void forEachCoupon(Resource parent, Consumer<Resource> consumer) {
+        for (Resource child : parent.getChildren()) {
+            if (isBucket(child)) {
+                forEachCoupon(child, consumer);
+            } else {
+                consumer.accept(child);
+            }
+        }
+    }
+
+    /**
+     * Sets a new {@link CouponPoolService#PN_REVISION} on the pool root after
+     * coupons were written in bulk, so that local snapshots of the pool taken
+     * before are no longer used. Nothing is committed.
+     */
+    public static void newRevision(Resource pool) {
+        ModifiableValueMap props = pool.adaptTo(ModifiableValueMap.class);
+        if (props != null) {
+            props.put(CouponPoolService.PN_REVISION, UUID.randomUUID().toString());
+        }
+    }
+
+    /**
+     * Moves the coupons stored directly below the pool root into their
+     * buckets, committing after every batch. Safe to run again on a pool
+     * that is already (partly) migrated.
+     *
+     * @return number of coupons moved
+     */
+    public static int migrate(ResourceResolver resolver, Resource pool, int batchSize)
+            throws PersistenceException {
+        String poolPath = pool.getPath();
+        int moved = 0;
+        List<String> batch = new ArrayList<>(batchSize);
+        do {
+            batch.clear();
+            Resource root = resolver.getResource(poolPath);
+            for (Iterator<Resource> children = root.listChildren(); children.hasNext() && batch.size() < batchSize; ) {
+                Resource child = children.next();
+                if (!isBucket(child) && child.getName().indexOf(':') < 0) {
+                    batch.add(child.getName());
+                }
+            }
+            for (String id : batch) {
+                Resource bucket = getOrCreateBucket(resolver, root, id);
+                if (bucket.getChild(id) != null) {
+                    // already imported into its bucket, the flat copy is redundant
+                    resolver.delete(root.getChild(id));
+                } else {
+                    resolver.move(poolPath + "/" + id, bucket.getPath());
+                }
+            }
+            resolver.commit();
+            moved += batch.size();
+        } while (batch.size() == batchSize);
+        if (moved > 0) {
+            newRevision(resolver.getResource(poolPath));
+            resolver.commit();
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,188 @@
+package com.theme.xerago.core.services;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Immutable off-heap storage of the coupons of a pool. Each coupon is one
+ * fixed-width record in a direct buffer,
+ * {@code [path length:4][json length:4][path][json]}, with the path relative
+ * to the pool root and every record padded to the width of the longest one.
+ * An open-addressing table in a second direct buffer finds a record by its
+ * path, so the heap holds neither the coupons nor an index of them however
+ * large the pool is.
+ * <p>
+ * Records are split into chunks of at most 1 GiB, as a single buffer cannot
+ * be larger than 2 GiB.
+ */
+final class CouponStore {
+
+    private static final int HEADER = 8;
+
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private static final CouponStore EMPTY = new CouponStore(0, HEADER);
+
+    private final int size;
+    private final int width;
+    private final int recordsPerChunk;
+    private final ByteBuffer[] chunks;
+    private final ByteBuffer table;
+    private final int tableMask;
+
+    private CouponStore(int size, int width) {
+        this.size = size;
+        this.width = width;
+        this.recordsPerChunk = Math.max(1, MAX_CHUNK_BYTES / width);
+        int chunkCount = (size + recordsPerChunk - 1) / recordsPerChunk;
+        this.chunks = new ByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            int records = Math.min(recordsPerChunk, size - i * recordsPerChunk);
+            chunks[i] = ByteBuffer.allocateDirect(records * width);
+        }
+        int slots = Integer.highestOneBit(Math.max(2, size) * 2 - 1) * 2;
+        this.table = ByteBuffer.allocateDirect(slots * 4);
+        this.tableMask = slots - 1;
+    }
+
+    /**
+     * Copies the given entries into a new store.
+     *
+     * @param poolPath path of the pool root every entry lies below
+     */
+    static CouponStore of(String poolPath, Collection<CouponEntry> entries) {
+        return EMPTY.with(poolPath, new BitSet(), entries);
+    }
+
+    /**
+     * Copies the records that are not dropped, followed by the given entries,
+     * into a new store.
+     *
+     * @param kept receives, for each index of the new store that holds a
+     *             record of this store, the index it had here; may be {@code null}
+     */
+    CouponStore with(String poolPath, BitSet dropped, Collection<CouponEntry> added, int[] kept) {
+        int width = this.width;
+        byte[][] paths = new byte[added.size()][];
+        int i = 0;
+        for (CouponEntry entry : added) {
+            paths[i] = relativePath(poolPath, entry.getPath());
+            width = Math.max(width, HEADER + paths[i++].length + entry.getJsonLength());
+        }
+        CouponStore store = new CouponStore(size - dropped.cardinality() + added.size(), width);
+        int target = 0;
+        byte[] record = new byte[this.width];
+        for (int index = dropped.nextClearBit(0); index < size; index = dropped.nextClearBit(index + 1)) {
+            record(index).get(record);
+            store.record(target).put(record);
+            if (kept != null) {
+                kept[target] = index;
+            }
+            store.addToTable(target++, hash(record, HEADER, record(index).getInt()));
+        }
+        i = 0;
+        for (CouponEntry entry : added) {
+            byte[] json = entry.getJsonBytes();
+            store.record(target).putInt(paths[i].length).putInt(json.length).put(paths[i]).put(json);
+            store.addToTable(target++, hash(paths[i], 0, paths[i++].length));
+        }
+        return store;
+    }
+
+    CouponStore with(String poolPath, BitSet dropped, Collection<CouponEntry> added) {
+        return with(poolPath, dropped, added, null);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Creates a heap copy of the record at the given index.
+     */
+    CouponEntry get(String poolPath, int index) {
+        ByteBuffer record = record(index);
+        byte[] path = new byte[record.getInt()];
+        byte[] json = new byte[record.getInt()];
+        record.get(path).get(json);
+        String relativePath = new String(path, StandardCharsets.UTF_8);
+        return CouponEntry.fromJson(relativePath.substring(relativePath.lastIndexOf('/') + 1),
+                poolPath + "/" + relativePath, json);
+    }
+
+    /**
+     * @return the path of the record at the given index, relative to the pool root
+     */
+    String relativePath(int index) {
+        ByteBuffer record = record(index);
+        byte[] path = new byte[record.getInt()];
+        record.position(record.position() + 4);
+        record.get(path);
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param relativePath path of a coupon relative to the pool root
+     * @return index of its record, or {@code -1} if it is not stored
+     */
+    int indexOf(String relativePath) {
+        byte[] path = relativePath.getBytes(StandardCharsets.UTF_8);
+        for (int slot = hash(path, 0, path.length) & tableMask; ; slot = (slot + 1) & tableMask) {
+            int entry = table.getInt(slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (pathEquals(entry - 1, path)) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void addToTable(int index, int hash) {
+        int slot = hash & tableMask;
+        while (table.getInt(slot * 4) != 0) {
+            slot = (slot + 1) & tableMask;
+        }
+        table.putInt(slot * 4, index + 1);
+    }
+
+    private boolean pathEquals(int index, byte[] path) {
+        ByteBuffer chunk = chunks[index / recordsPerChunk];
+        int offset = (index % recordsPerChunk) * width;
+        if (chunk.getInt(offset) != path.length) {
+            return false;
+        }
+        for (int i = 0; i < path.length; i++) {
+            if (chunk.get(offset + HEADER + i) != path[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ByteBuffer record(int index) {
+        ByteBuffer chunk = chunks[index / recordsPerChunk].duplicate();
+        int offset = (index % recordsPerChunk) * width;
+        chunk.limit(offset + width).position(offset);
+        return chunk;
+    }
+
+    private static byte[] relativePath(String poolPath, String path) {
+        return path.substring(poolPath.length() + 1).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * FNV-1a with a final avalanche, so that similar coupon ids spread over the table.
+     */
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (bytes[i] & 0xff)) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
+    }
+}
@@ -0,0 +1,28 @@
+package com.theme.xerago.core.services;
+
+import java.util.function.Function;
+
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Keeps what game component models derive from their authored configuration,
+ * e.g. the segment JSON of a wheel spin, so that rendering a component again
+ * does not rebuild it. Entries are keyed by component path and revision, the
+ * last modification date of the component, and dropped when anything at or
+ * below the component changes.
+ */
+public interface GameConfigCache {
+
+    /**
+     * Returns the value cached for the component, building it if there is
+     * none for the current revision or the cached one is of another type.
+     * The builder runs outside of any lock, so concurrent renders of a
+     * changed component may build it more than once.
+     *
+     * @param component the component resource
+     * @param type type of the value, telling apart values of different models of one component
+     * @param build builds the value from the component
+     * @return the cached or newly built value
+     */
+    <T> T get(Resource component, Class<T> type, Function<Resource, T> build);
+}
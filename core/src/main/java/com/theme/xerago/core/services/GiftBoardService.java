@@ -0,0 +1,20 @@
+package com.theme.xerago.core.services;
+
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Opens gift boxes of a pick-a-gift component. The prize in the chosen box
+ * is drawn when it is opened, through the component's {@link PrizeTable},
+ * so pacing applies; the other boxes are laid out from a board generated
+ * ahead of time, so opening a box is a draw and a dequeue.
+ */
+public interface GiftBoardService {
+
+    /**
+     * @param component a {@code floating-pick-a-gift} component resource
+     * @param box position of the chosen box, from 0 to the number of prizes
+     * @return the drawn prize and the board around it; {@code null} for any other resource
+     * @throws IllegalArgumentException if there is no box at the given position
+     */
+    OpenedGift open(Resource component, int box);
+}
@@ -0,0 +1,41 @@
+package com.theme.xerago.core.services;
+
+/**
+ * Outcome of opening one gift box of a pick-a-gift board: the prize drawn
+ * for the chosen box and the layout of the whole board, which only tells
+ * how the boxes that were not chosen look.
+ */
+public final class OpenedGift {
+
+    private final int box;
+    private final Prize prize;
+    private final int[] board;
+
+    public OpenedGift(int box, Prize prize, int[] board) {
+        this.box = box;
+        this.prize = prize;
+        this.board = board;
+    }
+
+    /**
+     * @return position of the chosen box on the board
+     */
+    public int getBox() {
+        return box;
+    }
+
+    /**
+     * @return the prize in the chosen box, {@code null} for the "better luck" box
+     */
+    public Prize getPrize() {
+        return prize;
+    }
+
+    /**
+     * @return prize index in each box, {@code -1} for the "better luck" box;
+     *         the chosen box holds the drawn prize
+     */
+    public int[] getBoard() {
+        return board;
+    }
+}
@@ -0,0 +1,45 @@
+package com.theme.xerago.core.services;
+
+/**
+ * One drawable outcome of a game component: a wheel segment or a gift prize,
+ * at the same position it has in the JSON handed to the front end.
+ */
+public final class Prize {
+
+    private final int index;
+    private final String text;
+    private final String redeemCode;
+    private final double weight;
+
+    public Prize(int index, String text, String redeemCode, double weight) {
+        this.index = index;
+        this.text = text;
+        this.redeemCode = redeemCode;
+        this.weight = weight;
+    }
+
+    /**
+     * @return position of the prize in the component's segment or prize list
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return redeem code of the prize, empty for "try again" outcomes
+     */
+    public String getRedeemCode() {
+        return redeemCode;
+    }
+
+    /**
+     * @return authored probability, relative to the other prizes of the same component
+     */
+    public double getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,215 @@
+package com.theme.xerago.core.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.theme.xerago.core.utils.AliasTable;
+import com.theme.xerago.core.utils.TokenBucket;
+
+/**
+ * Weighted draw over the prizes of one component. Draws honour the authored
+ * probabilities and take constant time, however many prizes there are.
+ * <p>
+ * Prizes may be paced to a number per hour, spread evenly: each paced prize
+ * has a {@link TokenBucket} that grants one draw per interval and saves up
+ * none. A paced prize whose bucket is empty is drawn again instead, which
+ * keeps the odds of the other prizes as authored; should a few draws in a
+ * row miss, one is picked by weight among the prizes still in budget, which
+ * keeps their odds too at the cost of a linear scan. The
+ * buckets are the only mutable state, so draws take no lock. They may be
+ * owned by the caller and handed to every table built for the same
+ * component, so that a rebuilt table goes on with the budget of the one it
+ * replaces.
+ */
+public final class PrizeTable {
+
+    /**
+     * Draws before falling back to a scan of the prizes in budget.
+     */
+    private static final int MAX_DRAWS = 4;
+
+    private final List<Prize> prizes;
+    private final AliasTable aliasTable;
+    private final TokenBucket[] budgets;
+
+    public PrizeTable(List<Prize> prizes) {
+        this(prizes, Collections.emptyMap());
+    }
+
+    /**
+     * @param hourlyLimits prizes per hour by redeem code, prizes not listed or
+     *                     with a limit that is not positive are not paced
+     */
+    public PrizeTable(List<Prize> prizes, Map<String, Double> hourlyLimits) {
+        this(prizes, redeemCode -> {
+            Double perHour = hourlyLimits.get(redeemCode);
+            return perHour != null && perHour > 0 ? newBudget(perHour) : null;
+        });
+    }
+
+    /**
+     * @param budgets bucket of the prizes with the given redeem code, {@code null} for prizes that are not paced
+     */
+    public PrizeTable(List<Prize> prizes, Function<String, TokenBucket> budgets) {
+        this.prizes = Collections.unmodifiableList(new ArrayList<>(prizes));
+        double[] weights = new double[prizes.size()];
+        TokenBucket[] buckets = new TokenBucket[prizes.size()];
+        boolean paced = false;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = prizes.get(i).getWeight();
+            buckets[i] = budgets.apply(prizes.get(i).getRedeemCode());
+            paced |= buckets[i] != null;
+        }
+        this.aliasTable = new AliasTable(weights);
+        this.budgets = paced ? buckets : null;
+    }
+
+    /**
+     * Builds a table from the segment or prize JSON the game models render.
+     * Entries without a {@code probability} get a weight of one.
+     *
+     * @param json JSON array of objects with {@code text}, {@code redeemCode} and {@code probability}
+     */
+    public static PrizeTable fromJson(String json) {
+        return fromJson(json, Collections.emptyMap());
+    }
+
+    /**
+     * Builds a paced table from the segment or prize JSON the game models render.
+     *
+     * @param hourlyLimits prizes per hour by redeem code, prizes not listed are not paced
+     */
+    public static PrizeTable fromJson(String json, Map<String, Double> hourlyLimits) {
+        return new PrizeTable(parse(json), hourlyLimits);
+    }
+
+    /**
+     * Builds a table from the segment or prize JSON the game models render,
+     * paced by buckets the caller keeps.
+     *
+     * @param budgets bucket of the prizes with the given redeem code, {@code null} for prizes that are not paced
+     */
+    public static PrizeTable fromJson(String json, Function<String, TokenBucket> budgets) {
+        return new PrizeTable(parse(json), budgets);
+    }
+
+    /**
+     * @return a bucket that grants the given number of prizes per hour, one at a time
+     */
+    public static TokenBucket newBudget(double perHour) {
+        return new TokenBucket(perHour / 3600, 1);
+    }
+
+    private static List<Prize> parse(String json) {
+        JsonArray array = JsonParser.parseString(json).getAsJsonArray();
+        List<Prize> prizes = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            JsonObject item = array.get(i).getAsJsonObject();
+            JsonElement probability = item.get("probability");
+            prizes.add(new Prize(i, getString(item, "text"), getString(item, "redeemCode"),
+                    probability != null && !probability.isJsonNull() ? probability.getAsDouble() : 1));
+        }
+        return prizes;
+    }
+
+    private static String getString(JsonObject item, String name) {
+        JsonElement value = item.get(name);
+        return value != null && !value.isJsonNull() ? value.getAsString() : "";
+    }
+
+    public List<Prize> getPrizes() {
+        return prizes;
+    }
+
+    public int size() {
+        return prizes.size();
+    }
+
+    /**
+     * @return whether any prize of the table is paced
+     */
+    public boolean isPaced() {
+        return budgets != null;
+    }
+
+    /**
+     * Draws a prize using the calling thread's random generator.
+     *
+     * @return the prize, {@code null} only if every prize that can be drawn is paced and out of budget
+     */
+    public Prize draw() {
+        return draw(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Draws a prize using the given random generator.
+     *
+     * @return the prize, {@code null} only if every prize that can be drawn is paced and out of budget
+     */
+    public Prize draw(Random random) {
+        int first = aliasTable.next(random);
+        if (budgets == null || isGranted(first)) {
+            return prizes.get(first);
+        }
+        for (int draw = 1; draw < MAX_DRAWS; draw++) {
+            int index = aliasTable.next(random);
+            if (isGranted(index)) {
+                return prizes.get(index);
+            }
+        }
+        return drawInBudget(first, random);
+    }
+
+    /**
+     * Picks a prize by weight among those that may be drawn, leaving out each
+     * one found out of budget, so the result is as likely as with a table of
+     * the prizes in budget only.
+     */
+    private Prize drawInBudget(int outOfBudget, Random random) {
+        boolean[] excluded = new boolean[prizes.size()];
+        excluded[outOfBudget] = true;
+        for (int round = 0; round < prizes.size(); round++) {
+            double total = 0;
+            int last = -1;
+            for (int i = 0; i < prizes.size(); i++) {
+                if (!excluded[i] && prizes.get(i).getWeight() > 0) {
+                    total += prizes.get(i).getWeight();
+                    last = i;
+                }
+            }
+            if (last < 0) {
+                return null;
+            }
+            double target = random.nextDouble() * total;
+            int index = last;
+            for (int i = 0; i < last; i++) {
+                if (!excluded[i] && prizes.get(i).getWeight() > 0) {
+                    target -= prizes.get(i).getWeight();
+                    if (target < 0) {
+                        index = i;
+                        break;
+                    }
+                }
+            }
+            if (isGranted(index)) {
+                return prizes.get(index);
+            }
+            excluded[index] = true;
+        }
+        return null;
+    }
+
+    private boolean isGranted(int index) {
+        TokenBucket budget = budgets[index];
+        return budget == null || budget.tryAcquire();
+    }
+}
@@ -0,0 +1,17 @@
+package com.theme.xerago.core.services;
+
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * Provides the weighted {@link PrizeTable} of a wheel spin or pick-a-gift
+ * component. Tables are built from the authored multifield once and kept
+ * until that multifield changes.
+ */
+public interface PrizeTableService {
+
+    /**
+     * @param component a {@code wheel-spin-game} or {@code floating-pick-a-gift} component resource
+     * @return the prize table of the component, or {@code null} for any other resource
+     */
+    PrizeTable getPrizeTable(Resource component);
+}
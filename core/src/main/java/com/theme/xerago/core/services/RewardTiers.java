@@ -0,0 +1,73 @@
+package com.theme.xerago.core.services;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable map from a game score to the coupon pool of its reward tier.
+ * Thresholds are sorted once when the tiers are built, so resolving a score
+ * is a binary search over a small int array.
+ */
+public final class RewardTiers {
+
+    private final int[] thresholds;
+    private final String[] poolPaths;
+
+    private RewardTiers(int[] thresholds, String[] poolPaths) {
+        this.thresholds = thresholds;
+        this.poolPaths = poolPaths;
+    }
+
+    /**
+     * Parses tier definitions of the form {@code <minPoints>=<poolPath>}, e.g.
+     * {@code 100=/content/coupons/silver}. A later definition of the same
+     * threshold replaces an earlier one.
+     *
+     * @throws IllegalArgumentException if a definition is malformed
+     */
+    public static RewardTiers parse(String... definitions) {
+        TreeMap<Integer, String> tiers = new TreeMap<>();
+        for (String definition : definitions) {
+            int separator = definition.indexOf('=');
+            String poolPath = separator < 0 ? "" : definition.substring(separator + 1).trim();
+            if (poolPath.isEmpty()) {
+                throw new IllegalArgumentException("Reward tier is not <minPoints>=<poolPath>: " + definition);
+            }
+            try {
+                tiers.put(Integer.parseInt(definition.substring(0, separator).trim()), poolPath);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Reward tier threshold is not a number: " + definition, e);
+            }
+        }
+        int[] thresholds = new int[tiers.size()];
+        String[] poolPaths = new String[tiers.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> tier : tiers.entrySet()) {
+            thresholds[i] = tier.getKey();
+            poolPaths[i++] = tier.getValue();
+        }
+        return new RewardTiers(thresholds, poolPaths);
+    }
+
+    public int size() {
+        return thresholds.length;
+    }
+
+    /**
+     * @return index of the highest tier whose threshold the score reaches, or
+     *         -1 if the score is below every threshold
+     */
+    public int tierOf(int points) {
+        int index = Arrays.binarySearch(thresholds, points);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    public int getThreshold(int tier) {
+        return thresholds[tier];
+    }
+
+    public String getPoolPath(int tier) {
+        return poolPaths[tier];
+    }
+}
@@ -0,0 +1,401 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write-ahead journal of coupon claims on the local disk of the instance.
+ * Request threads add their claim to an in-memory group and wait until a
+ * background thread has written and fsynced the group, which it does every
+ * few milliseconds, so one fsync covers every claim of that interval and no
+ * request waits for a repository commit.
+ * <p>
+ * Each claim is one line, {@code <epoch millis> <coupon path>}; lines that
+ * do not parse are logged and skipped. The offset
+ * up to which claims have been applied to the repository is kept in a
+ * checkpoint file next to the journal; whatever lies behind it, e.g. after a
+ * crash, is applied again by the next reconciliation. Once everything is
+ * applied and the journal has grown large, it is truncated.
+ */
+@Designate(ocd = CouponClaimJournal.Config.class)
+@Component(service = CouponClaimJournal.class)
+public class CouponClaimJournal {
+
+    @ObjectClassDefinition(name = "Xerago Coupon Claim Journal",
+                           description = "Local write-ahead journal of handed out coupons")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Group commit interval",
+                             description = "Milliseconds between two fsyncs of the journal")
+        long groupCommitMillis() default 5;
+
+        @AttributeDefinition(name = "Max wait",
+                             description = "Milliseconds a request waits for its claim to be synced at most")
+        long maxWaitMillis() default 1000;
+
+        @AttributeDefinition(name = "Truncate size",
+                             description = "Bytes after which a fully applied journal is truncated")
+        long truncateBytes() default 16 * 1024 * 1024;
+
+        @AttributeDefinition(name = "Directory",
+                             description = "Directory of the journal, empty for the data area of the bundle")
+        String directory() default "";
+    }
+
+    /**
+     * Claims read from the journal, with the offset just behind the last one.
+     */
+    public static final class Batch {
+
+        private final List<String> paths;
+        private final List<Long> claimedAt;
+        private final long startOffset;
+        private final long endOffset;
+
+        Batch(List<String> paths, List<Long> claimedAt, long startOffset, long endOffset) {
+            this.paths = paths;
+            this.claimedAt = claimedAt;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        public List<String> getPaths() {
+            return paths;
+        }
+
+        /**
+         * @return epoch millis of the claim of the path at the same index
+         */
+        public List<Long> getClaimedAt() {
+            return claimedAt;
+        }
+
+        public long getEndOffset() {
+            return endOffset;
+        }
+
+        /**
+         * @return whether nothing was read, not even lines that were skipped
+         */
+        public boolean isEmpty() {
+            return paths.isEmpty() && endOffset == startOffset;
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Object groupLock = new Object();
+
+    private final Object fileLock = new Object();
+
+    private List<byte[]> group = new ArrayList<>();
+
+    private long appended;
+
+    private long synced;
+
+    private volatile boolean running;
+
+    private long groupCommitMillis;
+
+    private long maxWaitMillis;
+
+    private long truncateBytes;
+
+    private File journalFile;
+
+    private File checkpointFile;
+
+    private FileChannel channel;
+
+    private Thread flusher;
+
+    @Activate
+    protected void activate(final BundleContext bundleContext, final Config config) throws IOException {
+        groupCommitMillis = Math.max(1, config.groupCommitMillis());
+        maxWaitMillis = Math.max(groupCommitMillis, config.maxWaitMillis());
+        truncateBytes = config.truncateBytes();
+        File directory = config.directory().isEmpty()
+                ? bundleContext.getDataFile("coupon-claims") : new File(config.directory());
+        Files.createDirectories(directory.toPath());
+        journalFile = new File(directory, "claims.journal");
+        checkpointFile = new File(directory, "claims.applied");
+        channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        dropTornTail();
+        channel.position(channel.size());
+        long pending = channel.size() - getAppliedOffset();
+        if (pending > 0) {
+            logger.info("Coupon claim journal has {} bytes of claims not applied to the repository yet", pending);
+        }
+        running = true;
+        flusher = new Thread(this::flushLoop, "coupon-claim-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    @Deactivate
+    protected void deactivate() throws IOException, InterruptedException {
+        // not interrupted: FileChannel would close itself if a write or force was under way
+        running = false;
+        flusher.join(maxWaitMillis + groupCommitMillis);
+        synchronized (fileLock) {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Journals the claim of the coupon at the given path and returns once it
+     * is on disk. Gives up after the configured maximum wait if the disk is
+     * slow or failing, or at once if the journal is shut down.
+     *
+     * @return {@code true} if the claim is on disk; {@code false} if it is
+     *         not, in which case the coupon must not be handed out. The claim
+     *         may still reach the disk later if it was being written when the
+     *         wait ended, which burns the coupon but never hands it out twice.
+     */
+    public boolean append(String couponPath) {
+        byte[] line = (System.currentTimeMillis() + " " + couponPath + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (groupLock) {
+            if (!running) {
+                logger.warn("Coupon claim of {} refused, the journal is shut down", couponPath);
+                return false;
+            }
+            group.add(line);
+            long sequence = ++appended;
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            try {
+                while (synced < sequence) {
+                    long wait = deadline - System.currentTimeMillis();
+                    if (wait <= 0) {
+                        logger.warn("Coupon claim of {} not synced within {} ms", couponPath, maxWaitMillis);
+                        group.remove(line);
+                        return false;
+                    }
+                    groupLock.wait(wait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                group.remove(line);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads up to {@code max} claims behind the applied offset that are on disk.
+     */
+    public Batch read(int max) throws IOException {
+        long offset = getAppliedOffset();
+        List<String> paths = new ArrayList<>();
+        List<Long> claimedAt = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        long position = offset;
+        long end = offset;
+        synchronized (fileLock) {
+            while (paths.size() < max && channel.read(buffer, position) > 0) {
+                buffer.flip();
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                buffer.clear();
+                int start = 0;
+                for (int i = 0; i < bytes.length && paths.size() < max; i++) {
+                    if (bytes[i] == '\n') {
+                        line.write(bytes, start, i - start);
+                        String claim = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                        int separator = claim.indexOf(' ');
+                        try {
+                            if (separator < 1 || separator == claim.length() - 1) {
+                                throw new NumberFormatException();
+                            }
+                            claimedAt.add(Long.parseLong(claim.substring(0, separator)));
+                            paths.add(claim.substring(separator + 1));
+                        } catch (NumberFormatException e) {
+                            // skipped rather than thrown, or no later claim would ever be applied
+                            logger.warn("Skipping malformed coupon claim '{}' at offset {} of the journal", claim,
+                                    position + start);
+                        }
+                        line.reset();
+                        start = i + 1;
+                        end = position + start;
+                    }
+                }
+                if (paths.size() < max) {
+                    line.write(bytes, start, bytes.length - start);
+                }
+                position += bytes.length;
+            }
+        }
+        return new Batch(paths, claimedAt, offset, end);
+    }
+
+    /**
+     * Records that every claim before the given offset is in the repository,
+     * truncating the journal if that is all of it and it has grown large.
+     */
+    public void markApplied(long offset) throws IOException {
+        synchronized (fileLock) {
+            if (offset == channel.size() && offset >= truncateBytes) {
+                // checkpoint first: a crash in between replays claims, it never skips them
+                writeCheckpoint(0);
+                channel.truncate(0);
+                channel.position(0);
+                channel.force(true);
+                logger.info("Truncated the fully applied coupon claim journal after {} bytes", offset);
+            } else {
+                writeCheckpoint(offset);
+            }
+        }
+    }
+
+    /**
+     * @return bytes of journalled claims that have not been applied yet
+     */
+    public long getPendingBytes() throws IOException {
+        synchronized (fileLock) {
+            return channel.size() - getAppliedOffset();
+        }
+    }
+
+    private void flushLoop() {
+        while (running) {
+            try {
+                Thread.sleep(groupCommitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            synchronized (fileLock) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes and syncs the current group, then wakes its requests up. A
+     * group that fails to be written is kept for the next attempt, and
+     * whatever part of it made it into the file is cut off again first.
+     */
+    private void flush() {
+        List<byte[]> lines;
+        long sequence;
+        synchronized (groupLock) {
+            if (group.isEmpty()) {
+                return;
+            }
+            lines = group;
+            sequence = appended;
+            group = new ArrayList<>();
+        }
+        long start = -1;
+        try {
+            start = channel.position();
+            int size = 0;
+            for (byte[] line : lines) {
+                size += line.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            lines.forEach(buffer::put);
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            logger.trace("Synced {} coupon claims, journal at {} bytes", lines.size(), channel.position());
+        } catch (IOException e) {
+            logger.error("Could not sync {} coupon claims to the journal, retrying", lines.size(), e);
+            truncateTo(start);
+            synchronized (groupLock) {
+                lines.addAll(group);
+                group = lines;
+            }
+            return;
+        }
+        synchronized (groupLock) {
+            synced = Math.max(synced, sequence);
+            groupLock.notifyAll();
+        }
+    }
+
+    /**
+     * Cuts off a partly written group, so that its retry does not follow a
+     * torn prefix of itself.
+     */
+    private void truncateTo(long position) {
+        if (position < 0) {
+            return;
+        }
+        try {
+            if (channel.size() > position) {
+                channel.truncate(position);
+            }
+            channel.position(position);
+        } catch (IOException e) {
+            logger.error("Could not cut the coupon claim journal back to {} bytes", position, e);
+        }
+    }
+
+    private long getAppliedOffset() throws IOException {
+        if (!checkpointFile.isFile()) {
+            return 0;
+        }
+        long offset = Long.parseLong(new String(Files.readAllBytes(checkpointFile.toPath()),
+                StandardCharsets.US_ASCII).trim());
+        // a checkpoint behind the end of the journal predates a truncation
+        return offset <= channel.size() ? offset : 0;
+    }
+
+    private void writeCheckpoint(long offset) throws IOException {
+        File temp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(Long.toString(offset).getBytes(StandardCharsets.US_ASCII)));
+            out.force(true);
+        }
+        Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Cuts off a last line that a crash left without its line feed.
+     */
+    private void dropTornTail() throws IOException {
+        long size = channel.size();
+        ByteBuffer one = ByteBuffer.allocate(1);
+        long end = size;
+        while (end > 0) {
+            one.clear();
+            channel.read(one, end - 1);
+            if (one.get(0) == '\n') {
+                break;
+            }
+            end--;
+        }
+        if (end < size) {
+            logger.warn("Dropping {} bytes of a torn claim at the end of the coupon claim journal", size - end);
+            channel.truncate(end);
+        }
+    }
+}
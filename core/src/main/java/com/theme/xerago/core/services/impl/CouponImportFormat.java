@@ -0,0 +1,89 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * File formats the coupon importer reads, detected from the MIME type of
+ * the DAM asset and, for generic MIME types, from its file extension.
+ */
+enum CouponImportFormat {
+
+    /**
+     * A single JSON array of coupon objects.
+     */
+    JSON_ARRAY {
+        @Override
+        CouponRowReader open(InputStream in) {
+            return new JsonArrayRowReader(reader(in));
+        }
+    },
+
+    /**
+     * Newline delimited JSON, one coupon object per line.
+     */
+    NDJSON {
+        @Override
+        CouponRowReader open(InputStream in) {
+            return new NdjsonRowReader(reader(in));
+        }
+    },
+
+    /**
+     * Comma separated values with a header record.
+     */
+    CSV {
+        @Override
+        CouponRowReader open(InputStream in) {
+            return new CsvRowReader(reader(in));
+        }
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @return a reader for the rows of the given UTF-8 input
+     */
+    abstract CouponRowReader open(InputStream in);
+
+    static CouponImportFormat detect(String mimeType, String fileName) {
+        String type = mimeType != null ? mimeType.toLowerCase(Locale.ROOT) : "";
+        int parameters = type.indexOf(';');
+        if (parameters >= 0) {
+            type = type.substring(0, parameters).trim();
+        }
+        switch (type) {
+            case "text/csv":
+            case "application/csv":
+            case "text/comma-separated-values":
+                return CSV;
+            case "application/x-ndjson":
+            case "application/ndjson":
+            case "application/jsonl":
+            case "application/x-jsonlines":
+                return NDJSON;
+            case "application/json":
+                return JSON_ARRAY;
+            default:
+                return detect(fileName);
+        }
+    }
+
+    private static CouponImportFormat detect(String fileName) {
+        String name = fileName != null ? fileName.toLowerCase(Locale.ROOT) : "";
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return NDJSON;
+        }
+        return JSON_ARRAY;
+    }
+
+    private static BufferedReader reader(InputStream in) {
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,204 @@
+package com.theme.xerago.core.services.impl;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.metrics.RateMeter;
+import com.theme.xerago.core.services.CouponImportProgress;
+import com.theme.xerago.core.services.CouponShards;
+import com.theme.xerago.core.utils.FingerprintSet;
+
+/**
+ * Writes the coupons of one partition of an import. A partition owns every
+ * top level bucket whose index modulo the partition count equals its own
+ * index, so partitions write disjoint subtrees and each can commit through
+ * its own service session without conflicting with the others.
+ * <p>
+ * Ids of coupons already in the pool or in its archive are skipped, so a
+ * file imported again does not bring back coupons that were handed out.
+ */
+class CouponImportPartition implements Callable<Void> {
+
+    /**
+     * Marks the end of the rows queued for a partition.
+     */
+    static final Map<String, Object> END = Collections.emptyMap();
+
+    private static final long OFFER_TIMEOUT_MILLIS = 500;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final int index;
+    private final int partitions;
+    private final String poolPath;
+    private final String archivePoolPath;
+    private final int commitBatchSize;
+    private final ResourceResolverFactory resolverFactory;
+    private final CouponImportProgress progress;
+    private final RateMeter createdRows;
+    private final BlockingQueue<Map<String, Object>> rows;
+
+    private Future<Void> future;
+
+    /**
+     * @param archivePoolPath where the archived coupons of the pool are kept, {@code null} if nowhere
+     */
+    CouponImportPartition(int index, int partitions, String poolPath, String archivePoolPath, int commitBatchSize,
+            ResourceResolverFactory resolverFactory, CouponImportProgress progress, RateMeter createdRows) {
+        this.index = index;
+        this.partitions = partitions;
+        this.poolPath = poolPath;
+        this.archivePoolPath = archivePoolPath;
+        this.commitBatchSize = commitBatchSize;
+        this.resolverFactory = resolverFactory;
+        this.progress = progress;
+        this.createdRows = createdRows;
+        this.rows = new ArrayBlockingQueue<>(commitBatchSize);
+    }
+
+    /**
+     * @return index of the partition the coupon with the given id belongs to
+     */
+    static int partitionOf(String couponId, int partitions) {
+        return topBucket(CouponShards.bucketPath(couponId)) % partitions;
+    }
+
+    private static int topBucket(String bucketPath) {
+        return Integer.parseInt(bucketPath.substring(0, 2), 16);
+    }
+
+    void setFuture(Future<Void> future) {
+        this.future = future;
+    }
+
+    Future<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Hands a row to this partition, waiting while its queue is full. Rows
+     * offered after the partition failed are counted as failed.
+     */
+    void put(Map<String, Object> row) throws InterruptedException {
+        while (!rows.offer(row, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (future.isDone()) {
+                if (row != END) {
+                    progress.failed(1);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Counts the rows left behind by a failed partition as failed.
+     */
+    void discardQueued() {
+        for (Map<String, Object> row; (row = rows.poll()) != null; ) {
+            if (row != END) {
+                progress.failed(1);
+            }
+        }
+    }
+
+    @Override
+    public Void call() throws Exception {
+        try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, CouponImportServiceImpl.SUBSERVICE))) {
+            Resource pool = resolver.getResource(poolPath);
+            FingerprintSet ids = loadCouponIds(resolver, pool);
+            int pending = 0;
+            for (Map<String, Object> row = rows.take(); row != END; row = rows.take()) {
+                String id = (String) row.get("id");
+                if (!ids.add(id)) {
+                    logger.debug("Coupon {} already exists in {}, its archive or earlier in the file, skipping",
+                            id, poolPath);
+                    progress.skipped();
+                    continue;
+                }
+                row.put("jcr:primaryType", "nt:unstructured");
+                try {
+                    resolver.create(CouponShards.getOrCreateBucket(resolver, pool, id), id, row);
+                } catch (PersistenceException e) {
+                    // a value the repository refuses; the other rows of the partition are still imported
+                    logger.warn("Could not create coupon {} in {}, skipping", id, poolPath, e);
+                    progress.failed(1);
+                    continue;
+                }
+                if (++pending == commitBatchSize) {
+                    commit(resolver, pending);
+                    pending = 0;
+                    logger.info("Coupon import into {}, partition {}: {}", poolPath, index, progress);
+                }
+            }
+            commit(resolver, pending);
+        }
+        return null;
+    }
+
+    private void commit(ResourceResolver resolver, int pending) {
+        if (pending == 0) {
+            return;
+        }
+        try {
+            resolver.commit();
+            progress.created(pending);
+            createdRows.mark(pending);
+        } catch (PersistenceException e) {
+            logger.error("Could not commit a batch of {} coupons in partition {}", pending, index, e);
+            resolver.revert();
+            progress.failed(pending);
+        }
+    }
+
+    /**
+     * Reads the ids of the coupons this partition owns in one pass, so that
+     * duplicates are found in memory instead of with one lookup per row.
+     * Flat coupons of pools that are not migrated yet are included, and so
+     * are the archived coupons, which use the same bucket layout.
+     */
+    private FingerprintSet loadCouponIds(ResourceResolver resolver, Resource pool) {
+        long start = System.currentTimeMillis();
+        FingerprintSet ids = new FingerprintSet();
+        addOwnIds(pool, ids);
+        Resource archive = archivePoolPath != null ? resolver.getResource(archivePoolPath) : null;
+        if (archive != null) {
+            addOwnIds(archive, ids);
+        }
+        logger.debug("Read {} existing coupon ids of {} for partition {} in {} ms",
+                ids.size(), poolPath, index, System.currentTimeMillis() - start);
+        return ids;
+    }
+
+    private void addOwnIds(Resource root, FingerprintSet ids) {
+        for (Resource child : root.getChildren()) {
+            if (CouponShards.isBucket(child)) {
+                if (isOwnBucket(child.getName())) {
+                    CouponShards.forEachCoupon(child, coupon -> ids.add(coupon.getName()));
+                }
+            } else if (partitionOf(child.getName(), partitions) == index) {
+                ids.add(child.getName());
+            }
+        }
+    }
+
+    private boolean isOwnBucket(String name) {
+        try {
+            return name.length() == 2 && topBucket(name) % partitions == index;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.consumer.JobConsumer;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.dam.api.Asset;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.RateMeter;
+import com.theme.xerago.core.services.CouponImportException;
+import com.theme.xerago.core.services.CouponImportProgress;
+import com.theme.xerago.core.services.CouponImportService;
+import com.theme.xerago.core.services.CouponShards;
+
+/**
+ * Reads the coupons of a DAM asset one row at a time, as a JSON array,
+ * newline delimited JSON or CSV depending on its MIME type (see
+ * {@link CouponImportFormat}), and hands each coupon to the {@link CouponImportPartition}
+ * owning its bucket. Partitions run in parallel, each in its own service
+ * session, and commit every {@code commitBatchSize} coupons, so only a few
+ * batches are ever held in memory or in the Oak transient space.
+ * <p>
+ * Submitted imports run as Sling jobs consumed by this component. The
+ * counters of the most recent jobs are kept in memory for progress polling.
+ */
+@Component(service = { CouponImportService.class, JobConsumer.class },
+           property = JobConsumer.PROPERTY_TOPICS + "=" + CouponImportService.JOB_TOPIC)
+@Designate(ocd = CouponImportServiceImpl.Config.class)
+public class CouponImportServiceImpl implements CouponImportService, JobConsumer {
+
+    static final String SUBSERVICE = "coupon-import";
+
+    @ObjectClassDefinition(name = "Xerago Coupon Import Service",
+                           description = "Streams coupons from DAM assets into coupon pools")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Commit batch size", description = "Coupons created per repository commit")
+        int commitBatchSize() default 1000;
+
+        @AttributeDefinition(name = "Parallelism",
+                             description = "Number of partitions written concurrently, each with its own session")
+        int parallelism() default 4;
+
+        @AttributeDefinition(name = "Remembered jobs",
+                             description = "Number of recent import jobs whose progress can be polled")
+        int progressHistorySize() default 100;
+
+        @AttributeDefinition(name = "Archive path",
+                             description = "Root below which the pool maintenance keeps claimed and expired coupons; "
+                                     + "ids found there are not imported again. Empty to only check the pool")
+        String archivePath() default "/var/xeragotheme/coupons/archive";
+    }
+
+    private static final Map<String, Object> FOLDER_PROPERTIES =
+            Collections.singletonMap("jcr:primaryType", "sling:Folder");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private JobManager jobManager;
+
+    @Reference
+    private MetricsRegistry metrics;
+
+    private RateMeter createdRows;
+
+    private int commitBatchSize;
+
+    private int parallelism;
+
+    private String archivePath;
+
+    private Map<String, CouponImportProgress> progressByJob;
+
+    @Activate
+    protected void activate(final Config config) {
+        createdRows = metrics.meter("coupon.import.created");
+        commitBatchSize = Math.max(1, config.commitBatchSize());
+        parallelism = Math.max(1, config.parallelism());
+        archivePath = config.archivePath();
+        int historySize = Math.max(1, config.progressHistorySize());
+        progressByJob = Collections.synchronizedMap(new LinkedHashMap<String, CouponImportProgress>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CouponImportProgress> eldest) {
+                return size() > historySize;
+            }
+        });
+    }
+
+    @Override
+    public String submitImport(String damPath, String targetPath) throws CouponImportException {
+        Map<String, Object> props = new HashMap<>();
+        props.put(PN_DAM_PATH, damPath);
+        props.put(PN_TARGET_PATH, targetPath);
+        Job job = jobManager.addJob(JOB_TOPIC, props);
+        if (job == null) {
+            throw new CouponImportException("Could not queue the import of " + damPath);
+        }
+        logger.info("Queued coupon import job {} of {} into {}", job.getId(), damPath, targetPath);
+        return job.getId();
+    }
+
+    @Override
+    public CouponImportProgress getProgress(String jobId) {
+        return progressByJob.get(jobId);
+    }
+
+    @Override
+    public JobResult process(Job job) {
+        String damPath = job.getProperty(PN_DAM_PATH, String.class);
+        String targetPath = job.getProperty(PN_TARGET_PATH, String.class);
+        CouponImportProgress progress = new CouponImportProgress();
+        progressByJob.put(job.getId(), progress);
+        try {
+            importCoupons(damPath, targetPath, progress);
+            return JobResult.OK;
+        } catch (CouponImportException e) {
+            // the input is broken, running the job again would not help
+            logger.error("Coupon import job {} failed", job.getId(), e);
+            progress.setError(e.getMessage());
+            return JobResult.CANCEL;
+        }
+    }
+
+    @Override
+    public CouponImportProgress importCoupons(String damPath, String targetPath) throws CouponImportException {
+        CouponImportProgress progress = new CouponImportProgress();
+        importCoupons(damPath, targetPath, progress);
+        return progress;
+    }
+
+    private void importCoupons(String damPath, String targetPath, CouponImportProgress progress)
+            throws CouponImportException {
+        try (ResourceResolver resolver = resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE))) {
+            Resource resource = resolver.getResource(damPath);
+            Asset asset = resource != null ? resource.adaptTo(Asset.class) : null;
+            if (asset == null || asset.getOriginal() == null) {
+                throw new CouponImportException("No DAM asset found at " + damPath);
+            }
+            Resource pool = getOrCreatePool(resolver, targetPath);
+            CouponImportFormat format = CouponImportFormat.detect(asset.getMimeType(), asset.getName());
+            logger.info("Importing {} as {} into {}", damPath, format, targetPath);
+            try (InputStream is = asset.getOriginal().getStream();
+                 CouponRowReader reader = format.open(is)) {
+                importRows(resolver, pool, reader, progress);
+            }
+            if (progress.getCreated() > 0) {
+                // snapshots of the pool taken while the partitions were writing are incomplete
+                CouponShards.newRevision(resolver.getResource(pool.getPath()));
+                resolver.commit();
+            }
+        } catch (LoginException e) {
+            throw new CouponImportException("Could not open a service session to import coupons", e);
+        } catch (IOException e) {
+            throw new CouponImportException("Could not read coupons from " + damPath + ": " + e.getMessage(), e);
+        } finally {
+            progress.finish();
+        }
+        logger.info("Coupon import of {} into {} done: {}", damPath, targetPath, progress);
+    }
+
+    private void importRows(ResourceResolver resolver, Resource pool, CouponRowReader reader,
+            CouponImportProgress progress) throws IOException, CouponImportException {
+        // the partition sessions must see the pool root, local snapshots must not be trusted from now on
+        CouponShards.newRevision(pool);
+        resolver.commit();
+        CouponImportPartition[] partitions = new CouponImportPartition[parallelism];
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "coupon-import-" + count.incrementAndGet());
+            }
+        });
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                partitions[i] = new CouponImportPartition(i, parallelism, pool.getPath(),
+                        archivePath.isEmpty() ? null : archivePath + pool.getPath(), commitBatchSize,
+                        resolverFactory, progress, createdRows);
+                partitions[i].setFuture(executor.submit(partitions[i]));
+            }
+            for (Map<String, Object> props = reader.next(); props != null; props = reader.next()) {
+                Object id = props.get("id");
+                if (!(id instanceof String) || !isValidName((String) id)) {
+                    logger.warn("Skipping coupon without a usable id: {}", props);
+                    progress.failed(1);
+                    continue;
+                }
+                partitions[CouponImportPartition.partitionOf((String) id, parallelism)].put(props);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CouponImportException("Coupon import into " + pool.getPath() + " was interrupted", e);
+        } finally {
+            finishPartitions(partitions);
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Signals the end of the input to every partition and waits until all
+     * of them have committed their last batch.
+     */
+    private void finishPartitions(CouponImportPartition[] partitions) {
+        for (CouponImportPartition partition : partitions) {
+            if (partition == null) {
+                continue;
+            }
+            try {
+                partition.put(CouponImportPartition.END);
+                partition.getFuture().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                partition.getFuture().cancel(true);
+            } catch (ExecutionException e) {
+                logger.error("A partition of the coupon import failed", e.getCause());
+            }
+            partition.discardQueued();
+        }
+    }
+
+    /**
+     * @return whether the id can be used as a JCR node name as it is: not
+     *         empty, not {@code .} or {@code ..}, without the characters JCR
+     *         reserves or control characters, and without whitespace at
+     *         either end
+     */
+    private static boolean isValidName(String id) {
+        if (id.isEmpty() || ".".equals(id) || "..".equals(id)
+                || Character.isWhitespace(id.charAt(0)) || Character.isWhitespace(id.charAt(id.length() - 1))) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if ("/:[]|*".indexOf(c) >= 0 || Character.isISOControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Resource getOrCreatePool(ResourceResolver resolver, String path) throws PersistenceException {
+        Resource parent = resolver.getResource("/");
+        StringBuilder currentPath = new StringBuilder();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            currentPath.append('/').append(segment);
+            Resource res = resolver.getResource(currentPath.toString());
+            parent = res != null ? res : resolver.create(parent, segment, FOLDER_PROPERTIES);
+        }
+        return parent;
+    }
+}
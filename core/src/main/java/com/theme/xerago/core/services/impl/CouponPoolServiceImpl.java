@@ -0,0 +1,480 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.RateMeter;
+import com.theme.xerago.core.services.CouponClaimException;
+import com.theme.xerago.core.services.CouponEntry;
+import com.theme.xerago.core.services.CouponPool;
+import com.theme.xerago.core.services.CouponPoolService;
+import com.theme.xerago.core.services.CouponShards;
+
+/**
+ * Loads a pool into a {@link CouponPool} snapshot the first time it is asked
+ * for and afterwards only re-reads the coupons named in resource change
+ * events, publishing a new snapshot per event batch. Pools may be flat,
+ * sharded into buckets as described by {@link CouponShards}, or a mix of
+ * both while they are being migrated.
+ * <p>
+ * Claims are made on the claim bits of the current snapshot. Because a claim
+ * may race with the publication of a newer snapshot, the per-pool set of
+ * handed out paths is the final arbiter: a coupon is only returned by the
+ * call that added its path to that set. A path stays in the set until the
+ * reconciler has written {@link CouponPoolService#PN_CLAIMED} to the
+ * coupon, which removes it from the pool; a new snapshot inherits the claim
+ * bits of the one it replaces and only the claims made since then are
+ * marked on it again, so neither the set nor the marking grows with the
+ * number of coupons handed out. A claimed coupon that a migration moves into
+ * its bucket before it is reconciled takes its claim along to the new path.
+ * <p>
+ * Every coupon is handed out at most once <em>by this instance</em>. Publish
+ * instances keep their own snapshots and claims, and learn about the claims
+ * of the others only once those are reconciled into the repository, so
+ * instances serving the same pool may hand out the same coupon in between.
+ * Give each publish instance a pool of its own where that matters.
+ * <p>
+ * Pools are also kept on local disk by {@link CouponPoolSnapshots}. The
+ * snapshot is tagged with the {@link CouponPoolService#PN_REVISION} of the
+ * pool root, so after a restart it is only used if no import or migration
+ * wrote to the pool in the meantime. The listener sets a new revision
+ * whenever coupons change other than by a claim of this instance, also for
+ * pools that are not loaded yet; the removal of a coupon that has already
+ * left the loaded pool, such as a claimed one being archived, is no such
+ * change, and the pools in memory are saved with the
+ * current revision on deactivation. Claims made since the snapshot was
+ * written are replayed from the claim journal next to it. A change the
+ * listener never sees, such as one written while no instance observing the
+ * pool was running, is only caught by an import or migration setting a new
+ * revision.
+ */
+@Component(service = { CouponPoolService.class, ResourceChangeListener.class },
+           property = {
+                   ResourceChangeListener.CHANGES + "=ADDED",
+                   ResourceChangeListener.CHANGES + "=CHANGED",
+                   ResourceChangeListener.CHANGES + "=REMOVED"
+           })
+@Designate(ocd = CouponPoolServiceImpl.Config.class)
+public class CouponPoolServiceImpl implements CouponPoolService, ExternalResourceChangeListener {
+
+    public static final String SUBSERVICE = "coupon-pool";
+
+    @ObjectClassDefinition(name = "Xerago Coupon Pool Service",
+                           description = "In-memory index of the coupon pools handed out by the coupon servlet")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Observed paths",
+                             description = "Repository subtrees that contain coupon pools (resource.paths of the change listener)")
+        String[] resource_paths() default { "/content/coupons" };
+
+        @AttributeDefinition(name = "Local snapshots",
+                             description = "Keep a copy of each pool on local disk to restart without walking the pool")
+        boolean snapshots() default true;
+
+        @AttributeDefinition(name = "Snapshot directory",
+                             description = "Directory of the local snapshots, empty for the data area of the bundle")
+        String snapshotDirectory() default "";
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, CouponPool> pools = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Set<String>> handedOut = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Queue<String>> recentClaims = new ConcurrentHashMap<>();
+
+    @Reference
+    private ResourceResolverFactory resolverFactory;
+
+    @Reference
+    private CouponClaimJournal claimJournal;
+
+    @Reference
+    private MetricsRegistry metrics;
+
+    private CouponPoolSnapshots snapshots;
+
+    private RateMeter claims;
+
+    @Activate
+    protected void activate(final BundleContext bundleContext, final Config config) {
+        claims = metrics.meter("coupon.claims");
+        if (config.snapshots()) {
+            File directory = config.snapshotDirectory().isEmpty()
+                    ? bundleContext.getDataFile("coupon-pools") : new File(config.snapshotDirectory());
+            snapshots = directory != null ? new CouponPoolSnapshots(directory) : null;
+        }
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (snapshots == null) {
+            return;
+        }
+        try (ResourceResolver resolver = getServiceResolver()) {
+            for (CouponPool pool : pools.values()) {
+                Resource root = resolver.getResource(pool.getPath());
+                String revision = root != null ? root.getValueMap().get(PN_REVISION, String.class) : null;
+                if (revision != null) {
+                    snapshots.save(pool, handedOut(pool.getPath()), revision);
+                }
+            }
+        } catch (LoginException e) {
+            logger.error("Could not open a service session to snapshot coupon pools", e);
+        }
+        snapshots.close();
+    }
+
+    @Override
+    public CouponPool getPool(String poolPath) {
+        CouponPool pool = pools.get(poolPath);
+        if (pool != null) {
+            return pool;
+        }
+        // loaded outside of the map: loading walks the repository and may commit, which must not block other pools
+        pool = loadPool(poolPath);
+        if (pool == null) {
+            return null;
+        }
+        CouponPool raced = pools.putIfAbsent(poolPath, pool);
+        if (raced != null) {
+            return raced;
+        }
+        metrics.gauge("coupon.pool" + poolPath.replace('/', '.') + ".available", () -> {
+            CouponPool current = pools.get(poolPath);
+            return current != null ? current.available() : 0;
+        });
+        return pool;
+    }
+
+    @Override
+    public CouponEntry claim(String poolPath) {
+        CouponPool pool = getPool(poolPath);
+        if (pool == null) {
+            return null;
+        }
+        Set<String> claimed = handedOut(poolPath);
+        while (true) {
+            int slot = pool.claimSlot();
+            if (slot < 0) {
+                CouponPool current = pools.get(poolPath);
+                if (current == null || current == pool) {
+                    return null;
+                }
+                // a newer snapshot was published meanwhile, it may hold new coupons
+                pool = current;
+                continue;
+            }
+            CouponEntry entry = pool.get(slot);
+            if (claimed.add(entry.getPath())) {
+                recentClaims(poolPath).add(entry.getPath());
+                if (!claimJournal.append(entry.getPath())) {
+                    // stays claimed in memory: the claim may still reach the journal, so it is never handed out again
+                    throw new CouponClaimException("Claim of " + entry.getPath() + " could not be journalled");
+                }
+                if (snapshots != null) {
+                    snapshots.appendClaim(poolPath, entry.getPath());
+                }
+                claims.mark(1);
+                return entry;
+            }
+        }
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        Map<String, Set<String>> touched = new HashMap<>();
+        Set<String> elsewhere = new HashSet<>();
+        for (ResourceChange change : changes) {
+            String path = change.getPath();
+            boolean inPool = false;
+            for (String poolPath : pools.keySet()) {
+                if (path.equals(poolPath) || poolPath.startsWith(path + "/")) {
+                    inPool = true;
+                    if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+                        pools.remove(poolPath);
+                        handedOut.remove(poolPath);
+                        recentClaims.remove(poolPath);
+                        if (snapshots != null) {
+                            snapshots.discard(poolPath);
+                        }
+                        logger.debug("Coupon pool {} was removed, dropping its snapshot", poolPath);
+                    }
+                } else if (path.startsWith(poolPath + "/")) {
+                    inPool = true;
+                    touched.computeIfAbsent(poolPath, key -> new HashSet<>()).add(path);
+                }
+            }
+            if (!inPool && snapshots != null) {
+                elsewhere.add(path);
+            }
+        }
+        if (touched.isEmpty() && elsewhere.isEmpty()) {
+            return;
+        }
+        try (ResourceResolver resolver = getServiceResolver()) {
+            Set<String> stale = new HashSet<>();
+            touched.forEach((poolPath, paths) -> {
+                if (refresh(resolver, poolPath, paths)) {
+                    stale.add(poolPath);
+                }
+            });
+            for (String path : elsewhere) {
+                String poolPath = findPoolRoot(resolver, path);
+                if (poolPath != null) {
+                    stale.add(poolPath);
+                }
+            }
+            if (snapshots != null) {
+                stale.forEach(poolPath -> bumpRevision(resolver, poolPath));
+            }
+        } catch (LoginException e) {
+            logger.error("Could not open a service session to refresh coupon pools", e);
+        }
+    }
+
+    /**
+     * Re-reads the coupons the changed paths belong to. A changed path may be
+     * a coupon, a property node below one, or a bucket of a sharded pool; a
+     * removed bucket removes every coupon below it.
+     *
+     * @return whether anything other than a claim of this instance changed,
+     *         which the snapshots on disk do not know about
+     */
+    private boolean refresh(ResourceResolver resolver, String poolPath, Set<String> paths) {
+        Set<String> claimed = handedOut(poolPath);
+        CouponPool loaded = pools.get(poolPath);
+        Map<String, CouponEntry> upserts = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        boolean foreign = false;
+        for (String path : paths) {
+            String current = poolPath;
+            for (String name : path.substring(poolPath.length() + 1).split("/")) {
+                current = current + "/" + name;
+                Resource resource = resolver.getResource(current);
+                if (resource == null) {
+                    removed.add(current);
+                    if (claimed.remove(current)) {
+                        keepClaimOfMoved(resolver, poolPath, current, claimed);
+                    } else {
+                        // possibly a whole bucket, forget the claims below it
+                        String prefix = current + "/";
+                        claimed.removeIf(claimedPath -> claimedPath.startsWith(prefix));
+                        // a coupon that already left the pool, e.g. claimed and then archived, changes no snapshot
+                        foreign |= loaded == null || loaded.contains(current);
+                    }
+                    break;
+                }
+                if (!CouponShards.isBucket(resource)) {
+                    if (isAvailable(resource)) {
+                        upserts.put(current, CouponEntry.fromResource(resource));
+                        foreign = true;
+                        if (claimed.contains(poolPath + "/" + resource.getName()) && claimed.add(current)) {
+                            // moved into its bucket before the removal of its flat path was seen
+                            recentClaims(poolPath).add(current);
+                        }
+                    } else {
+                        removed.add(current);
+                        // the repository records the claim now, the coupon leaves the pool with this change
+                        if (!resource.getValueMap().get(CouponPoolService.PN_CLAIMED, false)
+                                || !claimed.remove(current)) {
+                            foreign = true;
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+        CouponPool updated = pools.computeIfPresent(poolPath, (key, pool) -> pool.apply(upserts.values(), removed));
+        if (updated != null) {
+            // the new snapshot inherits the claim bits, except for claims made on the previous one meanwhile
+            Set<String> recent = new HashSet<>();
+            Queue<String> queue = recentClaims(poolPath);
+            for (String path = queue.poll(); path != null; path = queue.poll()) {
+                recent.add(path);
+            }
+            updated.markClaimed(recent);
+            logger.debug("Coupon pool {} refreshed: {} upserted, {} removed, {} in pool",
+                    poolPath, upserts.size(), removed.size(), updated.size());
+        }
+        return foreign;
+    }
+
+    /**
+     * Hands the claim of a coupon that was removed from the pool root on to
+     * the bucket path a migration moved it to, if it is there now, so that
+     * the coupon is not handed out again before its claim is reconciled.
+     */
+    private void keepClaimOfMoved(ResourceResolver resolver, String poolPath, String removedPath, Set<String> claimed) {
+        String name = removedPath.substring(removedPath.lastIndexOf('/') + 1);
+        String movedPath = CouponShards.couponPath(poolPath, name);
+        if (!removedPath.equals(poolPath + "/" + name) || resolver.getResource(movedPath) == null) {
+            return;
+        }
+        if (claimed.add(movedPath)) {
+            recentClaims(poolPath).add(movedPath);
+            logger.debug("Claim of coupon {} moved along to {}", removedPath, movedPath);
+        }
+    }
+
+    /**
+     * @return the path of the nearest ancestor of the changed path that
+     *         carries a {@link CouponPoolService#PN_REVISION}, or {@code null}
+     *         if there is none; a change of a pool root itself is not a change
+     *         of its coupons
+     */
+    private String findPoolRoot(ResourceResolver resolver, String path) {
+        for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            Resource ancestor = resolver.getResource(path.substring(0, slash));
+            if (ancestor != null && ancestor.getValueMap().containsKey(PN_REVISION)) {
+                return ancestor.getPath();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sets a new revision on a pool whose coupons changed outside of the
+     * claims of this instance, so that no instance restores a snapshot taken
+     * before the change.
+     */
+    private void bumpRevision(ResourceResolver resolver, String poolPath) {
+        Resource root = resolver.getResource(poolPath);
+        if (root == null) {
+            return;
+        }
+        try {
+            CouponShards.newRevision(root);
+            resolver.commit();
+            logger.debug("Coupon pool {} changed, new revision {}", poolPath,
+                    root.getValueMap().get(PN_REVISION, String.class));
+        } catch (PersistenceException e) {
+            // most likely another instance bumped it concurrently, which invalidates the snapshots just as well
+            logger.warn("Could not set a new revision on coupon pool {}", poolPath, e);
+            resolver.revert();
+        }
+    }
+
+    /**
+     * Restores the pool from its local snapshot if that was taken at the
+     * current revision of the pool, replaying the claims made since. Otherwise
+     * walks the pool and writes a new snapshot for the next start.
+     */
+    private CouponPool loadPool(String poolPath) {
+        long start = System.currentTimeMillis();
+        try (ResourceResolver resolver = getServiceResolver()) {
+            Resource root = resolver.getResource(poolPath);
+            if (root == null) {
+                return null;
+            }
+            String revision = root.getValueMap().get(PN_REVISION, String.class);
+            CouponPoolSnapshots.Snapshot snapshot = snapshots != null ? snapshots.load(poolPath, revision) : null;
+            if (snapshot != null) {
+                Set<String> claimed = handedOut(poolPath);
+                claimed.addAll(snapshot.claimed);
+                CouponPool pool = new CouponPool(poolPath, snapshot.entries);
+                pool.markClaimed(claimed);
+                logger.info("Restored coupon pool {} with {} coupons, {} claimed since, from its snapshot in {} ms",
+                        poolPath, pool.size(), snapshot.claimed.size(), System.currentTimeMillis() - start);
+                return pool;
+            }
+            if (snapshots != null && revision == null) {
+                revision = newRevision(resolver, root);
+            }
+            List<Resource> coupons = new ArrayList<>();
+            CouponShards.collectCoupons(root, coupons);
+            List<CouponEntry> entries = new ArrayList<>(coupons.size());
+            for (Resource coupon : coupons) {
+                if (isAvailable(coupon)) {
+                    entries.add(CouponEntry.fromResource(coupon));
+                }
+            }
+            logger.info("Loaded coupon pool {} with {} coupons in {} ms",
+                    poolPath, entries.size(), System.currentTimeMillis() - start);
+            CouponPool pool = new CouponPool(poolPath, entries);
+            pool.markClaimed(handedOut(poolPath));
+            if (snapshots != null && revision != null) {
+                snapshots.save(pool, handedOut(poolPath), revision);
+            }
+            return pool;
+        } catch (LoginException e) {
+            logger.error("Could not open a service session to load coupon pool {}", poolPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Gives a pool that was never imported a revision, so that its snapshot
+     * can be told apart from later bulk changes.
+     *
+     * @return the new revision, or {@code null} if it could not be written
+     */
+    private String newRevision(ResourceResolver resolver, Resource root) {
+        try {
+            CouponShards.newRevision(root);
+            resolver.commit();
+            return root.getValueMap().get(PN_REVISION, String.class);
+        } catch (PersistenceException e) {
+            logger.warn("Could not set a revision on coupon pool {}, it is not snapshotted", root.getPath(), e);
+            resolver.revert();
+            return null;
+        }
+    }
+
+    private Set<String> handedOut(String poolPath) {
+        return handedOut.computeIfAbsent(poolPath, key -> ConcurrentHashMap.newKeySet());
+    }
+
+    private Queue<String> recentClaims(String poolPath) {
+        return recentClaims.computeIfAbsent(poolPath, key -> new ConcurrentLinkedQueue<>());
+    }
+
+    /**
+     * @return whether the resource is a coupon that has not been handed out yet and has not expired
+     */
+    private boolean isAvailable(Resource resource) {
+        if (resource == null || resource.getName().indexOf(':') >= 0
+                || resource.getValueMap().get(CouponPoolService.PN_CLAIMED, false)) {
+            return false;
+        }
+        Calendar expiresAt = resource.getValueMap().get(CouponPoolService.PN_EXPIRES_AT, Calendar.class);
+        return expiresAt == null || expiresAt.getTimeInMillis() > System.currentTimeMillis();
+    }
+
+    private ResourceResolver getServiceResolver() throws LoginException {
+        return resolverFactory.getServiceResourceResolver(
+                Collections.singletonMap(ResourceResolverFactory.SUBSERVICE, SUBSERVICE));
+    }
+}
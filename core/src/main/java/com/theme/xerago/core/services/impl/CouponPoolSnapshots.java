@@ -0,0 +1,276 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.services.CouponEntry;
+import com.theme.xerago.core.services.CouponPool;
+
+/**
+ * Copies of coupon pools on the local disk of the instance, so that a
+ * restarted instance can serve coupons without walking the pool in the
+ * repository first. Each pool has two files:
+ * <ul>
+ * <li>{@code <pool>.pool}, the available coupons with their pre-rendered
+ * JSON, tagged with the pool revision it was taken at. It is written to a
+ * temporary file and moved into place, and memory-mapped when read.</li>
+ * <li>{@code <pool>.claims}, the coupons handed out since the snapshot was
+ * written, one path relative to the pool per line. Every claim is appended
+ * before the coupon is returned, so a crash loses none of them.</li>
+ * </ul>
+ */
+final class CouponPoolSnapshots {
+
+    private static final int MAGIC = 0x58435053;
+
+    private static final int VERSION = 1;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+
+    private final ConcurrentMap<String, Journal> journals = new ConcurrentHashMap<>();
+
+    CouponPoolSnapshots(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Coupons and claims restored from disk.
+     */
+    static final class Snapshot {
+
+        final List<CouponEntry> entries;
+        final Set<String> claimed;
+
+        Snapshot(List<CouponEntry> entries, Set<String> claimed) {
+            this.entries = entries;
+            this.claimed = claimed;
+        }
+    }
+
+    /**
+     * @param revision current revision of the pool root
+     * @return the snapshot of the pool if one was taken at the given
+     *         revision, otherwise {@code null}
+     */
+    Snapshot load(String poolPath, String revision) {
+        File file = file(poolPath, ".pool");
+        if (revision == null || !file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.info("Ignoring snapshot {} of an unknown format", file);
+                return null;
+            }
+            String snapshotRevision = readString(buffer);
+            if (!revision.equals(snapshotRevision)) {
+                logger.info("Ignoring snapshot of {} taken at revision {}, the pool is at {}",
+                        poolPath, snapshotRevision, revision);
+                return null;
+            }
+            int count = buffer.getInt();
+            List<CouponEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String relativePath = readString(buffer);
+                byte[] json = new byte[buffer.getInt()];
+                buffer.get(json);
+                entries.add(CouponEntry.fromJson(relativePath.substring(relativePath.lastIndexOf('/') + 1),
+                        poolPath + "/" + relativePath, json));
+            }
+            return new Snapshot(entries, readClaims(poolPath));
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            logger.warn("Could not read the snapshot of {}, loading it from the repository", poolPath, e);
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the snapshot of the pool with its coupons that have not been
+     * handed out, and starts a new, empty claim journal.
+     *
+     * @param revision revision of the pool root the coupons were read at
+     */
+    void save(CouponPool pool, Set<String> handedOut, String revision) {
+        String poolPath = pool.getPath();
+        File file = file(poolPath, ".pool");
+        File temp = file(poolPath, ".pool.tmp");
+        Journal journal = journal(poolPath);
+        synchronized (journal) {
+            try {
+                Files.createDirectories(directory.toPath());
+                BitSet skipped = new BitSet(pool.size());
+                for (int i = 0; i < pool.size(); i++) {
+                    if (pool.isRemoved(i) || handedOut.contains(pool.get(i).getPath())) {
+                        skipped.set(i);
+                    }
+                }
+                int count = pool.size() - skipped.cardinality();
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 1 << 16))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    writeString(out, revision);
+                    out.writeInt(count);
+                    for (int i = skipped.nextClearBit(0); i < pool.size(); i = skipped.nextClearBit(i + 1)) {
+                        CouponEntry entry = pool.get(i);
+                        writeString(out, entry.getPath().substring(poolPath.length() + 1));
+                        out.writeInt(entry.getJsonLength());
+                        entry.writeJson(out);
+                    }
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                journal.reset();
+                logger.info("Saved snapshot of coupon pool {} with {} coupons at revision {}",
+                        poolPath, count, revision);
+            } catch (IOException e) {
+                logger.warn("Could not save a snapshot of coupon pool {}", poolPath, e);
+                delete(file);
+            }
+        }
+    }
+
+    /**
+     * Records that the coupon at the given path was handed out.
+     */
+    void appendClaim(String poolPath, String couponPath) {
+        journal(poolPath).append(couponPath.substring(poolPath.length() + 1));
+    }
+
+    /**
+     * Removes the files of a pool that no longer exists.
+     */
+    void discard(String poolPath) {
+        Journal journal = journals.remove(poolPath);
+        if (journal != null) {
+            journal.close();
+        }
+        delete(file(poolPath, ".pool"));
+        delete(file(poolPath, ".claims"));
+    }
+
+    void close() {
+        journals.values().forEach(Journal::close);
+        journals.clear();
+    }
+
+    private Set<String> readClaims(String poolPath) throws IOException {
+        File file = file(poolPath, ".claims");
+        Set<String> claimed = new HashSet<>();
+        if (file.isFile()) {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    claimed.add(poolPath + "/" + line);
+                }
+            }
+        }
+        return claimed;
+    }
+
+    private Journal journal(String poolPath) {
+        return journals.computeIfAbsent(poolPath, key -> new Journal(file(key, ".claims"), file(key, ".pool")));
+    }
+
+    private File file(String poolPath, String suffix) {
+        try {
+            return new File(directory, URLEncoder.encode(poolPath, "UTF-8") + suffix);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void delete(File file) {
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            logger.warn("Could not delete {}", file, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Append-only claim log of one pool, opened on the first claim.
+     */
+    private final class Journal {
+
+        private final File file;
+        private final File snapshot;
+        private FileChannel channel;
+
+        Journal(File file, File snapshot) {
+            this.file = file;
+            this.snapshot = snapshot;
+        }
+
+        synchronized void append(String relativePath) {
+            try {
+                if (channel == null) {
+                    Files.createDirectories(directory.toPath());
+                    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                ByteBuffer line = ByteBuffer.wrap((relativePath + "\n").getBytes(StandardCharsets.UTF_8));
+                while (line.hasRemaining()) {
+                    channel.write(line);
+                }
+            } catch (IOException e) {
+                // without the claim the snapshot would hand the coupon out again, so drop it
+                logger.warn("Could not journal a coupon claim in {}, discarding the snapshot", file, e);
+                close();
+                delete(snapshot);
+            }
+        }
+
+        synchronized void reset() throws IOException {
+            close();
+            Files.deleteIfExists(file.toPath());
+        }
+
+        synchronized void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    logger.debug("Could not close {}", file, e);
+                }
+                channel = null;
+            }
+        }
+    }
+}
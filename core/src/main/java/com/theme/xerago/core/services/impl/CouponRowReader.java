@@ -0,0 +1,18 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Reads an import file one coupon row at a time, so that no format ever
+ * needs the whole file in memory.
+ */
+interface CouponRowReader extends Closeable {
+
+    /**
+     * @return the properties of the next coupon as strings, or {@code null} at the end of the input
+     * @throws IOException if the input cannot be read or is malformed
+     */
+    Map<String, Object> next() throws IOException;
+}
@@ -0,0 +1,126 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads coupons from RFC 4180 CSV. The first record names the properties;
+ * every following record is one coupon. Fields may be quoted, contain
+ * separators, doubled quotes and line breaks. Empty fields are left out.
+ */
+class CsvRowReader implements CouponRowReader {
+
+    private static final char SEPARATOR = ',';
+    private static final char QUOTE = '"';
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+    private final Reader reader;
+    private final StringBuilder field = new StringBuilder();
+    private String[] header;
+    private int pushedBack = -2;
+
+    /**
+     * @param reader a buffered reader; it is read one character at a time
+     */
+    CsvRowReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public Map<String, Object> next() throws IOException {
+        if (header == null) {
+            List<String> names = readRecord();
+            if (names == null) {
+                return null;
+            }
+            if (!names.isEmpty() && names.get(0).startsWith(BYTE_ORDER_MARK)) {
+                // byte order mark written by spreadsheet exports
+                names.set(0, names.get(0).substring(1));
+            }
+            header = names.toArray(new String[0]);
+        }
+        List<String> values;
+        do {
+            values = readRecord();
+            if (values == null) {
+                return null;
+            }
+        } while (values.size() == 1 && values.get(0).isEmpty());
+        Map<String, Object> props = new HashMap<>();
+        for (int i = 0; i < header.length && i < values.size(); i++) {
+            if (!values.get(i).isEmpty()) {
+                props.put(header[i].trim(), values.get(i));
+            }
+        }
+        return props;
+    }
+
+    /**
+     * @return the fields of the next record, or {@code null} at the end of the input
+     */
+    private List<String> readRecord() throws IOException {
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        field.setLength(0);
+        boolean quoted = false;
+        for (; ; c = read()) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Unterminated quoted field in CSV input");
+                }
+                if (c == QUOTE) {
+                    int following = read();
+                    if (following == QUOTE) {
+                        field.append(QUOTE);
+                    } else {
+                        quoted = false;
+                        unread(following);
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c == QUOTE && field.length() == 0) {
+                quoted = true;
+            } else if (c == SEPARATOR) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c < 0) {
+                if (c == '\r') {
+                    int following = read();
+                    if (following != '\n') {
+                        unread(following);
+                    }
+                }
+                fields.add(field.toString());
+                return fields;
+            } else {
+                field.append((char) c);
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != -2) {
+            int c = pushedBack;
+            pushedBack = -2;
+            return c;
+        }
+        return reader.read();
+    }
+
+    private void unread(int c) {
+        pushedBack = c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
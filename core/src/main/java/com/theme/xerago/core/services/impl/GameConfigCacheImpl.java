@@ -0,0 +1,157 @@
+package com.theme.xerago.core.services.impl;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.services.GameConfigCache;
+import com.theme.xerago.core.utils.StripedLruCache;
+
+/**
+ * Bounded cache of game component configuration. The revision of a
+ * component is its {@code cq:lastModified}, falling back to
+ * {@code jcr:lastModified}, which a dialog save updates. Multifield items
+ * edited without touching the component are caught by the change listener,
+ * which drops the entry of every cached ancestor of a changed path.
+ * <p>
+ * Cached paths are also kept in sorted order, so that a removed page or
+ * folder drops the components below it with a range lookup instead of a scan
+ * of the whole cache. Paths of evicted entries are pruned from that index
+ * once per {@code maxEntries} insertions.
+ */
+@Component(service = { GameConfigCache.class, ResourceChangeListener.class },
+           property = {
+                   ResourceChangeListener.CHANGES + "=ADDED",
+                   ResourceChangeListener.CHANGES + "=CHANGED",
+                   ResourceChangeListener.CHANGES + "=REMOVED"
+           })
+@Designate(ocd = GameConfigCacheImpl.Config.class)
+public class GameConfigCacheImpl implements GameConfigCache, ExternalResourceChangeListener {
+
+    static final String PN_CQ_LAST_MODIFIED = "cq:lastModified";
+    static final String PN_JCR_LAST_MODIFIED = "jcr:lastModified";
+
+    @ObjectClassDefinition(name = "Xerago Game Configuration Cache",
+                           description = "Segment and prize JSON of game components, by component path and revision")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Max entries", description = "Upper bound of the components cached")
+        int maxEntries() default 1000;
+
+        @AttributeDefinition(name = "Idle minutes",
+                             description = "Minutes after which a component that was not rendered is dropped")
+        long idleMinutes() default 60;
+
+        @AttributeDefinition(name = "Observed paths",
+                             description = "Repository subtrees that contain game components (resource.paths of the change listener)")
+        String[] resource_paths() default { "/content/xeragotheme", "/content/experience-fragments/xeragotheme" };
+    }
+
+    private static final int STRIPES = 16;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final NavigableSet<String> paths = new ConcurrentSkipListSet<>();
+
+    private final AtomicInteger puts = new AtomicInteger();
+
+    private StripedLruCache<String, Entry> entries;
+
+    private int maxEntries;
+
+    @Activate
+    protected void activate(final Config config) {
+        maxEntries = Math.max(STRIPES, config.maxEntries());
+        entries = new StripedLruCache<>(STRIPES, maxEntries, config.idleMinutes(), TimeUnit.MINUTES);
+    }
+
+    @Override
+    public <T> T get(Resource component, Class<T> type, Function<Resource, T> build) {
+        String path = component.getPath();
+        long revision = revisionOf(component);
+        Entry entry = entries.get(path);
+        if (entry != null && entry.revision == revision && type.isInstance(entry.value)) {
+            return type.cast(entry.value);
+        }
+        T value = build.apply(component);
+        if (value != null) {
+            entries.put(path, new Entry(revision, value));
+            paths.add(path);
+            if (puts.incrementAndGet() % maxEntries == 0) {
+                prunePaths();
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        for (ResourceChange change : changes) {
+            String path = change.getPath();
+            if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+                // the component itself or one of its ancestors may be gone; '0' is the character after '/'
+                for (Iterator<String> below = paths.subSet(path + "/", path + "0").iterator(); below.hasNext();) {
+                    String key = below.next();
+                    below.remove();
+                    entries.remove(key);
+                }
+            }
+            // the change may be the component itself or an item of one of its multifields
+            for (String ancestor = path; ancestor.length() > 1;
+                 ancestor = ancestor.substring(0, Math.max(1, ancestor.lastIndexOf('/')))) {
+                if (entries.remove(ancestor) != null) {
+                    logger.debug("Configuration of {} invalidated by a change at {}", ancestor, path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the paths of entries the cache evicted from the index.
+     */
+    private void prunePaths() {
+        Set<String> cached = new HashSet<>();
+        entries.forEach((key, entry) -> cached.add(key));
+        paths.removeIf(key -> !cached.contains(key));
+    }
+
+    static long revisionOf(Resource component) {
+        ValueMap properties = component.getValueMap();
+        Calendar modified = properties.get(PN_CQ_LAST_MODIFIED, Calendar.class);
+        if (modified == null) {
+            modified = properties.get(PN_JCR_LAST_MODIFIED, Calendar.class);
+        }
+        return modified != null ? modified.getTimeInMillis() : 0;
+    }
+
+    private static final class Entry {
+
+        final long revision;
+        final Object value;
+
+        Entry(long revision, Object value) {
+            this.revision = revision;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.theme.xerago.core.services.impl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.sling.api.resource.Resource;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.RateMeter;
+import com.theme.xerago.core.services.GiftBoardService;
+import com.theme.xerago.core.services.OpenedGift;
+import com.theme.xerago.core.services.Prize;
+import com.theme.xerago.core.services.PrizeTable;
+import com.theme.xerago.core.services.PrizeTableService;
+import com.theme.xerago.core.utils.RingBuffer;
+import com.theme.xerago.core.utils.StripedLruCache;
+
+/**
+ * Keeps a ring buffer of boards per pick-a-gift component, filled by one
+ * background producer thread. A request that drains a ring below half of its
+ * capacity queues it for refilling; a request that finds it empty generates
+ * its board itself, so a burst is never turned away.
+ * <p>
+ * The prize in the chosen box is drawn when the box is opened: the "better
+ * luck" box weighs as much as an average prize, and otherwise the prize is
+ * drawn from the component's {@link PrizeTable}, which paces it. A paced
+ * prize out of budget with nothing left to fall back on opens as "better
+ * luck". The board only decides how the other boxes look: it is a weighted
+ * shuffle of the table, every prize once, and the drawn prize is swapped into
+ * the chosen box. A ring is replaced as soon as the prize table service hands
+ * out a new table for its component.
+ */
+@Component(service = GiftBoardService.class)
+@Designate(ocd = GiftBoardServiceImpl.Config.class)
+public class GiftBoardServiceImpl implements GiftBoardService {
+
+    static final int BETTER_LUCK = -1;
+
+    @ObjectClassDefinition(name = "Xerago Gift Board Pool",
+                           description = "Pre-generated board layouts of pick-a-gift components")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Boards per component",
+                             description = "Capacity of the ring of each component, rounded up to a power of two")
+        int boardsPerComponent() default 1024;
+
+        @AttributeDefinition(name = "Max components", description = "Upper bound of the components with a ring")
+        int maxComponents() default 100;
+
+        @AttributeDefinition(name = "Idle minutes",
+                             description = "Minutes after which the ring of a component nobody played is dropped")
+        long idleMinutes() default 60;
+    }
+
+    private static final int STRIPES = 16;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Reference
+    private PrizeTableService prizeTableService;
+
+    @Reference
+    private MetricsRegistry metrics;
+
+    private final BlockingQueue<Boards> refills = new LinkedBlockingQueue<>();
+
+    private StripedLruCache<String, Boards> boards;
+
+    private int boardsPerComponent;
+
+    private RateMeter misses;
+
+    private volatile boolean running;
+
+    private Thread producer;
+
+    @Activate
+    protected void activate(final Config config) {
+        boardsPerComponent = Math.max(2, config.boardsPerComponent());
+        boards = new StripedLruCache<>(STRIPES, Math.max(STRIPES, config.maxComponents()), config.idleMinutes(),
+                TimeUnit.MINUTES);
+        misses = metrics.meter("gift.boards.misses");
+        running = true;
+        producer = new Thread(this::produceLoop, "gift-board-producer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    @Deactivate
+    protected void deactivate() throws InterruptedException {
+        running = false;
+        producer.interrupt();
+        producer.join(TimeUnit.SECONDS.toMillis(1));
+        refills.clear();
+    }
+
+    @Override
+    public OpenedGift open(Resource component, int box) {
+        if (!isGift(component)) {
+            return null;
+        }
+        PrizeTable table = prizeTableService.getPrizeTable(component);
+        if (table == null) {
+            return null;
+        }
+        if (box < 0 || box > table.size()) {
+            throw new IllegalArgumentException("No gift box " + box + " on a board of " + (table.size() + 1));
+        }
+        Random random = ThreadLocalRandom.current();
+        Prize prize = draw(table, random);
+        int[] board = takeBoard(component.getPath(), table, random);
+        int drawn = prize != null ? prize.getIndex() : BETTER_LUCK;
+        for (int i = 0; i < board.length; i++) {
+            if (board[i] == drawn) {
+                board[i] = board[box];
+                board[box] = drawn;
+                break;
+            }
+        }
+        return new OpenedGift(box, prize, board);
+    }
+
+    /**
+     * @return the prize in the opened box, {@code null} for "better luck"
+     */
+    static Prize draw(PrizeTable table, Random random) {
+        double total = 0;
+        for (Prize prize : table.getPrizes()) {
+            total += Math.max(0, prize.getWeight());
+        }
+        // "better luck" weighs total / size, i.e. one in size + 1
+        if (total == 0 || random.nextInt(table.size() + 1) == table.size()) {
+            return null;
+        }
+        return table.draw(random);
+    }
+
+    private int[] takeBoard(String path, PrizeTable table, Random random) {
+        Boards entry = boards.get(path);
+        if (entry == null || entry.table != table) {
+            entry = new Boards(path, table, boardsPerComponent);
+            boards.put(path, entry);
+        }
+        int[] board = entry.ring.poll();
+        if (board == null) {
+            misses.mark(1);
+            board = generate(table, random);
+        }
+        if (entry.ring.size() < entry.ring.capacity() / 2 && entry.queued.compareAndSet(false, true)) {
+            refills.offer(entry);
+        }
+        return board;
+    }
+
+    private void produceLoop() {
+        while (running) {
+            Boards entry;
+            try {
+                entry = refills.take();
+            } catch (InterruptedException e) {
+                // deactivation
+                return;
+            }
+            entry.queued.set(false);
+            if (boards.get(entry.path) != entry) {
+                // replaced by a newer prize table or evicted meanwhile
+                continue;
+            }
+            Random random = ThreadLocalRandom.current();
+            int produced = 0;
+            while (running && entry.ring.offer(generate(entry.table, random))) {
+                produced++;
+            }
+            logger.debug("Generated {} gift boards for {}", produced, entry.path);
+        }
+    }
+
+    /**
+     * Shuffles the prizes and the "better luck" box with the weighted random
+     * sampling of Efraimidis and Spirakis: every box gets the key
+     * {@code u^(1/weight)} for a uniform {@code u}, and boxes are laid out by
+     * descending key.
+     */
+    static int[] generate(PrizeTable table, Random random) {
+        List<Prize> prizes = table.getPrizes();
+        int count = prizes.size() + 1;
+        double total = 0;
+        for (Prize prize : prizes) {
+            total += Math.max(0, prize.getWeight());
+        }
+        double[] keys = new double[count];
+        for (int i = 0; i < count; i++) {
+            double weight = i < prizes.size() ? Math.max(0, prizes.get(i).getWeight())
+                    : prizes.isEmpty() || total == 0 ? 1 : total / prizes.size();
+            // compared as logarithms: log(u) / weight, a weight of zero goes last
+            keys[i] = weight > 0 ? Math.log(1 - random.nextDouble()) / weight : Double.NEGATIVE_INFINITY;
+        }
+        Integer[] boxes = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            boxes[i] = i;
+        }
+        Arrays.sort(boxes, (a, b) -> Double.compare(keys[b], keys[a]));
+
+        int[] board = new int[count];
+        for (int i = 0; i < count; i++) {
+            board[i] = boxes[i] < prizes.size() ? prizes.get(boxes[i]).getIndex() : BETTER_LUCK;
+        }
+        return board;
+    }
+
+    private static boolean isGift(Resource component) {
+        for (String resourceType : PrizeTableServiceImpl.GIFT_RESOURCE_TYPES) {
+            if (component.isResourceType(resourceType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Boards {
+
+        final String path;
+        final PrizeTable table;
+        final RingBuffer<int[]> ring;
+        final AtomicBoolean queued = new AtomicBoolean();
+
+        Boards(String path, PrizeTable table, int capacity) {
+            this.path = path;
+            this.table = table;
+            this.ring = new RingBuffer<>(capacity);
+        }
+    }
+}
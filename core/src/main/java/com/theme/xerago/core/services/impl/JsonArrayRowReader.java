@@ -0,0 +1,68 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads coupons from a JSON array of objects, streaming with Gson's
+ * {@link JsonReader}.
+ */
+class JsonArrayRowReader implements CouponRowReader {
+
+    private final JsonReader reader;
+    private boolean started;
+
+    JsonArrayRowReader(Reader reader) {
+        this.reader = new JsonReader(reader);
+    }
+
+    @Override
+    public Map<String, Object> next() throws IOException {
+        try {
+            if (!started) {
+                reader.beginArray();
+                started = true;
+            }
+            if (!reader.hasNext()) {
+                reader.endArray();
+                return null;
+            }
+            return readObject(reader);
+        } catch (IllegalStateException e) {
+            // gson reports unexpected tokens as IllegalStateException
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads one coupon object into a flat map of string properties. Nested
+     * values have no place on a coupon node and are dropped.
+     */
+    static Map<String, Object> readObject(JsonReader reader) throws IOException {
+        Map<String, Object> props = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+                props.put(name, reader.nextString());
+            } else if (token == JsonToken.BOOLEAN) {
+                props.put(name, String.valueOf(reader.nextBoolean()));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return props;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,44 @@
+package com.theme.xerago.core.services.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+
+/**
+ * Reads coupons from newline delimited JSON: one coupon object per line,
+ * blank lines ignored.
+ */
+class NdjsonRowReader implements CouponRowReader {
+
+    private final BufferedReader reader;
+    private long line;
+
+    NdjsonRowReader(BufferedReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public Map<String, Object> next() throws IOException {
+        String text;
+        do {
+            text = reader.readLine();
+            if (text == null) {
+                return null;
+            }
+            line++;
+        } while (text.trim().isEmpty());
+        try (JsonReader json = new JsonReader(new StringReader(text))) {
+            return JsonArrayRowReader.readObject(json);
+        } catch (IllegalStateException | IOException e) {
+            throw new IOException("Malformed coupon on line " + line + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,235 @@
+package com.theme.xerago.core.services.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ExternalResourceChangeListener;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.day.cq.wcm.api.Page;
+import com.day.cq.wcm.api.PageManager;
+import com.theme.xerago.core.models.PickAGiftModel;
+import com.theme.xerago.core.models.WheelSpinGameModel;
+import com.theme.xerago.core.services.PrizeTable;
+import com.theme.xerago.core.services.PrizeTableService;
+import com.theme.xerago.core.utils.TokenBucket;
+
+/**
+ * Caches one {@link PrizeTable} per component path. A table is built from
+ * the same JSON the component model renders, so prize indexes match what the
+ * front end shows, and is dropped when the component, anything below it
+ * (its segments or prizes multifield) or the properties of its page change,
+ * or the component is removed.
+ * <p>
+ * Tables pace the prizes listed in the hourly limits: those of this
+ * configuration, overridden by the {@value #PN_HOURLY_LIMITS} property of
+ * the page and then by that of the component. They are read when a table is
+ * built, never when a prize is drawn. The buckets that pace a component are
+ * kept by redeem code apart from its table and handed to every table built
+ * for it, so a rebuild does not refill them; a bucket is only replaced when
+ * its limit changes and dropped with the component. Budgets are held in
+ * memory, each publish instance grants its own limits.
+ */
+@Component(service = { PrizeTableService.class, ResourceChangeListener.class },
+           property = {
+                   ResourceChangeListener.CHANGES + "=ADDED",
+                   ResourceChangeListener.CHANGES + "=CHANGED",
+                   ResourceChangeListener.CHANGES + "=REMOVED"
+           })
+@Designate(ocd = PrizeTableServiceImpl.Config.class)
+public class PrizeTableServiceImpl implements PrizeTableService, ExternalResourceChangeListener {
+
+    static final String WHEEL_RESOURCE_TYPE = "xeragotheme/components/wheel-spin-game";
+
+    static final String[] GIFT_RESOURCE_TYPES = {
+            "xeragotheme/components/floating-pick-a-gift",
+            "citi/components/floating-pick-a-gift"
+    };
+
+    static final String PN_HOURLY_LIMITS = "prizeHourlyLimits";
+
+    private static final String JCR_CONTENT = "/jcr:content";
+
+    @ObjectClassDefinition(name = "Xerago Prize Table Service",
+                           description = "Weighted prize draws for wheel spin and pick-a-gift components")
+    public static @interface Config {
+
+        @AttributeDefinition(name = "Observed paths",
+                             description = "Repository subtrees that contain game components (resource.paths of the change listener)")
+        String[] resource_paths() default { "/content/xeragotheme", "/content/experience-fragments/xeragotheme" };
+
+        @AttributeDefinition(name = "Hourly limits",
+                             description = "Prizes per hour by redeem code, e.g. WHEELGRAND=10, handed out evenly "
+                                     + "over the hour. Pages and components override them with " + PN_HOURLY_LIMITS
+                                     + ", a limit of 0 lifts one. Limits apply per publish instance: with N "
+                                     + "publishers up to N times as many prizes are granted")
+        String[] hourlyLimits() default {};
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // sorted, so that the tables below a removed page are a range
+    private final ConcurrentNavigableMap<String, PrizeTable> tables = new ConcurrentSkipListMap<>();
+
+    // by component path, then redeem code; outlive the tables they pace
+    private final ConcurrentNavigableMap<String, ConcurrentMap<String, Budget>> budgets = new ConcurrentSkipListMap<>();
+
+    private Map<String, Double> hourlyLimits = Collections.emptyMap();
+
+    @Activate
+    protected void activate(final Config config) {
+        Map<String, Double> limits = new HashMap<>();
+        parseLimits(config.hourlyLimits(), limits, "configuration");
+        hourlyLimits = limits;
+    }
+
+    @Override
+    public PrizeTable getPrizeTable(Resource component) {
+        PrizeTable table = tables.get(component.getPath());
+        if (table != null) {
+            return table;
+        }
+        String json = renderPrizesJson(component);
+        if (json == null) {
+            return null;
+        }
+        Map<String, Double> limits = getHourlyLimits(component);
+        ConcurrentMap<String, Budget> own = budgets.computeIfAbsent(component.getPath(), path -> new ConcurrentHashMap<>());
+        table = PrizeTable.fromJson(json, redeemCode -> getBudget(own, redeemCode, limits));
+        logger.debug("Built prize table with {} prizes for {}, paced: {}", table.size(), component.getPath(),
+                table.isPaced());
+        PrizeTable raced = tables.putIfAbsent(component.getPath(), table);
+        return raced != null ? raced : table;
+    }
+
+    @Override
+    public void onChange(List<ResourceChange> changes) {
+        if (tables.isEmpty() && budgets.isEmpty()) {
+            return;
+        }
+        for (ResourceChange change : changes) {
+            String path = change.getPath();
+            if (change.getType() == ResourceChange.ChangeType.REMOVED) {
+                // the component itself or one of its ancestors may be gone
+                tables.remove(path);
+                below(path).clear();
+                budgets.remove(path);
+                budgets.subMap(path + "/", path + "0").clear();
+            }
+            if (path.endsWith(JCR_CONTENT)) {
+                // page properties, the hourly limits among them, apply to every component of the page
+                below(path).clear();
+            }
+            if (tables.remove(path) != null) {
+                logger.debug("Prize table of {} invalidated by a change of the component", path);
+                continue;
+            }
+            // walk up to the owning component; changes below it touch the multifield
+            for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+                if (tables.remove(path.substring(0, slash)) != null) {
+                    logger.debug("Prize table of {} invalidated by a change at {}", path.substring(0, slash), path);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the tables of the components below the given path; '0' is the character after '/'
+     */
+    private ConcurrentNavigableMap<String, PrizeTable> below(String path) {
+        return tables.subMap(path + "/", path + "0");
+    }
+
+    /**
+     * @return the bucket of the component for the redeem code, the one it had
+     *         unless its limit changed, {@code null} if the code is not paced
+     */
+    private static TokenBucket getBudget(ConcurrentMap<String, Budget> own, String redeemCode,
+            Map<String, Double> limits) {
+        if (redeemCode == null) {
+            return null;
+        }
+        Double perHour = limits.get(redeemCode);
+        if (perHour == null || perHour <= 0) {
+            own.remove(redeemCode);
+            return null;
+        }
+        return own.compute(redeemCode,
+                (code, budget) -> budget != null && budget.perHour == perHour ? budget : new Budget(perHour)).bucket;
+    }
+
+    private Map<String, Double> getHourlyLimits(Resource component) {
+        Map<String, Double> limits = new HashMap<>(hourlyLimits);
+        PageManager pageManager = component.getResourceResolver().adaptTo(PageManager.class);
+        Page page = pageManager != null ? pageManager.getContainingPage(component) : null;
+        if (page != null) {
+            parseLimits(page.getProperties().get(PN_HOURLY_LIMITS, String[].class), limits, page.getPath());
+        }
+        parseLimits(component.getValueMap().get(PN_HOURLY_LIMITS, String[].class), limits, component.getPath());
+        return limits;
+    }
+
+    /**
+     * Adds limits of the form {@code <redeem code>=<prizes per hour>} to the
+     * map, replacing those it holds for the same codes. A limit of 0 lifts one.
+     */
+    private void parseLimits(String[] entries, Map<String, Double> limits, String source) {
+        if (entries == null) {
+            return;
+        }
+        for (String entry : entries) {
+            int separator = entry.lastIndexOf('=');
+            try {
+                double perHour = Double.parseDouble(entry.substring(separator + 1).trim());
+                if (separator < 1 || !(perHour >= 0)) {
+                    throw new NumberFormatException();
+                }
+                limits.put(entry.substring(0, separator).trim(), perHour);
+            } catch (NumberFormatException e) {
+                logger.warn("Ignoring hourly prize limit '{}' of {}, expected a redeem code, '=' and a number",
+                        entry, source);
+            }
+        }
+    }
+
+    private static String renderPrizesJson(Resource component) {
+        if (component.isResourceType(WHEEL_RESOURCE_TYPE)) {
+            WheelSpinGameModel wheel = component.adaptTo(WheelSpinGameModel.class);
+            return wheel != null ? wheel.getPrizeTableJson() : null;
+        }
+        for (String resourceType : GIFT_RESOURCE_TYPES) {
+            if (component.isResourceType(resourceType)) {
+                PickAGiftModel gift = component.adaptTo(PickAGiftModel.class);
+                return gift != null ? gift.getPrizeTableJson() : null;
+            }
+        }
+        return null;
+    }
+
+    private static final class Budget {
+
+        final double perHour;
+        final TokenBucket bucket;
+
+        Budget(double perHour) {
+            this.perHour = perHour;
+            this.bucket = PrizeTable.newBudget(perHour);
+        }
+    }
+}
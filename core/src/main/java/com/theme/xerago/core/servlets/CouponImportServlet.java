@@ -1,125 +1,85 @@
 package com.theme.xerago.core.servlets;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
-import org.apache.sling.api.resource.PersistenceException;
-import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.day.cq.dam.api.Asset;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.services.CouponImportException;
+import com.theme.xerago.core.services.CouponImportService;
 
+/**
+ * Queues a coupon import as a background job and answers with its id; the
+ * progress is polled from {@link CouponImportStatusServlet}.
+ */
 @Component(service=Servlet.class)
 @SlingServletPaths(value="/bin/importcoupons")
 public class CouponImportServlet extends SlingAllMethodsServlet {
 
 	private static final Logger Log = LoggerFactory.getLogger(CouponImportServlet.class);
 	
-//	@Reference
-//	private transient CouponImportService couponImportService;
+	@Reference
+	private transient CouponImportService couponImportService;
+
+	@Reference
+	private transient MetricsRegistry metrics;
+
+	private transient LatencyHistogram latency;
+
+	@Activate
+	protected void activate() {
+		latency = metrics.histogram("coupon.import.request");
+	}
  
 	@Override
 	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
 			throws ServletException, IOException {
+		long start = System.nanoTime();
+		try {
+			submit(request, response);
+		} finally {
+			latency.recordSince(start);
+		}
+	}
+
+	private void submit(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
 		String damPath = request.getParameter("damPath");
 		String targetPath = request.getParameter("targetPath");
-		ResourceResolver resolver = request.getResourceResolver();
-		Resource resource = resolver.getResource(damPath);
-		Log.error("dam res in servlet: ", resource);
-		if(resource == null) {
-			Log.error("Dam resource from servlet calling also not found at {}", damPath);
+		if(damPath == null || targetPath == null) {
+			response.setStatus(400);
+			response.getWriter().write("missing parameter : damPath and targetPath are required");
 			return;
 		}
-		Asset asset = resource.adaptTo(Asset.class);
-		if(asset == null) {
-			Log.error("Servlet Not an Asset");
-		}
 		try {
-			InputStream is = asset.getOriginal().getStream();
-			JsonElement root = JsonParser.parseReader(new InputStreamReader(is));
-			if(root.isJsonArray()) {
-				JsonArray coupons = root.getAsJsonArray();
-				Log.error("content path {}",targetPath);
-				Resource parent = resolver.getResource(targetPath);
-				if(parent == null) {
-					Log.error("Target content path not found {}", targetPath);
-					parent = createResourcePath(resolver, targetPath);
-				}
-				for(JsonElement element : coupons) {
-					JsonObject obj = element.getAsJsonObject();
-					String id = obj.get("id").getAsString();
-					Resource existingChild = resolver.getResource(targetPath + "/" + id);
-					if(existingChild != null) {
-						Log.error("coupon code is already exists, skipping: {}", existingChild.getPath());
-						continue;
-					}
-					Map<String, Object> props = new HashMap<>();
-					for(String key : obj.keySet()) {
-						props.put(key, obj.get(key).getAsString());
-					}
-					props.put("jcr:primaryType", "nt:unstructured");
-					Resource child = resolver.create(parent, id, props);
-					Log.error("coupon created {}", child.getPath());
-				}
-				
-			}
-			resolver.commit();
-			Log.error("Coupon import completed successfully");
-		}catch(Exception e) {
-			Log.error("Error importing coupons test", e);
-		}
-//		if(damPath == null || targetPath == null) {
-//			response.setStatus(400);
-//			response.getWriter().write("missing parameter : damPath and targetPath are required");
-//			return;
-//		}
-//		try {
-//			String status = couponImportService.importCoupons(damPath, targetPath);
-//			if("success".equals(status)) {
-//				response.setStatus(200);
-//				response.getWriter().write("coupon imported successfully");
-//			}
-//			else {
-//				Log.error("error importing coupons");
-//				response.getWriter().write("failed to import coupons");
-//			}
-//		}catch(Exception e) {
-//			Log.error("error importing coupons", e);
-//			response.getWriter().write("failed to import coupons" + e.getMessage());
-//		}
-			
-	}
-	private Resource createResourcePath(ResourceResolver resolver, String path) throws PersistenceException {
-		String[] segments = path.split("/");
-		StringBuilder currentPath = new StringBuilder();
-		Resource parent = resolver.getResource("/");
-		for(String segment : segments) {
-			if(segment.isEmpty()) continue;
-			currentPath.append("/").append(segment);
-			Resource res = resolver.getResource(currentPath.toString());
-			if(res == null) {
-				res = resolver.create(parent, segment, null);
-			}
-			parent = res;
+			String jobId = couponImportService.submitImport(damPath, targetPath);
+			JsonObject result = new JsonObject();
+			result.addProperty("jobId", jobId);
+			result.addProperty("statusUrl", CouponImportStatusServlet.PATH + "?jobId="
+					+ URLEncoder.encode(jobId, StandardCharsets.UTF_8.name()));
+			response.setStatus(202);
+			response.setContentType("application/json");
+			response.setCharacterEncoding("UTF-8");
+			response.getWriter().write(result.toString());
+		}catch(CouponImportException e) {
+			Log.error("error queueing coupon import", e);
+			response.setStatus(500);
+			response.getWriter().write("failed to import coupons: " + e.getMessage());
 		}
-		return parent;
 	}
 	
 }
@@ -0,0 +1,77 @@
+package com.theme.xerago.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.google.gson.JsonObject;
+import com.theme.xerago.core.services.CouponImportProgress;
+import com.theme.xerago.core.services.CouponImportService;
+
+/**
+ * Reports the state and counters of a coupon import job queued by
+ * {@link CouponImportServlet}.
+ */
+@Component(service=Servlet.class)
+@SlingServletPaths(value=CouponImportStatusServlet.PATH)
+public class CouponImportStatusServlet extends SlingSafeMethodsServlet {
+
+	static final String PATH = "/bin/importcoupons/status";
+
+	@Reference
+	private transient CouponImportService couponImportService;
+
+	@Reference
+	private transient JobManager jobManager;
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+		String jobId = request.getParameter("jobId");
+		if(jobId == null) {
+			response.setStatus(400);
+			response.getWriter().write("missing parameter : jobId is required");
+			return;
+		}
+		Job job = jobManager.getJobById(jobId);
+		CouponImportProgress progress = couponImportService.getProgress(jobId);
+		if(job == null && progress == null) {
+			response.setStatus(404);
+			response.getWriter().write("import job not found");
+			return;
+		}
+		JsonObject status = new JsonObject();
+		status.addProperty("jobId", jobId);
+		if(job != null) {
+			status.addProperty("state", job.getJobState().name());
+		} else if(!progress.isFinished()) {
+			status.addProperty("state", Job.JobState.ACTIVE.name());
+		} else {
+			status.addProperty("state", progress.getError() == null ? Job.JobState.SUCCEEDED.name() : Job.JobState.ERROR.name());
+		}
+		status.addProperty("finished", progress != null && progress.isFinished());
+		status.addProperty("processed", progress != null ? progress.getProcessed() : 0);
+		status.addProperty("created", progress != null ? progress.getCreated() : 0);
+		status.addProperty("skipped", progress != null ? progress.getSkipped() : 0);
+		status.addProperty("failed", progress != null ? progress.getFailed() : 0);
+		status.addProperty("rowsPerSecond", progress != null ? progress.getRowsPerSecond() : 0);
+		status.addProperty("elapsedMillis", progress != null ? progress.getElapsedMillis() : 0);
+		if(progress != null && progress.getError() != null) {
+			status.addProperty("error", progress.getError());
+		}
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.getWriter().write(status.toString());
+	}
+
+}
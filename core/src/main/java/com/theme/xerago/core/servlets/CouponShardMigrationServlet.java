@@ -0,0 +1,61 @@
+package com.theme.xerago.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.theme.xerago.core.services.CouponShards;
+
+/**
+ * Moves the coupons of a flat pool into the sharded layout described by
+ * {@link CouponShards}. The pool stays usable while it is migrated.
+ */
+@Component(service=Servlet.class)
+@SlingServletPaths(value="/bin/migratecoupons")
+public class CouponShardMigrationServlet extends SlingAllMethodsServlet {
+
+	private static final Logger Log = LoggerFactory.getLogger(CouponShardMigrationServlet.class);
+
+	static final int BATCH_SIZE = 1000;
+
+	@Override
+	protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+		String poolPath = request.getParameter("poolPath");
+		if(poolPath == null) {
+			response.setStatus(400);
+			response.getWriter().write("missing parameter : poolPath is required");
+			return;
+		}
+		Resource pool = request.getResourceResolver().getResource(poolPath);
+		if(pool == null) {
+			response.setStatus(404);
+			response.getWriter().write("coupon folder not found");
+			return;
+		}
+		try {
+			long start = System.currentTimeMillis();
+			int moved = CouponShards.migrate(request.getResourceResolver(), pool, BATCH_SIZE);
+			Log.info("Migrated {} coupons of {} into buckets in {} ms", moved, poolPath,
+					System.currentTimeMillis() - start);
+			response.getWriter().write("migrated " + moved + " coupons");
+		}catch(PersistenceException e) {
+			Log.error("Error migrating coupon pool {}", poolPath, e);
+			request.getResourceResolver().revert();
+			response.setStatus(500);
+			response.getWriter().write("failed to migrate coupons");
+		}
+	}
+
+}
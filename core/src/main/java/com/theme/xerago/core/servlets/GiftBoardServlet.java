@@ -0,0 +1,107 @@
+package com.theme.xerago.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.RateMeter;
+import com.theme.xerago.core.services.GiftBoardService;
+import com.theme.xerago.core.services.OpenedGift;
+import com.theme.xerago.core.services.Prize;
+
+/**
+ * Opens the gift box of a pick-a-gift component given in the {@code box}
+ * parameter. The prize is drawn on the server, paced like the wheel, and the
+ * board around it comes from the pool of pre-generated boards, so the browser
+ * neither shuffles the boxes nor learns their contents before a box is
+ * chosen.
+ * <p>
+ * Answers with the chosen box, the index of its prize in the prize JSON of
+ * the component, {@code -1} for "better luck", with the text and redeem code
+ * of the prize, and with the board: the prize index in each box.
+ */
+@Component(service=Servlet.class)
+@SlingServletResourceTypes(resourceTypes={ "xeragotheme/components/floating-pick-a-gift", "citi/components/floating-pick-a-gift" },
+selectors = "board",
+extensions = "json",
+methods = HttpConstants.METHOD_GET)
+public class GiftBoardServlet extends SlingAllMethodsServlet {
+
+	static final String PARAM_BOX = "box";
+
+	@Reference
+	private transient GiftBoardService giftBoardService;
+
+	@Reference
+	private transient MetricsRegistry metrics;
+
+	private transient LatencyHistogram latency;
+
+	private transient RateMeter boards;
+
+	@Activate
+	protected void activate() {
+		latency = metrics.histogram("gift.board");
+		boards = metrics.meter("gift.boards");
+	}
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+		long start = System.nanoTime();
+		try {
+			// every game gets a board of its own, neither the dispatcher nor the browser may keep one
+			response.setHeader("Cache-Control", "no-store");
+			response.setHeader("Dispatcher", "no-cache");
+
+			OpenedGift opened;
+			try {
+				opened = giftBoardService.open(request.getResource(), Integer.parseInt(request.getParameter(PARAM_BOX)));
+			} catch (IllegalArgumentException e) {
+				// also a missing or malformed box parameter, NumberFormatException is one
+				response.setStatus(400);
+				response.getWriter().write("box must be the position of a gift box");
+				return;
+			}
+			if(opened == null) {
+				response.setStatus(404);
+				response.getWriter().write("no gift prizes");
+				return;
+			}
+			boards.mark(1);
+			JsonObject outcome = new JsonObject();
+			outcome.addProperty("box", opened.getBox());
+			Prize prize = opened.getPrize();
+			outcome.addProperty("index", prize != null ? prize.getIndex() : -1);
+			if(prize != null) {
+				outcome.addProperty("text", prize.getText());
+				outcome.addProperty("redeemCode", prize.getRedeemCode());
+			}
+			JsonArray board = new JsonArray();
+			for(int index : opened.getBoard()) {
+				board.add(index);
+			}
+			outcome.add("board", board);
+			response.setContentType("application/json");
+			response.setCharacterEncoding("UTF-8");
+			response.getWriter().write(outcome.toString());
+		} finally {
+			latency.recordSince(start);
+		}
+	}
+
+}
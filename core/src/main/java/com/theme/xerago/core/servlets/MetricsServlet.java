@@ -0,0 +1,43 @@
+package com.theme.xerago.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.google.gson.JsonObject;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+
+/**
+ * Reports every metric of the {@link MetricsRegistry} as one flat JSON
+ * object, for scraping from the instance itself. The path is not allowed
+ * through the dispatcher.
+ */
+@Component(service=Servlet.class)
+@SlingServletPaths(value=MetricsServlet.PATH)
+public class MetricsServlet extends SlingSafeMethodsServlet {
+
+	static final String PATH = "/bin/xerago/metrics";
+
+	@Reference
+	private transient MetricsRegistry metrics;
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+		JsonObject values = new JsonObject();
+		metrics.getValues().forEach(values::addProperty);
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		response.getWriter().write(values.toString());
+	}
+
+}
@@ -1,62 +1,155 @@
 package com.theme.xerago.core.servlets;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
-import org.apache.sling.api.resource.Resource;
-import org.apache.sling.api.resource.ResourceResolver;
-import org.apache.sling.api.resource.ValueMap;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
 import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.apache.sling.api.servlets.HttpConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import com.google.gson.Gson;
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.services.CouponClaimException;
+import com.theme.xerago.core.services.CouponEntry;
+import com.theme.xerago.core.services.CouponPoolService;
+import com.theme.xerago.core.services.RewardTiers;
 
+/**
+ * Hands out a coupon for the score passed in the {@code points} parameter.
+ * The score picks a reward tier, each tier drawing from its own coupon pool;
+ * when the pool of a tier is exhausted, the next lower tier is tried.
+ * Requests without a score count as 0 points, so they get nothing when the
+ * lowest tier starts above 0.
+ * <p>
+ * The score is reported by the browser and not verified: anyone may ask for
+ * any score. It is capped at the highest score the game can reach, so a
+ * forged score is worth no more than a perfect game.
+ */
 @Component(service=Servlet.class)
 @SlingServletResourceTypes(resourceTypes="xeragotheme/components/smartRushGame/gamestartscreen",
 selectors = "coupon",
 extensions = "json",
 methods = HttpConstants.METHOD_GET)
+@Designate(ocd = RandomCouponSelector.Config.class)
 public class RandomCouponSelector extends SlingAllMethodsServlet {
 
-	private final Random random = new Random();
-	
+	static final String POOL_PATH = "/content/coupons/static";
+
+	static final String PARAM_POINTS = "points";
+
+	private static final Logger Log = LoggerFactory.getLogger(RandomCouponSelector.class);
+
+	@ObjectClassDefinition(name = "Xerago Coupon Reward Tiers",
+			description = "Coupon pools handed out by the coupon servlet, by game score")
+	public static @interface Config {
+
+		@AttributeDefinition(name = "Reward tiers",
+				description = "<minPoints>=<poolPath>, e.g. 100=/content/coupons/silver")
+		String[] tiers() default { "0=" + POOL_PATH };
+
+		@AttributeDefinition(name = "Max points",
+				description = "Highest score a game can reach; scores are not verified and higher ones count as this")
+		int maxPoints() default 1000;
+	}
+
+	@Reference
+	private transient CouponPoolService couponPoolService;
+
+	@Reference
+	private transient MetricsRegistry metrics;
+
+	private transient RewardTiers rewardTiers;
+
+	private transient LatencyHistogram latency;
+
+	private int maxPoints;
+
+	@Activate
+	protected void activate(final Config config) {
+		rewardTiers = RewardTiers.parse(config.tiers());
+		maxPoints = Math.max(0, config.maxPoints());
+		for(int tier = 0; tier < rewardTiers.size(); tier++) {
+			if(rewardTiers.getThreshold(tier) > maxPoints) {
+				Log.warn("Reward tier {} needs {} points, more than the max points {}", rewardTiers.getPoolPath(tier),
+						rewardTiers.getThreshold(tier), maxPoints);
+			}
+		}
+		latency = metrics.histogram("coupon.select");
+	}
+
 	@Override
 	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
 			throws ServletException, IOException {
-		ResourceResolver resolver = request.getResourceResolver();
-		Resource couponFolder = resolver.getResource("/content/coupons/static");
-		if(couponFolder == null) {
+		long start = System.nanoTime();
+		try {
+			select(request, response);
+		} finally {
+			latency.recordSince(start);
+		}
+	}
+
+	private void select(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		int points;
+		try {
+			String param = request.getParameter(PARAM_POINTS);
+			points = param == null || param.isEmpty() ? 0 : Integer.parseInt(param.trim());
+		} catch (NumberFormatException e) {
+			response.setStatus(400);
+			response.getWriter().write("points must be a number");
+			return;
+		}
+
+		// scores below zero do not occur in the games, treat them like no score; nor do scores above the max
+		int tier = rewardTiers.tierOf(Math.min(Math.max(0, points), maxPoints));
+		if(tier < 0) {
 			response.setStatus(404);
-			response.getWriter().write("coupon folder not found");
+			response.getWriter().write("No reward for " + points + " points");
 			return;
 		}
-		List<Resource> coupons = new ArrayList<>();
-		for(Resource coupon : couponFolder.getChildren()) {
-			coupons.add(coupon);
+
+		boolean poolFound = false;
+		CouponEntry selectedCoupon = null;
+		for(; tier >= 0 && selectedCoupon == null; tier--) {
+			String poolPath = rewardTiers.getPoolPath(tier);
+			if(couponPoolService.getPool(poolPath) != null) {
+				poolFound = true;
+				try {
+					selectedCoupon = couponPoolService.claim(poolPath);
+				} catch (CouponClaimException e) {
+					response.setStatus(503);
+					response.setIntHeader("Retry-After", 1);
+					response.getWriter().write("coupon could not be claimed, try again");
+					return;
+				}
+			}
 		}
-		
-		if(coupons.isEmpty()) {
+		if(!poolFound) {
+			response.setStatus(404);
+			response.getWriter().write("coupon folder not found");
+			return;
+		}
+		if(selectedCoupon == null) {
 			response.setStatus(404);
 			response.getWriter().write("No coupons available");
 			return;
 		}
 		
-		Resource selectedCoupon = coupons.get(random.nextInt(coupons.size()));
-		
-		ValueMap couponProps = selectedCoupon.getValueMap();
-		Gson gson = new Gson();
-		response.setContentType("application/Json");
-		response.getWriter().write(gson.toJson(couponProps));
-		
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setContentLength(selectedCoupon.getJsonLength());
+		selectedCoupon.writeJson(response.getOutputStream());
 	}
 
 }
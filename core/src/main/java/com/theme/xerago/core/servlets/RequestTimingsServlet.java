@@ -0,0 +1,69 @@
+package com.theme.xerago.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.SlingSafeMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletPaths;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.RequestTimings;
+import com.theme.xerago.core.metrics.SlowRequest;
+
+/**
+ * Reports the render time per resource type and the slowest requests
+ * recorded by {@link RequestTimings}, all in microseconds. Like the other
+ * metrics, the path is not allowed through the dispatcher.
+ */
+@Component(service=Servlet.class)
+@SlingServletPaths(value=RequestTimingsServlet.PATH)
+public class RequestTimingsServlet extends SlingSafeMethodsServlet {
+
+	static final String PATH = "/bin/xerago/timings";
+
+	@Reference
+	private transient RequestTimings requestTimings;
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+		JsonObject timings = new JsonObject();
+		requestTimings.getTimings().forEach((key, snapshot) -> timings.add(key, toJson(snapshot)));
+		JsonArray slowest = new JsonArray();
+		for(SlowRequest slow : requestTimings.getSlowestRequests()) {
+			JsonObject entry = new JsonObject();
+			entry.addProperty("path", slow.getPath());
+			entry.addProperty("key", slow.getKey());
+			entry.addProperty("micros", slow.getMicros());
+			entry.addProperty("timestamp", slow.getTimestamp());
+			slowest.add(entry);
+		}
+		JsonObject result = new JsonObject();
+		result.add("timings", timings);
+		result.add("slowest", slowest);
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+		response.getWriter().write(result.toString());
+	}
+
+	private static JsonObject toJson(LatencyHistogram.Snapshot snapshot) {
+		JsonObject json = new JsonObject();
+		json.addProperty("count", snapshot.getCount());
+		json.addProperty("mean", snapshot.getMean());
+		json.addProperty("p50", snapshot.getValueAtPercentile(50));
+		json.addProperty("p90", snapshot.getValueAtPercentile(90));
+		json.addProperty("p99", snapshot.getValueAtPercentile(99));
+		json.addProperty("max", snapshot.getMax());
+		return json;
+	}
+
+}
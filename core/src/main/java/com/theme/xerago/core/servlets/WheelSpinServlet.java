@@ -0,0 +1,99 @@
+package com.theme.xerago.core.servlets;
+
+import java.io.IOException;
+
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.SlingHttpServletRequest;
+import org.apache.sling.api.SlingHttpServletResponse;
+import org.apache.sling.api.servlets.HttpConstants;
+import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.apache.sling.servlets.annotations.SlingServletResourceTypes;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+import com.google.gson.JsonObject;
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.RateMeter;
+import com.theme.xerago.core.services.Prize;
+import com.theme.xerago.core.services.PrizeTable;
+import com.theme.xerago.core.services.PrizeTableService;
+
+/**
+ * Draws the outcome of a wheel spin on the server, so the browser only
+ * animates the wheel to the segment it is told. The draw follows the authored
+ * segment probabilities through the component's cached {@link PrizeTable}
+ * and uses the request thread's own random generator, so concurrent spins
+ * share no lock or {@code Random}. Segments with an hourly limit are paced
+ * by the table as well.
+ * <p>
+ * Answers with the index of the target segment in the segment JSON of the
+ * component, its text and its redeem code.
+ */
+@Component(service=Servlet.class)
+@SlingServletResourceTypes(resourceTypes="xeragotheme/components/wheel-spin-game",
+selectors = "spin",
+extensions = "json",
+methods = HttpConstants.METHOD_GET)
+public class WheelSpinServlet extends SlingAllMethodsServlet {
+
+	@Reference
+	private transient PrizeTableService prizeTableService;
+
+	@Reference
+	private transient MetricsRegistry metrics;
+
+	private transient LatencyHistogram latency;
+
+	private transient RateMeter spins;
+
+	@Activate
+	protected void activate() {
+		latency = metrics.histogram("wheel.spin");
+		spins = metrics.meter("wheel.spins");
+	}
+
+	@Override
+	protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response)
+			throws ServletException, IOException {
+		long start = System.nanoTime();
+		try {
+			spin(request, response);
+		} finally {
+			latency.recordSince(start);
+		}
+	}
+
+	private void spin(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+		// every spin is a new draw, neither the dispatcher nor the browser may keep one
+		response.setHeader("Cache-Control", "no-store");
+		response.setHeader("Dispatcher", "no-cache");
+
+		PrizeTable table = prizeTableService.getPrizeTable(request.getResource());
+		if(table == null || table.size() == 0) {
+			response.setStatus(404);
+			response.getWriter().write("no wheel segments");
+			return;
+		}
+
+		Prize prize = table.draw();
+		if(prize == null) {
+			// every segment left is paced and has used up its budget for now
+			response.setStatus(503);
+			response.getWriter().write("no wheel segment available");
+			return;
+		}
+		spins.mark(1);
+		JsonObject outcome = new JsonObject();
+		outcome.addProperty("index", prize.getIndex());
+		outcome.addProperty("text", prize.getText());
+		outcome.addProperty("redeemCode", prize.getRedeemCode());
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		response.getWriter().write(outcome.toString());
+	}
+
+}
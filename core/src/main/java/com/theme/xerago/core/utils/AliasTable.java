@@ -0,0 +1,103 @@
+package com.theme.xerago.core.utils;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted random sampler using Vose's alias method. Building the table is
+ * linear in the number of weights; every draw afterwards costs one random
+ * column and one comparison, independent of the number of outcomes.
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ */
+public final class AliasTable {
+
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights relative weight of each outcome; negative, NaN and
+     *                infinite weights count as zero. If no weight is
+     *                positive, all outcomes are equally likely.
+     * @throws IllegalArgumentException if no weights are given
+     */
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("At least one weight is required");
+        }
+        double[] scaled = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            double weight = weights[i];
+            scaled[i] = weight > 0 && !Double.isInfinite(weight) ? weight : 0;
+            sum += scaled[i];
+        }
+        for (int i = 0; i < n; i++) {
+            scaled[i] = sum > 0 ? scaled[i] * n / sum : 1;
+        }
+
+        probability = new double[n];
+        alias = new int[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left over is 1 up to rounding errors
+        while (largeCount > 0) {
+            int column = large[--largeCount];
+            probability[column] = 1;
+            alias[column] = column;
+        }
+        while (smallCount > 0) {
+            int column = small[--smallCount];
+            probability[column] = 1;
+            alias[column] = column;
+        }
+    }
+
+    /**
+     * @return number of outcomes
+     */
+    public int size() {
+        return probability.length;
+    }
+
+    /**
+     * Draws an outcome using the calling thread's random generator.
+     *
+     * @return index of the drawn weight
+     */
+    public int next() {
+        return next(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Draws an outcome using the given random generator.
+     *
+     * @return index of the drawn weight
+     */
+    public int next(Random random) {
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+}
@@ -0,0 +1,122 @@
+package com.theme.xerago.core.utils;
+
+/**
+ * Compact set of strings that keeps only a 64-bit fingerprint per element in
+ * an open addressing {@code long[]} table: about 16 bytes per element instead
+ * of a {@code String} plus a {@code HashMap} node.
+ * <p>
+ * Two different strings share a fingerprint with a probability of about
+ * n&sup2;/2&sup6;&sup5; for n elements, one in tens of millions for a million
+ * elements, in which case the second one is reported as already present.
+ * Use it where such a rare false positive is acceptable, such as skipping
+ * duplicate ids during an import. Not thread-safe.
+ */
+public final class FingerprintSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] table;
+    private int size;
+    private boolean containsZero;
+
+    public FingerprintSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of elements the set should hold without resizing
+     */
+    public FingerprintSet(int expectedSize) {
+        table = new long[tableSize(expectedSize)];
+    }
+
+    /**
+     * @return {@code true} if the string was not in the set before
+     */
+    public boolean add(String value) {
+        long fingerprint = fingerprint(value);
+        if (fingerprint == 0) {
+            // zero marks free slots, so it is tracked apart
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+            long current = table[slot];
+            if (current == fingerprint) {
+                return false;
+            }
+            if (current == 0) {
+                table[slot] = fingerprint;
+                if (++size > table.length >>> 1) {
+                    resize();
+                }
+                return true;
+            }
+        }
+    }
+
+    public boolean contains(String value) {
+        long fingerprint = fingerprint(value);
+        if (fingerprint == 0) {
+            return containsZero;
+        }
+        int mask = table.length - 1;
+        for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+            long current = table[slot];
+            if (current == fingerprint) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void resize() {
+        long[] old = table;
+        table = new long[old.length << 1];
+        int mask = table.length - 1;
+        for (long fingerprint : old) {
+            if (fingerprint != 0) {
+                int slot = (int) fingerprint & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = fingerprint;
+            }
+        }
+    }
+
+    private static int tableSize(int expectedSize) {
+        // keep the load factor at or below one half
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize) * 2 - 1) << 1;
+        return Math.max(MIN_CAPACITY, capacity);
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished with the MurmurHash3
+     * mixer so that the low bits used for the slot are well distributed.
+     */
+    static long fingerprint(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,204 @@
+package com.theme.xerago.core.utils;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Bounded in-memory cache split into independently locked stripes, so that
+ * concurrent callers only contend when their keys hash to the same stripe.
+ * Each stripe keeps its entries in access order and drops the least
+ * recently used one when it is full; entries not accessed for longer than
+ * the idle timeout are dropped as well.
+ */
+public final class StripedLruCache<K, V> {
+
+    private final Stripe<K, V>[] stripes;
+    private final int mask;
+
+    /**
+     * @param stripes number of stripes, rounded up to a power of two
+     * @param maxEntries upper bound of the number of entries over all stripes
+     * @param idleTimeout time after which an entry that was not accessed is dropped
+     */
+    @SuppressWarnings("unchecked")
+    public StripedLruCache(int stripes, int maxEntries, long idleTimeout, TimeUnit unit) {
+        int count = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+        this.stripes = new Stripe[count];
+        this.mask = count - 1;
+        int perStripe = Math.max(1, maxEntries / count);
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe<>(perStripe, unit.toNanos(idleTimeout));
+        }
+    }
+
+    /**
+     * Returns the value for the key, creating it with the given function if
+     * the key is not present. The function runs under the stripe lock and
+     * must be cheap.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> create) {
+        return stripe(key).computeIfAbsent(key, create, System.nanoTime());
+    }
+
+    /**
+     * @return the value for the key, or {@code null} if it is not present
+     */
+    public V get(K key) {
+        return stripe(key).get(key, System.nanoTime());
+    }
+
+    /**
+     * Stores the value for the key, replacing any previous one and evicting
+     * the least recently used entry of the stripe when it is full.
+     */
+    public void put(K key, V value) {
+        stripe(key).put(key, value, System.nanoTime());
+    }
+
+    /**
+     * @return the value that was removed, or {@code null} if the key was not present
+     */
+    public V remove(K key) {
+        return stripe(key).remove(key);
+    }
+
+    /**
+     * Removes every entry whose key matches. Stripes are visited one at a
+     * time, so entries added meanwhile may be kept.
+     *
+     * @return whether any entry was removed
+     */
+    public boolean removeIf(Predicate<? super K> filter) {
+        boolean removed = false;
+        for (Stripe<K, V> stripe : stripes) {
+            removed |= stripe.removeIf(filter);
+        }
+        return removed;
+    }
+
+    /**
+     * @return number of entries over all stripes, including expired ones not dropped yet
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * Passes every entry that is not idle to the consumer. Each stripe is
+     * copied under its lock and the consumer runs outside of it, so it may
+     * miss entries added meanwhile.
+     */
+    public void forEach(BiConsumer<? super K, ? super V> consumer) {
+        long now = System.nanoTime();
+        for (Stripe<K, V> stripe : stripes) {
+            for (Map.Entry<K, V> entry : stripe.copy(now)) {
+                consumer.accept(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private Stripe<K, V> stripe(K key) {
+        int hash = key.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+
+    private static final class Entry<V> {
+
+        final V value;
+        long lastAccess;
+
+        Entry(V value, long lastAccess) {
+            this.value = value;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static final class Stripe<K, V> {
+
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int maxEntries;
+        private final long idleNanos;
+
+        Stripe(int maxEntries, long idleNanos) {
+            this.maxEntries = maxEntries;
+            this.idleNanos = idleNanos;
+        }
+
+        synchronized V computeIfAbsent(K key, Function<? super K, ? extends V> create, long now) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && now - entry.lastAccess <= idleNanos) {
+                entry.lastAccess = now;
+                return entry.value;
+            }
+            V value = create.apply(key);
+            put(key, value, now);
+            return value;
+        }
+
+        synchronized void put(K key, V value, long now) {
+            if (entries.remove(key) == null) {
+                expire(now);
+                if (entries.size() >= maxEntries) {
+                    Iterator<K> eldest = entries.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+            entries.put(key, new Entry<>(value, now));
+        }
+
+        synchronized V remove(K key) {
+            Entry<V> entry = entries.remove(key);
+            return entry != null ? entry.value : null;
+        }
+
+        synchronized boolean removeIf(Predicate<? super K> filter) {
+            return entries.keySet().removeIf(filter);
+        }
+
+        synchronized V get(K key, long now) {
+            Entry<V> entry = entries.get(key);
+            if (entry == null || now - entry.lastAccess > idleNanos) {
+                return null;
+            }
+            entry.lastAccess = now;
+            return entry.value;
+        }
+
+        synchronized List<Map.Entry<K, V>> copy(long now) {
+            List<Map.Entry<K, V>> copy = new ArrayList<>(entries.size());
+            entries.forEach((key, entry) -> {
+                if (now - entry.lastAccess <= idleNanos) {
+                    copy.add(new AbstractMap.SimpleImmutableEntry<>(key, entry.value));
+                }
+            });
+            return copy;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        /**
+         * Drops idle entries from the least recently used end.
+         */
+        private void expire(long now) {
+            Iterator<Entry<V>> eldest = entries.values().iterator();
+            while (eldest.hasNext() && now - eldest.next().lastAccess > idleNanos) {
+                eldest.remove();
+            }
+        }
+    }
+}
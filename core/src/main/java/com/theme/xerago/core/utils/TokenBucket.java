@@ -0,0 +1,87 @@
+package com.theme.xerago.core.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as the generic cell rate algorithm:
+ * the only state is the theoretical arrival time of the next request,
+ * advanced by one emission interval per granted token with compare-and-set.
+ * A bucket holds at most {@code burst} tokens and refills at
+ * {@code tokensPerSecond}.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param tokensPerSecond sustained rate, must be positive
+     * @param burst tokens available at once to an idle bucket, at least one
+     */
+    public TokenBucket(double tokensPerSecond, int burst) {
+        this(tokensPerSecond, burst, System.nanoTime());
+    }
+
+    /**
+     * Creates a full bucket as of the given {@link System#nanoTime()}, for
+     * callers that pass the same reading on to {@link #tryAcquire(long)}.
+     */
+    public TokenBucket(double tokensPerSecond, int burst, long nowNanos) {
+        if (!(tokensPerSecond > 0)) {
+            throw new IllegalArgumentException("Rate must be positive: " + tokensPerSecond);
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+        this.toleranceNanos = intervalNanos * (Math.max(1, burst) - 1);
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return {@code false} if the bucket is empty
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(System.nanoTime());
+    }
+
+    /**
+     * Takes a token if one is available at the given {@link System#nanoTime()}.
+     */
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            long arrival = theoreticalArrival.get();
+            if (arrival - nowNanos > toleranceNanos) {
+                return false;
+            }
+            long next = Math.max(arrival, nowNanos) + intervalNanos;
+            if (theoreticalArrival.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a token taken with {@link #tryAcquire(long)}, for callers
+     * that turn a request down for another reason after taking it.
+     */
+    public void refund() {
+        theoreticalArrival.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * @return nanoseconds until the next token is available, zero if one is available now
+     */
+    public long nanosUntilAvailable(long nowNanos) {
+        return Math.max(0, theoreticalArrival.get() - nowNanos - toleranceNanos);
+    }
+
+    /**
+     * @return whether the bucket has refilled completely, so forgetting it
+     *         would not change any decision
+     */
+    public boolean isFull(long nowNanos) {
+        return theoreticalArrival.get() - nowNanos <= 0;
+    }
+}
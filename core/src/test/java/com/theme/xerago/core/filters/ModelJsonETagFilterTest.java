@@ -0,0 +1,136 @@
+package com.theme.xerago.core.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class ModelJsonETagFilterTest {
+
+    private static final String WHEEL = "/content/page/jcr:content/wheel";
+
+    private final AemContext context = new AemContext();
+
+    private Filter filter;
+
+    private String body = "{\"title\":\"Spin\"}";
+
+    private final FilterChain chain = (request, response) -> {
+        response.setContentType("application/json");
+        response.setContentLength(body.length());
+        response.getWriter().write(body);
+    };
+
+    @BeforeEach
+    void setUp() {
+        context.create().resource(WHEEL, "sling:resourceType", "xeragotheme/components/wheel-spin-game");
+        context.create().resource("/content/page/jcr:content/text", "sling:resourceType", "core/components/text");
+        filter = context.registerInjectActivateService(new ModelJsonETagFilter());
+    }
+
+    private MockSlingHttpServletRequest request(String path, String selectors, String ifNoneMatch) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        request.setResource(context.resourceResolver().getResource(path));
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setResourcePath(path);
+        pathInfo.setSelectorString(selectors);
+        pathInfo.setExtension("json");
+        if (ifNoneMatch != null) {
+            request.addHeader("If-None-Match", ifNoneMatch);
+        }
+        return request;
+    }
+
+    private MockSlingHttpServletResponse doFilter(MockSlingHttpServletRequest request)
+            throws IOException, ServletException {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    @Test
+    void doFilter_addsContentHashETag() throws IOException, ServletException {
+        MockSlingHttpServletResponse response = doFilter(request(WHEEL, "model", null));
+
+        assertEquals(200, response.getStatus());
+        assertEquals(body, response.getOutputAsString());
+        assertEquals(ModelJsonETagFilter.etagOf(response.getOutput()), response.getHeader("ETag"));
+        assertEquals(doFilter(request(WHEEL, "model", null)).getHeader("ETag"), response.getHeader("ETag"),
+                "Same content, same ETag");
+
+        body = "{\"title\":\"Spin again\"}";
+        assertFalse(response.getHeader("ETag").equals(doFilter(request(WHEEL, "model", null)).getHeader("ETag")));
+    }
+
+    @Test
+    void doFilter_answersMatchingConditionalGetWith304() throws IOException, ServletException {
+        String etag = doFilter(request(WHEEL, "model", null)).getHeader("ETag");
+
+        MockSlingHttpServletResponse response = doFilter(request(WHEEL, "model", "\"other\", W/" + etag));
+
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+        assertEquals(0, response.getOutput().length);
+        assertEquals(etag, response.getHeader("ETag"));
+
+        body = "{\"title\":\"Changed\"}";
+        response = doFilter(request(WHEEL, "model", etag));
+        assertEquals(200, response.getStatus());
+        assertEquals(body, response.getOutputAsString());
+    }
+
+    @Test
+    void doFilter_coversLegacyPickAGiftType() throws IOException, ServletException {
+        String gift = "/content/page/jcr:content/gift";
+        context.create().resource(gift, "sling:resourceType", "citi/components/floating-pick-a-gift");
+
+        assertNotNull(doFilter(request(gift, "model", null)).getHeader("ETag"));
+    }
+
+    @Test
+    void doFilter_leavesOtherRequestsAlone() throws IOException, ServletException {
+        assertNull(doFilter(request(WHEEL, "coupon", null)).getHeader("ETag"));
+        assertNull(doFilter(request("/content/page/jcr:content/text", "model", null)).getHeader("ETag"));
+    }
+
+    @Test
+    void doFilter_passesErrorsOn() throws IOException, ServletException {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        filter.doFilter(request(WHEEL, "model", "*"), response, (request, errorResponse) -> {
+            ((HttpServletResponse) errorResponse).setStatus(404);
+            errorResponse.getWriter().write("not found");
+        });
+
+        assertEquals(404, response.getStatus());
+        assertEquals("not found", response.getOutputAsString());
+        assertNull(response.getHeader("ETag"));
+    }
+
+    @Test
+    void matches() {
+        assertTrue(ModelJsonETagFilter.matches("*", "\"a\""));
+        assertTrue(ModelJsonETagFilter.matches("\"b\" , W/\"a\"", "\"a\""));
+        assertFalse(ModelJsonETagFilter.matches("\"b\"", "\"a\""));
+        assertFalse(ModelJsonETagFilter.matches(null, "\"a\""));
+        assertNotNull(ModelJsonETagFilter.etagOf(new byte[0]));
+    }
+}
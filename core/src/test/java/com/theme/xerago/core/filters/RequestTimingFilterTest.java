@@ -0,0 +1,98 @@
+/*
+ *  Copyright 2018 Adobe Systems Incorporated
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.theme.xerago.core.filters;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.collect.ImmutableMap;
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.SlowRequest;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(AemContextExtension.class)
+class RequestTimingFilterTest {
+
+    private final AemContext context = new AemContext();
+
+    private RequestTimingFilter activate(long slowThresholdMillis, int slowestCount) {
+        return context.registerInjectActivateService(new RequestTimingFilter(), ImmutableMap.of(
+                "slowThresholdMillis", slowThresholdMillis, "slowestCount", slowestCount));
+    }
+
+    private void render(RequestTimingFilter fixture, String path, String selectors) throws IOException, ServletException {
+        Resource resource = context.resourceResolver().getResource(path);
+        context.currentResource(resource != null ? resource
+                : context.create().resource(path, "sling:resourceType", "xeragotheme/components/wheel-spin-game"));
+        MockSlingHttpServletRequest request = context.request();
+        MockRequestPathInfo requestPathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        requestPathInfo.setSelectorString(selectors);
+        requestPathInfo.setExtension("html");
+        FilterChain chain = mock(FilterChain.class);
+
+        fixture.doFilter(request, context.response(), chain);
+
+        verify(chain).doFilter(request, context.response());
+    }
+
+    @Test
+    void doFilter_recordsTimePerResourceTypeSelectorsAndExtension() throws IOException, ServletException {
+        RequestTimingFilter fixture = activate(500, 20);
+
+        render(fixture, "/content/game/wheel", null);
+        render(fixture, "/content/game/wheel", null);
+        render(fixture, "/content/game/wheel", "mobile");
+
+        Map<String, LatencyHistogram.Snapshot> timings = fixture.getTimings();
+        assertEquals(2, timings.size());
+        assertEquals(2, timings.get("xeragotheme/components/wheel-spin-game.html").getCount());
+        assertEquals(1, timings.get("xeragotheme/components/wheel-spin-game.mobile.html").getCount());
+        assertTrue(fixture.getSlowestRequests().isEmpty());
+    }
+
+    @Test
+    void doFilter_keepsSlowestRequestPerPath() throws IOException, ServletException {
+        RequestTimingFilter fixture = activate(0, 2);
+
+        render(fixture, "/content/game/a", null);
+        render(fixture, "/content/game/a", null);
+        render(fixture, "/content/game/b", null);
+        render(fixture, "/content/game/c", null);
+
+        List<SlowRequest> slowest = fixture.getSlowestRequests();
+        assertEquals(2, slowest.size());
+        assertTrue(slowest.get(0).getMicros() >= slowest.get(1).getMicros(), "Slowest should come first");
+        assertNotEquals(slowest.get(0).getPath(), slowest.get(1).getPath());
+    }
+}
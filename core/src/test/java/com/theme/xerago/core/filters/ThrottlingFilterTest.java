@@ -0,0 +1,163 @@
+package com.theme.xerago.core.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.apache.sling.testing.mock.sling.servlet.MockRequestPathInfo;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletRequest;
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class ThrottlingFilterTest {
+
+    private final AemContext context = new AemContext();
+
+    private Filter registerFilter() {
+        return context.registerInjectActivateService(new ThrottlingFilter(), ImmutableMap.of(
+                "ipRate", 0.01, "ipBurst", 3, "sessionRate", 0.01, "sessionBurst", 2));
+    }
+
+    private MockSlingHttpServletRequest request(String ip, String selectors) {
+        MockSlingHttpServletRequest request = new MockSlingHttpServletRequest(context.resourceResolver(),
+                context.bundleContext());
+        MockRequestPathInfo pathInfo = (MockRequestPathInfo) request.getRequestPathInfo();
+        pathInfo.setResourcePath("/content/xeragotheme/us/en/game/jcr:content/root/start");
+        pathInfo.setSelectorString(selectors);
+        pathInfo.setExtension("json");
+        request.setRemoteAddr(ip);
+        return request;
+    }
+
+    private int doFilter(Filter filter, MockSlingHttpServletRequest request, FilterChain chain)
+            throws IOException, ServletException {
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response.getStatus();
+    }
+
+    @Test
+    void doFilter_rejectsIpOverBurst() throws IOException, ServletException {
+        Filter filter = registerFilter();
+        FilterChain chain = mock(FilterChain.class);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, doFilter(filter, request("10.0.0.1", "coupon"), chain));
+        }
+        MockSlingHttpServletResponse response = new MockSlingHttpServletResponse();
+        filter.doFilter(request("10.0.0.1", "coupon"), response, chain);
+
+        assertEquals(ThrottlingFilter.SC_TOO_MANY_REQUESTS, response.getStatus());
+        assertEquals("100", response.getHeader("Retry-After"));
+        verify(chain, times(3)).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+
+        assertEquals(200, doFilter(filter, request("10.0.0.2", "coupon"), chain));
+    }
+
+    @Test
+    void doFilter_usesForwardedClientIp() throws IOException, ServletException {
+        Filter filter = registerFilter();
+        FilterChain chain = mock(FilterChain.class);
+
+        for (int i = 0; i < 3; i++) {
+            MockSlingHttpServletRequest request = request("10.0.0.1", "coupon");
+            request.addHeader("X-Forwarded-For", "203.0.113.7");
+            doFilter(filter, request, chain);
+        }
+
+        assertEquals(200, doFilter(filter, request("10.0.0.1", "coupon"), chain));
+    }
+
+    @Test
+    void doFilter_ignoresSpoofedForwardedEntries() throws IOException, ServletException {
+        Filter filter = registerFilter();
+        FilterChain chain = mock(FilterChain.class);
+
+        int status = 0;
+        for (int i = 0; i < 4; i++) {
+            MockSlingHttpServletRequest request = request("10.0.0.1", "coupon");
+            // the client sends its own X-Forwarded-For, the dispatcher appends the address it saw
+            request.addHeader("X-Forwarded-For", "198.51.100." + i + ", 203.0.113.7");
+            status = doFilter(filter, request, chain);
+        }
+
+        assertEquals(ThrottlingFilter.SC_TOO_MANY_REQUESTS, status, "A new spoofed entry must not reset the bucket");
+    }
+
+    @Test
+    void getClientIp_countsTrustedProxiesFromTheRight() {
+        ThrottlingFilter filter = context.registerInjectActivateService(new ThrottlingFilter(),
+                ImmutableMap.of("trustedProxies", 2));
+        MockSlingHttpServletRequest request = request("10.0.0.1", "coupon");
+        request.addHeader("X-Forwarded-For", "198.51.100.1, 203.0.113.7, 10.0.0.9");
+        assertEquals("203.0.113.7", filter.getClientIp(request));
+
+        request = request("10.0.0.1", "coupon");
+        request.addHeader("X-Forwarded-For", "203.0.113.8");
+        assertEquals("203.0.113.8", filter.getClientIp(request));
+
+        filter = context.registerInjectActivateService(new ThrottlingFilter(), ImmutableMap.of("trustedProxies", 0));
+        assertEquals("10.0.0.1", filter.getClientIp(request));
+    }
+
+    @Test
+    void doFilter_rejectsSessionOverBurst() throws IOException, ServletException {
+        Filter filter = registerFilter();
+        FilterChain chain = mock(FilterChain.class);
+        MockSlingHttpServletRequest request = request("10.0.0.1", "coupon");
+        request.getSession();
+
+        assertEquals(200, doFilter(filter, request, chain));
+        request.setRemoteAddr("10.0.0.2");
+        assertEquals(200, doFilter(filter, request, chain));
+        request.setRemoteAddr("10.0.0.3");
+
+        assertEquals(ThrottlingFilter.SC_TOO_MANY_REQUESTS, doFilter(filter, request, chain));
+    }
+
+    @Test
+    void doFilter_sessionRejectionKeepsIpBudget() throws IOException, ServletException {
+        Filter filter = registerFilter();
+        FilterChain chain = mock(FilterChain.class);
+        MockSlingHttpServletRequest request = request("10.0.0.1", "coupon");
+        request.getSession();
+
+        assertEquals(200, doFilter(filter, request, chain));
+        assertEquals(200, doFilter(filter, request, chain));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(ThrottlingFilter.SC_TOO_MANY_REQUESTS, doFilter(filter, request, chain));
+        }
+
+        assertEquals(200, doFilter(filter, request("10.0.0.1", "coupon"), chain),
+                "Another player behind the same IP still has its token");
+    }
+
+    @Test
+    void doFilter_passesOtherRequests() throws IOException, ServletException {
+        Filter filter = registerFilter();
+        FilterChain chain = mock(FilterChain.class);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, doFilter(filter, request("10.0.0.1", "model"), chain));
+        }
+
+        verify(chain, times(10)).doFilter(any(ServletRequest.class), any(ServletResponse.class));
+    }
+}
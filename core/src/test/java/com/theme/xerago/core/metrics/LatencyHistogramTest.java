@@ -0,0 +1,52 @@
+package com.theme.xerago.core.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class LatencyHistogramTest {
+
+    @Test
+    void indexOf_bucketsCoverEveryValueWithinPrecision() {
+        for (long micros = 0; micros < 1_000_000; micros += 7) {
+            long reported = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(micros));
+            assertTrue(reported >= micros, "Bucket of " + micros + " ends before it");
+            assertTrue(reported - micros <= Math.max(1, micros / 32), "Bucket of " + micros + " is too wide");
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void snapshot_reportsPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(100, snapshot.getCount());
+        assertEquals(100_000, snapshot.getMax());
+        assertEquals(50_500, snapshot.getMean(), 0.001);
+        assertEquals(50_000, snapshot.getValueAtPercentile(50), 50_000 / 32);
+        assertEquals(99_000, snapshot.getValueAtPercentile(99), 99_000 / 32);
+        assertEquals(100_000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    void reset_forgetsValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(1_000);
+
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(50), "Negative durations count as zero");
+
+        histogram.reset();
+
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().getValueAtPercentile(99));
+    }
+}
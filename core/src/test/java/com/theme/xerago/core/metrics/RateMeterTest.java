@@ -0,0 +1,37 @@
+package com.theme.xerago.core.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class RateMeterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void getRatePerSecond_averagesOverTheLastMinute() {
+        RateMeter meter = new RateMeter();
+        long start = 1_000 * SECOND;
+        for (int i = 0; i < 30; i++) {
+            meter.mark(4, start + i * SECOND);
+        }
+
+        assertEquals(120, meter.getCount());
+        assertEquals(2.0, meter.getRatePerSecond(start + 30 * SECOND), 0.001);
+        assertEquals(1.0, meter.getRatePerSecond(start + 74 * SECOND), 0.001,
+                "Seconds older than a minute must drop out");
+        assertEquals(0.0, meter.getRatePerSecond(start + 120 * SECOND), 0.001);
+    }
+
+    @Test
+    void mark_recyclesSlotsOfPastMinutes() {
+        RateMeter meter = new RateMeter();
+        meter.mark(10, 5 * SECOND);
+        meter.mark(3, 65 * SECOND);
+
+        assertEquals(13, meter.getCount());
+        assertEquals(3.0 / 60, meter.getRatePerSecond(65 * SECOND), 0.0001);
+    }
+}
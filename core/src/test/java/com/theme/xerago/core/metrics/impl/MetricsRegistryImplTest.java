@@ -0,0 +1,65 @@
+package com.theme.xerago.core.metrics.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.theme.xerago.core.metrics.MetricsRegistry;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class MetricsRegistryImplTest {
+
+    private final AemContext context = new AemContext();
+
+    private MetricsRegistry fixture;
+
+    @BeforeEach
+    void setUp() {
+        fixture = context.registerInjectActivateService(new MetricsRegistryImpl());
+        fixture.histogram("coupon.select").record(2_000_000);
+        fixture.meter("coupon.claims").mark(3);
+        fixture.gauge("coupon.pool.available", () -> 42);
+    }
+
+    @Test
+    void getValues_flattensEveryMetric() {
+        Map<String, Number> values = fixture.getValues();
+
+        assertSame(fixture.histogram("coupon.select"), fixture.histogram("coupon.select"));
+        assertEquals(1L, values.get("coupon.select.count"));
+        assertEquals(2_000L, values.get("coupon.select.max"));
+        assertEquals(3L, values.get("coupon.claims.count"));
+        assertEquals(42L, values.get("coupon.pool.available"));
+        assertEquals(Arrays.asList("coupon.claims.count", "coupon.claims.ratePerSecond"),
+                Arrays.asList(values.keySet().toArray()).subList(0, 2), "Values should be sorted by name");
+    }
+
+    @Test
+    void mbean_exposesValuesAsAttributes() throws Exception {
+        DynamicMBean mbean = context.registerInjectActivateService(new MetricsMBean());
+
+        assertEquals(42L, mbean.getAttribute("coupon.pool.available"));
+        assertThrows(AttributeNotFoundException.class, () -> mbean.getAttribute("missing"));
+        MBeanAttributeInfo[] attributes = mbean.getMBeanInfo().getAttributes();
+        assertEquals(fixture.getValues().size(), attributes.length);
+
+        mbean.invoke(MetricsMBean.OPERATION_RESET, new Object[0], new String[0]);
+
+        assertEquals(0L, mbean.getAttribute("coupon.select.count"));
+        assertEquals(3L, mbean.getAttribute("coupon.claims.count"), "Meters are not reset");
+    }
+}
@@ -99,11 +99,20 @@ class PickAGiftModelTest {
 	    model.getPrizes().add(prize);
 	    model.init();
 	    
-	    JsonArray arr = JsonParser.parseString(model.getPrizesJson()).getAsJsonArray();
+	    JsonArray arr = JsonParser.parseString(model.getPrizeTableJson()).getAsJsonArray();
 	    String redeemCode = arr.get(0).getAsJsonObject().get("redeemCode").getAsString();
 	    assertTrue(redeemCode.startsWith("PICK"));
 	}
 
+	@Test
+	void testPrizesJsonWithoutRedeemCodes() {
+		model.getPrizes().clear();
+		model.init();
+
+		assertTrue(model.getPrizeTableJson().contains("PICK25OFF"));
+		assertFalse(model.getPrizesJson().contains("redeemCode"), "Redeem codes are never rendered");
+	}
+
 	@Test
 	void testDefaultPrizes() {
 		model.getPrizes().clear();
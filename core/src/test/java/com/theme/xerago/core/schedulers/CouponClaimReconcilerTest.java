@@ -0,0 +1,56 @@
+package com.theme.xerago.core.schedulers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Calendar;
+
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.collect.ImmutableMap;
+import com.theme.xerago.core.services.CouponPoolService;
+import com.theme.xerago.core.services.impl.CouponClaimJournal;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class CouponClaimReconcilerTest {
+
+    private static final String POOL = "/content/coupons/static";
+
+    private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+    private CouponClaimJournal journal;
+
+    private CouponClaimReconciler fixture;
+
+    @BeforeEach
+    void setUp() {
+        context.create().resource(POOL + "/coupon1", "code", "COUPON-123");
+        context.create().resource(POOL + "/coupon2", "code", "COUPON-456");
+        journal = context.registerInjectActivateService(new CouponClaimJournal());
+        fixture = context.registerInjectActivateService(new CouponClaimReconciler(), ImmutableMap.of("batchSize", 1));
+    }
+
+    @Test
+    void run_appliesJournalledClaims() throws Exception {
+        long claimedAt = System.currentTimeMillis();
+        journal.append(POOL + "/coupon1");
+        journal.append(POOL + "/missing");
+
+        fixture.run();
+
+        ValueMap claimed = context.resourceResolver().getResource(POOL + "/coupon1").getValueMap();
+        assertTrue(claimed.get(CouponPoolService.PN_CLAIMED, false));
+        assertTrue(claimed.get(CouponPoolService.PN_CLAIMED_AT, Calendar.class).getTimeInMillis() >= claimedAt);
+        assertFalse(context.resourceResolver().getResource(POOL + "/coupon2").getValueMap()
+                .get(CouponPoolService.PN_CLAIMED, false));
+        assertEquals(0, journal.getPendingBytes());
+    }
+}
@@ -0,0 +1,95 @@
+package com.theme.xerago.core.schedulers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Calendar;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ValueMap;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.day.cq.dam.api.Asset;
+import com.google.common.collect.ImmutableMap;
+import com.theme.xerago.core.services.CouponImportService;
+import com.theme.xerago.core.services.CouponPoolService;
+import com.theme.xerago.core.services.CouponShards;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class CouponPoolMaintenanceTaskTest {
+
+    private static final String POOL = "/content/coupons/static";
+
+    private static final String ARCHIVE = "/var/xeragotheme/coupons/archive";
+
+    private static final String STAGED = "/content/dam/xeragotheme/coupons/static.csv";
+
+    private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+    private final CouponImportService importService = mock(CouponImportService.class);
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Calendar yesterday = Calendar.getInstance();
+        yesterday.add(Calendar.DATE, -1);
+        context.create().resource(POOL, "jcr:primaryType", "sling:Folder", CouponPoolService.PN_REVISION, "r1");
+        context.create().resource(POOL + "/coupon1", "code", "COUPON-1");
+        context.create().resource(POOL + "/coupon2", "code", "COUPON-2", CouponPoolService.PN_CLAIMED, true);
+        context.create().resource(POOL + "/coupon3", "code", "COUPON-3", CouponPoolService.PN_EXPIRES_AT, yesterday);
+        context.create().resource(ARCHIVE, "jcr:primaryType", "sling:Folder");
+        context.registerService(CouponImportService.class, importService);
+        when(importService.submitImport(anyString(), anyString())).thenReturn("job-1");
+    }
+
+    private CouponPoolMaintenanceTask activate(long lowWatermark) {
+        return context.registerInjectActivateService(new CouponPoolMaintenanceTask(), ImmutableMap.of(
+                "pools", new String[] { POOL + "=" + STAGED }, "batchSize", 1, "lowWatermark", lowWatermark));
+    }
+
+    @Test
+    void run_archivesClaimedAndExpiredCoupons() throws Exception {
+        activate(0).run();
+
+        ResourceResolver resolver = context.resourceResolver();
+        assertNotNull(resolver.getResource(POOL + "/coupon1"));
+        assertNull(resolver.getResource(POOL + "/coupon2"));
+        assertNull(resolver.getResource(POOL + "/coupon3"));
+        assertNotNull(resolver.getResource(CouponShards.couponPath(ARCHIVE + POOL, "coupon2")));
+        assertNotNull(resolver.getResource(CouponShards.couponPath(ARCHIVE + POOL, "coupon3")));
+
+        ValueMap root = resolver.getResource(POOL).getValueMap();
+        assertEquals(1L, root.get(CouponPoolService.PN_AVAILABLE_COUNT, Long.class));
+        assertNotEquals("r1", root.get(CouponPoolService.PN_REVISION, String.class),
+                "Snapshots holding the expired coupon must no longer be used");
+        verify(importService, never()).submitImport(anyString(), anyString());
+    }
+
+    @Test
+    void run_replenishesLowPoolOncePerStagedAsset() throws Exception {
+        context.create().resource(STAGED);
+        context.registerAdapter(Resource.class, Asset.class, mock(Asset.class));
+        CouponPoolMaintenanceTask fixture = activate(10);
+
+        fixture.run();
+        fixture.run();
+
+        verify(importService, times(1)).submitImport(STAGED, POOL);
+        assertNotNull(context.resourceResolver().getResource(POOL).getValueMap()
+                .get(CouponPoolMaintenanceTask.PN_REPLENISHED_AT, Calendar.class));
+    }
+}
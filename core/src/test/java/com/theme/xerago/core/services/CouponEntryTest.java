@@ -0,0 +1,34 @@
+package com.theme.xerago.core.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class CouponEntryTest {
+
+    @Test
+    void json_containsOnlyPublicProperties() throws Exception {
+        Map<String, Object> props = new LinkedHashMap<>();
+        props.put("jcr:primaryType", "nt:unstructured");
+        props.put("code", "COUPON-€");
+        props.put("discount", 10L);
+        props.put("active", true);
+        props.put("tags", new String[] { "a", "b" });
+        props.put(CouponPoolService.PN_CLAIMED, false);
+
+        CouponEntry entry = new CouponEntry("coupon1", "/content/coupons/static/coupon1", props);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entry.writeJson(out);
+        assertEquals("{\"code\":\"COUPON-€\",\"discount\":10,\"active\":true,\"tags\":[\"a\",\"b\"]}",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(out.size(), entry.getJsonLength());
+        assertFalse(entry.getProperties().containsKey("jcr:primaryType"));
+    }
+}
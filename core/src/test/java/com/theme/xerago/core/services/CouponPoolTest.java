@@ -0,0 +1,92 @@
+package com.theme.xerago.core.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+class CouponPoolTest {
+
+    private static final String POOL = "/content/coupons/static";
+
+    private static List<CouponEntry> entries(int count) {
+        List<CouponEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new CouponEntry("c" + i, POOL + "/c" + i, ImmutableMap.of("code", "COUPON-" + i)));
+        }
+        return entries;
+    }
+
+    @Test
+    void claimSlot_handsOutEverySlotOnce() {
+        CouponPool pool = new CouponPool(POOL, entries(130));
+        boolean[] seen = new boolean[130];
+
+        for (int i = 0; i < 130; i++) {
+            int slot = pool.claimSlot();
+            assertFalse(seen[slot]);
+            seen[slot] = true;
+        }
+
+        assertEquals(-1, pool.claimSlot());
+        assertEquals(0, pool.available());
+    }
+
+    @Test
+    void apply_marksFewRemovalsInSharedStore() {
+        CouponPool pool = new CouponPool(POOL, entries(100));
+        pool.markClaimed(0);
+
+        CouponPool next = pool.apply(Collections.emptyList(), Collections.singletonList(POOL + "/c1"));
+
+        assertEquals(100, next.size());
+        assertTrue(next.isRemoved(1));
+        assertFalse(pool.isRemoved(1), "Old snapshot must stay untouched");
+        assertEquals(98, next.available(), "Claims and removals should both be carried");
+        assertSame(next, next.apply(Collections.emptyList(), Collections.emptyList()));
+    }
+
+    @Test
+    void apply_compactsOnUpserts() {
+        CouponPool pool = new CouponPool(POOL, entries(10));
+        pool.markClaimed(9);
+
+        CouponPool next = pool.apply(
+                Collections.singletonList(new CouponEntry("c0", POOL + "/c0", ImmutableMap.of("code", "CHANGED"))),
+                Collections.singletonList(POOL + "/c1"));
+
+        assertEquals(9, next.size());
+        assertEquals("COUPON-2", next.get(0).getProperties().get("code"));
+        assertEquals("CHANGED", next.get(8).getProperties().get("code"));
+        assertEquals(8, next.available(), "The claim of c9 should be carried to its new slot");
+    }
+
+    @Test
+    void markClaimed_findsSlotsByPath() {
+        CouponPool pool = new CouponPool(POOL, entries(10));
+
+        pool.markClaimed(Collections.singleton(POOL + "/c7"));
+
+        assertEquals(9, pool.available());
+        assertFalse(pool.markClaimed(7));
+    }
+
+    @Test
+    void contains_onlyEntriesNotRemoved() {
+        CouponPool pool = new CouponPool(POOL, entries(3))
+                .apply(Collections.emptyList(), Collections.singleton(POOL + "/c1"));
+
+        assertTrue(pool.contains(POOL + "/c0"));
+        assertFalse(pool.contains(POOL + "/c1"));
+        assertFalse(pool.contains(POOL + "/c9"));
+        assertFalse(pool.contains("/content/coupons/other/c0"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.theme.xerago.core.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.ImmutableMap;
+
+class CouponStoreTest {
+
+    private static final String POOL = "/content/coupons/static";
+
+    private static List<CouponEntry> entries(int count) {
+        List<CouponEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = "c" + i;
+            entries.add(new CouponEntry(id, POOL + "/" + CouponShards.bucketPath(id) + "/" + id,
+                    ImmutableMap.of("code", "COUPON-" + i)));
+        }
+        return entries;
+    }
+
+    @Test
+    void get_copiesRecordsBackToHeap() {
+        List<CouponEntry> entries = entries(1000);
+        CouponStore store = CouponStore.of(POOL, entries);
+
+        assertEquals(1000, store.size());
+        for (int i = 0; i < entries.size(); i++) {
+            CouponEntry entry = store.get(POOL, i);
+            assertEquals(entries.get(i).getPath(), entry.getPath());
+            assertEquals("c" + i, entry.getName());
+            assertEquals("COUPON-" + i, entry.getProperties().get("code"));
+        }
+    }
+
+    @Test
+    void indexOf_findsRecordsByPath() {
+        List<CouponEntry> entries = entries(1000);
+        CouponStore store = CouponStore.of(POOL, entries);
+
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(i, store.indexOf(entries.get(i).getPath().substring(POOL.length() + 1)));
+        }
+        assertEquals(-1, store.indexOf("00/00/missing"));
+    }
+
+    @Test
+    void with_dropsAndAppendsRecords() {
+        List<CouponEntry> entries = entries(3);
+        CouponStore store = CouponStore.of(POOL, entries);
+        BitSet dropped = new BitSet();
+        dropped.set(1);
+        CouponEntry added = new CouponEntry("long-coupon-id", POOL + "/long-coupon-id",
+                ImmutableMap.of("code", "A-MUCH-LONGER-COUPON-CODE-THAN-BEFORE"));
+        int[] kept = new int[3];
+
+        CouponStore next = store.with(POOL, dropped, Collections.singletonList(added), kept);
+
+        assertEquals(3, next.size());
+        assertEquals(entries.get(0).getPath(), next.get(POOL, 0).getPath());
+        assertEquals(entries.get(2).getPath(), next.get(POOL, 1).getPath());
+        assertEquals("long-coupon-id", next.relativePath(2));
+        assertEquals(2, next.indexOf("long-coupon-id"));
+        assertEquals(-1, next.indexOf(entries.get(1).getPath().substring(POOL.length() + 1)));
+        assertEquals(0, kept[0]);
+        assertEquals(2, kept[1]);
+    }
+}
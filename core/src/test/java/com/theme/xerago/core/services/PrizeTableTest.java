@@ -0,0 +1,84 @@
+package com.theme.xerago.core.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class PrizeTableTest {
+
+    private static final String SEGMENTS = "[{\"text\":\"Grand Prize\",\"redeemCode\":\"WHEELGRAND\",\"probability\":50},"
+            + "{\"text\":\"Try Again\",\"probability\":50},"
+            + "{\"text\":\"Never\",\"redeemCode\":\"NEVER\",\"probability\":0}]";
+
+    @Test
+    void draw_unpacedFollowsProbabilities() {
+        PrizeTable table = PrizeTable.fromJson(SEGMENTS);
+        Random random = new Random(7);
+        int grand = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (table.draw(random).getIndex() == 0) {
+                grand++;
+            }
+        }
+
+        assertFalse(table.isPaced());
+        assertEquals(0.5, grand / 10_000.0, 0.03);
+    }
+
+    @Test
+    void draw_pacedPrizeFallsBackOnceBudgetIsUsed() {
+        PrizeTable table = PrizeTable.fromJson(SEGMENTS, Collections.singletonMap("WHEELGRAND", 1.0));
+        Random random = new Random(7);
+        int grand = 0;
+        for (int i = 0; i < 10_000; i++) {
+            Prize prize = table.draw(random);
+            assertTrue(prize.getIndex() != 2, "Prizes without probability are never a fallback");
+            if (prize.getIndex() == 0) {
+                grand++;
+            }
+        }
+
+        assertTrue(table.isPaced());
+        assertEquals(1, grand, "One grand prize per hour, and none saved up");
+    }
+
+    @Test
+    void draw_fallbackKeepsTheOddsOfPrizesInBudget() {
+        PrizeTable table = new PrizeTable(Arrays.asList(new Prize(0, "Grand Prize", "WHEELGRAND", 1000),
+                new Prize(1, "10% Off", "WHEEL10OFF", 1), new Prize(2, "5% Off", "WHEEL5OFF", 3)),
+                Collections.singletonMap("WHEELGRAND", 1.0));
+        Random random = new Random(11);
+        assertEquals(0, table.draw(random).getIndex());
+
+        int tenOff = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (table.draw(random).getIndex() == 1) {
+                tenOff++;
+            }
+        }
+        assertEquals(0.25, tenOff / 10_000.0, 0.03, "The paced prize's share is split by weight");
+    }
+
+    @Test
+    void draw_exhaustedTable() {
+        PrizeTable table = new PrizeTable(Arrays.asList(new Prize(0, "Grand Prize", "WHEELGRAND", 1)),
+                Collections.singletonMap("WHEELGRAND", 1.0));
+
+        assertEquals(0, table.draw().getIndex());
+        assertNull(table.draw(), "Nothing is left to draw until the budget refills");
+    }
+
+    @Test
+    void draw_ignoresLimitsThatAreNotPositive() {
+        PrizeTable table = PrizeTable.fromJson(SEGMENTS, Collections.singletonMap("WHEELGRAND", 0.0));
+
+        assertFalse(table.isPaced());
+    }
+}
@@ -0,0 +1,30 @@
+package com.theme.xerago.core.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class RewardTiersTest {
+
+    @Test
+    void tierOf_picksHighestReachedThreshold() {
+        RewardTiers tiers = RewardTiers.parse("500=/content/coupons/gold", "100=/content/coupons/silver",
+                "200 = /content/coupons/silver-plus");
+
+        assertEquals(3, tiers.size());
+        assertEquals(-1, tiers.tierOf(99));
+        assertEquals("/content/coupons/silver", tiers.getPoolPath(tiers.tierOf(100)));
+        assertEquals("/content/coupons/silver", tiers.getPoolPath(tiers.tierOf(199)));
+        assertEquals("/content/coupons/silver-plus", tiers.getPoolPath(tiers.tierOf(200)));
+        assertEquals("/content/coupons/gold", tiers.getPoolPath(tiers.tierOf(10_000)));
+        assertEquals(500, tiers.getThreshold(2));
+    }
+
+    @Test
+    void parse_rejectsMalformedTiers() {
+        assertThrows(IllegalArgumentException.class, () -> RewardTiers.parse("/content/coupons/gold"));
+        assertThrows(IllegalArgumentException.class, () -> RewardTiers.parse("gold=/content/coupons/gold"));
+        assertThrows(IllegalArgumentException.class, () -> RewardTiers.parse("100="));
+    }
+}
@@ -0,0 +1,105 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.sling.testing.mock.osgi.MockOsgi;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.ImmutableMap;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class CouponClaimJournalTest {
+
+    private final AemContext context = new AemContext();
+
+    @TempDir
+    File directory;
+
+    private CouponClaimJournal activate(long truncateBytes) {
+        return context.registerInjectActivateService(new CouponClaimJournal(), ImmutableMap.of(
+                "directory", directory.getPath(), "truncateBytes", truncateBytes));
+    }
+
+    @Test
+    void read_returnsSyncedClaimsUntilApplied() throws Exception {
+        CouponClaimJournal journal = activate(1 << 20);
+        long before = System.currentTimeMillis();
+        assertTrue(journal.append("/content/coupons/static/ab/cd/c1"));
+        assertTrue(journal.append("/content/coupons/static/ef/01/c2"));
+
+        CouponClaimJournal.Batch batch = journal.read(10);
+
+        assertEquals(Arrays.asList("/content/coupons/static/ab/cd/c1", "/content/coupons/static/ef/01/c2"),
+                batch.getPaths());
+        assertTrue(batch.getClaimedAt().get(0) >= before);
+        assertEquals(1, journal.read(1).getPaths().size(), "Reads should stop at the maximum");
+
+        journal.markApplied(batch.getEndOffset());
+
+        assertTrue(journal.read(10).isEmpty());
+        assertEquals(0, journal.getPendingBytes());
+    }
+
+    @Test
+    void markApplied_truncatesLargeJournal() throws Exception {
+        CouponClaimJournal journal = activate(10);
+        journal.append("/content/coupons/static/c1");
+
+        journal.markApplied(journal.read(10).getEndOffset());
+        journal.append("/content/coupons/static/c2");
+
+        assertEquals(Arrays.asList("/content/coupons/static/c2"), journal.read(10).getPaths());
+    }
+
+    @Test
+    void activate_replaysUnappliedClaimsAndDropsTornTail() throws Exception {
+        Files.write(new File(directory, "claims.journal").toPath(),
+                "1000 /content/coupons/static/c1\n2000 /content/coupons/static/c2\n3000 /content/coup"
+                        .getBytes(StandardCharsets.UTF_8));
+
+        CouponClaimJournal journal = activate(1 << 20);
+        CouponClaimJournal.Batch batch = journal.read(10);
+
+        assertEquals(Arrays.asList("/content/coupons/static/c1", "/content/coupons/static/c2"), batch.getPaths());
+        assertEquals(Arrays.asList(1000L, 2000L), batch.getClaimedAt());
+        journal.append("/content/coupons/static/c3");
+        assertEquals(3, journal.read(10).getPaths().size(), "New claims should follow the complete lines");
+    }
+
+    @Test
+    void read_skipsMalformedLines() throws Exception {
+        Files.write(new File(directory, "claims.journal").toPath(),
+                ("1000 /content/coupons/static/c1\ngarbage\nabc /content/coupons/static/c2\n1500 \n"
+                        + "2000 /content/coupons/static/c3\n").getBytes(StandardCharsets.UTF_8));
+        CouponClaimJournal journal = activate(1 << 20);
+
+        CouponClaimJournal.Batch batch = journal.read(10);
+
+        assertEquals(Arrays.asList("/content/coupons/static/c1", "/content/coupons/static/c3"), batch.getPaths());
+        journal.markApplied(batch.getEndOffset());
+        assertTrue(journal.read(10).isEmpty());
+    }
+
+    @Test
+    void append_refusesOnceShutDown() throws Exception {
+        CouponClaimJournal journal = activate(1 << 20);
+        assertTrue(journal.append("/content/coupons/static/c1"));
+
+        MockOsgi.deactivate(journal, context.bundleContext());
+
+        assertFalse(journal.append("/content/coupons/static/c2"), "A claim that is not journalled must be refused");
+        assertEquals(Arrays.asList("/content/coupons/static/c1"), activate(1 << 20).read(10).getPaths());
+    }
+}
@@ -0,0 +1,87 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class CouponImportFormatTest {
+
+    @Test
+    void detect_prefersMimeTypeOverExtension() {
+        assertEquals(CouponImportFormat.CSV, CouponImportFormat.detect("text/csv; charset=UTF-8", "coupons.json"));
+        assertEquals(CouponImportFormat.NDJSON, CouponImportFormat.detect("application/x-ndjson", "coupons"));
+        assertEquals(CouponImportFormat.JSON_ARRAY, CouponImportFormat.detect("application/json", "coupons.csv"));
+        assertEquals(CouponImportFormat.NDJSON, CouponImportFormat.detect("application/octet-stream", "coupons.jsonl"));
+        assertEquals(CouponImportFormat.CSV, CouponImportFormat.detect(null, "COUPONS.CSV"));
+        assertEquals(CouponImportFormat.JSON_ARRAY, CouponImportFormat.detect(null, null));
+    }
+
+    @Test
+    void csv_readsQuotedFields() throws IOException {
+        try (CouponRowReader reader = open(CouponImportFormat.CSV,
+                "\uFEFFid,code,description\r\n"
+                + "c1,A,\"Save 10%, today\"\r\n"
+                + "\r\n"
+                + "c2,,\"Say \"\"hi\"\"\nline two\"\n"
+                + "c3,C")) {
+            Map<String, Object> first = reader.next();
+            assertEquals("c1", first.get("id"));
+            assertEquals("Save 10%, today", first.get("description"));
+
+            Map<String, Object> second = reader.next();
+            assertEquals("c2", second.get("id"));
+            assertNull(second.get("code"), "Empty fields are left out");
+            assertEquals("Say \"hi\"\nline two", second.get("description"));
+
+            Map<String, Object> third = reader.next();
+            assertEquals("C", third.get("code"));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void csv_rejectsUnterminatedQuote() throws IOException {
+        try (CouponRowReader reader = open(CouponImportFormat.CSV, "id,code\nc1,\"open")) {
+            assertThrows(IOException.class, reader::next);
+        }
+    }
+
+    @Test
+    void ndjson_readsOneObjectPerLine() throws IOException {
+        try (CouponRowReader reader = open(CouponImportFormat.NDJSON,
+                "{\"id\":\"c1\",\"value\":10}\n\n{\"id\":\"c2\",\"active\":true}\n")) {
+            assertEquals("10", reader.next().get("value"));
+            assertEquals("true", reader.next().get("active"));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void ndjson_reportsMalformedLine() throws IOException {
+        try (CouponRowReader reader = open(CouponImportFormat.NDJSON, "{\"id\":\"c1\"}\n[1]\n")) {
+            reader.next();
+            IOException e = assertThrows(IOException.class, reader::next);
+            assertEquals(true, e.getMessage().contains("line 2"));
+        }
+    }
+
+    @Test
+    void jsonArray_readsObjects() throws IOException {
+        try (CouponRowReader reader = open(CouponImportFormat.JSON_ARRAY, "[{\"id\":\"c1\"},{\"id\":\"c2\"}]")) {
+            assertEquals("c1", reader.next().get("id"));
+            assertEquals("c2", reader.next().get("id"));
+            assertNull(reader.next());
+        }
+    }
+
+    private static CouponRowReader open(CouponImportFormat format, String content) {
+        return format.open(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
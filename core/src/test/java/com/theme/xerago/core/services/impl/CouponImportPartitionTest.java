@@ -0,0 +1,33 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.theme.xerago.core.services.CouponShards;
+
+class CouponImportPartitionTest {
+
+    @Test
+    void partitionOf_keepsTopLevelBucketsInOnePartition() {
+        Map<String, Integer> partitionByBucket = new HashMap<>();
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            String id = "COUPON-" + i;
+            int partition = CouponImportPartition.partitionOf(id, 3);
+            String topBucket = CouponShards.bucketPath(id).substring(0, 2);
+
+            assertTrue(partition >= 0 && partition < 3);
+            assertEquals(partition, partitionByBucket.computeIfAbsent(topBucket, key -> partition),
+                    "Bucket " + topBucket + " must be written by a single partition");
+            used.add(partition);
+        }
+        assertEquals(3, used.size());
+    }
+}
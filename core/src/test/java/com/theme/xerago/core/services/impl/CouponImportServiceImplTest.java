@@ -0,0 +1,184 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.apache.sling.event.jobs.consumer.JobConsumer.JobResult;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.day.cq.dam.api.Asset;
+import com.day.cq.dam.api.Rendition;
+import com.google.common.collect.ImmutableMap;
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+import com.theme.xerago.core.services.CouponImportException;
+import com.theme.xerago.core.services.CouponImportProgress;
+import com.theme.xerago.core.services.CouponImportService;
+import com.theme.xerago.core.services.CouponPoolService;
+import com.theme.xerago.core.services.CouponShards;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class CouponImportServiceImplTest {
+
+    private static final String DAM_PATH = "/content/dam/xeragotheme/coupons.json";
+    private static final String POOL = "/content/coupons/static";
+
+    private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+    private final JobManager jobManager = mock(JobManager.class);
+
+    private CouponImportServiceImpl fixture;
+
+    @BeforeEach
+    void setUp() {
+        context.create().resource(DAM_PATH);
+        context.registerService(JobManager.class, jobManager);
+        context.registerInjectActivateService(new MetricsRegistryImpl());
+        fixture = context.registerInjectActivateService(new CouponImportServiceImpl(),
+                ImmutableMap.of("commitBatchSize", 2, "parallelism", 1));
+    }
+
+    @Test
+    void importCoupons_streamsAndCommitsInBatches() throws Exception {
+        context.create().resource(POOL + "/c1", "code", "OLD");
+        givenAsset("[{\"id\":\"c1\",\"code\":\"NEW\"},"
+                + "{\"id\":\"c2\",\"code\":\"A\",\"value\":10,\"active\":true,\"meta\":{\"x\":1}},"
+                + "{\"code\":\"NO-ID\"},"
+                + "{\"id\":\"c3\",\"code\":\"B\"},"
+                + "{\"id\":\"c4\",\"code\":\"C\"}]");
+
+        CouponImportProgress progress = fixture.importCoupons(DAM_PATH, POOL);
+
+        assertEquals(5, progress.getProcessed());
+        assertEquals(3, progress.getCreated());
+        assertEquals(1, progress.getSkipped(), "Existing flat coupon must not be imported again");
+        assertEquals(1, progress.getFailed());
+        assertTrue(progress.isFinished());
+
+        Resource c2 = context.resourceResolver().getResource(CouponShards.couponPath(POOL, "c2"));
+        assertNotNull(c2);
+        assertEquals("10", c2.getValueMap().get("value", String.class));
+        assertEquals("true", c2.getValueMap().get("active", String.class));
+        assertEquals(null, c2.getValueMap().get("meta", String.class));
+    }
+
+    @Test
+    void importCoupons_skipsIdsRepeatedInFile() throws Exception {
+        givenAsset("[{\"id\":\"c1\",\"code\":\"FIRST\"},{\"id\":\"c1\",\"code\":\"SECOND\"}]");
+
+        CouponImportProgress progress = fixture.importCoupons(DAM_PATH, POOL);
+
+        assertEquals(1, progress.getCreated());
+        assertEquals(1, progress.getSkipped());
+        assertEquals("FIRST", context.resourceResolver().getResource(CouponShards.couponPath(POOL, "c1"))
+                .getValueMap().get("code", String.class));
+    }
+
+    @Test
+    void importCoupons_skipsArchivedIds() throws Exception {
+        ResourceResolver resolver = context.resourceResolver();
+        Resource archive = context.create().resource("/var/xeragotheme/coupons/archive" + POOL);
+        resolver.create(CouponShards.getOrCreateBucket(resolver, archive, "c1"), "c1",
+                ImmutableMap.of("code", "CLAIMED", CouponPoolService.PN_CLAIMED, true));
+        resolver.commit();
+        givenAsset("[{\"id\":\"c1\",\"code\":\"CLAIMED\"},{\"id\":\"c2\",\"code\":\"NEW\"}]");
+
+        CouponImportProgress progress = fixture.importCoupons(DAM_PATH, POOL);
+
+        assertEquals(1, progress.getCreated());
+        assertEquals(1, progress.getSkipped(), "A handed out coupon must not become available again");
+        assertNull(context.resourceResolver().getResource(CouponShards.couponPath(POOL, "c1")));
+    }
+
+    @Test
+    void importCoupons_failsRowsWithIdsThatAreNoNodeNames() throws Exception {
+        givenAsset("[{\"id\":\"c[1]\"},{\"id\":\"c|2\"},{\"id\":\"*\"},{\"id\":\" c3\"},"
+                + "{\"id\":\"c4\",\"code\":\"D\"}]");
+
+        CouponImportProgress progress = fixture.importCoupons(DAM_PATH, POOL);
+
+        assertEquals(4, progress.getFailed());
+        assertEquals(1, progress.getCreated(), "Rows after a refused id must still be imported");
+        assertNotNull(context.resourceResolver().getResource(CouponShards.couponPath(POOL, "c4")));
+    }
+
+    @Test
+    void importCoupons_rejectsMalformedFile() {
+        givenAsset("{\"id\":\"c1\"}");
+
+        assertThrows(CouponImportException.class, () -> fixture.importCoupons(DAM_PATH, POOL));
+    }
+
+    @Test
+    void importCoupons_missingAsset() {
+        assertThrows(CouponImportException.class, () -> fixture.importCoupons("/content/dam/missing.json", POOL));
+    }
+
+    @Test
+    void submitImport_queuesJob() throws Exception {
+        Job job = mock(Job.class);
+        when(job.getId()).thenReturn("job-1");
+        Map<String, Object> props = new HashMap<>();
+        props.put(CouponImportService.PN_DAM_PATH, DAM_PATH);
+        props.put(CouponImportService.PN_TARGET_PATH, POOL);
+        when(jobManager.addJob(CouponImportService.JOB_TOPIC, props)).thenReturn(job);
+
+        assertEquals("job-1", fixture.submitImport(DAM_PATH, POOL));
+        assertNull(fixture.getProgress("job-1"), "Progress is only known once the job runs");
+    }
+
+    @Test
+    void process_recordsProgressOfJob() {
+        givenAsset("[{\"id\":\"c1\"},{\"id\":\"c2\"},{\"id\":\"c2\"}]");
+
+        assertEquals(JobResult.OK, fixture.process(givenJob("job-1", DAM_PATH)));
+
+        CouponImportProgress progress = fixture.getProgress("job-1");
+        assertTrue(progress.isFinished());
+        assertEquals(2, progress.getCreated());
+        assertEquals(1, progress.getSkipped());
+        assertNull(progress.getError());
+    }
+
+    @Test
+    void process_cancelsJobOfUnreadableAsset() {
+        assertEquals(JobResult.CANCEL, fixture.process(givenJob("job-2", "/content/dam/missing.json")));
+
+        assertNotNull(fixture.getProgress("job-2").getError());
+    }
+
+    private Job givenJob(String id, String damPath) {
+        Job job = mock(Job.class);
+        when(job.getId()).thenReturn(id);
+        when(job.getProperty(CouponImportService.PN_DAM_PATH, String.class)).thenReturn(damPath);
+        when(job.getProperty(CouponImportService.PN_TARGET_PATH, String.class)).thenReturn(POOL);
+        return job;
+    }
+
+    private void givenAsset(String json) {
+        Asset asset = mock(Asset.class);
+        Rendition rendition = mock(Rendition.class);
+        when(asset.getOriginal()).thenReturn(rendition);
+        when(rendition.getStream()).thenReturn(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        context.registerAdapter(Resource.class, Asset.class, asset);
+    }
+}
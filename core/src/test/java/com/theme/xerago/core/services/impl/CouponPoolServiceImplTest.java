@@ -0,0 +1,310 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.osgi.framework.Constants;
+
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+import com.theme.xerago.core.schedulers.CouponClaimReconciler;
+import com.theme.xerago.core.services.CouponClaimException;
+import com.theme.xerago.core.services.CouponEntry;
+import com.theme.xerago.core.services.CouponPool;
+import com.theme.xerago.core.services.CouponPoolService;
+import com.theme.xerago.core.services.CouponShards;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class CouponPoolServiceImplTest {
+
+    private static final String POOL = "/content/coupons/static";
+
+    private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+    private CouponPoolServiceImpl fixture;
+
+    private CouponClaimReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        context.create().resource(POOL + "/coupon1", "code", "COUPON-123");
+        context.create().resource(POOL + "/coupon2", "code", "COUPON-456");
+        context.registerInjectActivateService(new MetricsRegistryImpl());
+        context.registerInjectActivateService(new CouponClaimJournal());
+        fixture = context.registerInjectActivateService(new CouponPoolServiceImpl());
+        reconciler = context.registerInjectActivateService(new CouponClaimReconciler());
+    }
+
+    @Test
+    void getPool_loadsAllCoupons() {
+        CouponPool pool = fixture.getPool(POOL);
+
+        assertNotNull(pool);
+        assertEquals(2, pool.size());
+        assertSame(pool, fixture.getPool(POOL), "Snapshot should be reused until the pool changes");
+    }
+
+    @Test
+    void getPool_missingRoot() {
+        assertNull(fixture.getPool("/content/coupons/missing"));
+    }
+
+    @Test
+    void onChange_appliesAddedAndRemovedCoupons() throws Exception {
+        CouponPool before = fixture.getPool(POOL);
+
+        context.create().resource(POOL + "/coupon3", "code", "COUPON-789");
+        context.resourceResolver().delete(context.resourceResolver().getResource(POOL + "/coupon1"));
+        fixture.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.ADDED, POOL + "/coupon3", false),
+                new ResourceChange(ChangeType.REMOVED, POOL + "/coupon1", false)));
+
+        CouponPool after = fixture.getPool(POOL);
+        assertEquals(2, before.size(), "Old snapshot must stay untouched");
+        assertEquals(2, after.size());
+        assertEquals("COUPON-456", after.get(0).getProperties().get("code"));
+        assertEquals("COUPON-789", after.get(1).getProperties().get("code"));
+    }
+
+    @Test
+    void onChange_dropsRemovedPool() throws Exception {
+        fixture.getPool(POOL);
+
+        context.resourceResolver().delete(context.resourceResolver().getResource(POOL));
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, POOL, false)));
+
+        assertNull(fixture.getPool(POOL));
+    }
+
+    @Test
+    void onChange_dropsCouponsOfRemovedBucket() throws Exception {
+        String sharded = "/content/coupons/sharded";
+        ResourceResolver resolver = context.resourceResolver();
+        Resource pool = context.create().resource(sharded);
+        resolver.create(CouponShards.getOrCreateBucket(resolver, pool, "s1"), "s1",
+                Collections.singletonMap("code", "COUPON-S1"));
+        context.create().resource(sharded + "/flat", "code", "COUPON-FLAT");
+        resolver.commit();
+        assertEquals(2, fixture.getPool(sharded).size(), "Flat and sharded coupons should both be read");
+
+        String bucket = sharded + "/" + CouponShards.bucketPath("s1").substring(0, 2);
+        resolver.delete(resolver.getResource(bucket));
+        resolver.commit();
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, bucket, false)));
+
+        CouponPool after = fixture.getPool(sharded);
+        assertEquals(1, after.size());
+        assertEquals("COUPON-FLAT", after.get(0).getProperties().get("code"));
+    }
+
+    @Test
+    void claim_handsOutEveryCouponOnce() {
+        CouponEntry first = fixture.claim(POOL);
+        CouponEntry second = fixture.claim(POOL);
+
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNotEquals(first.getPath(), second.getPath());
+        assertNull(fixture.claim(POOL), "Pool should be exhausted");
+        assertNull(fixture.claim("/content/coupons/missing"));
+    }
+
+    @Test
+    void claim_isWrittenBackAndSurvivesNewSnapshots() {
+        CouponEntry claimed = fixture.claim(POOL);
+        reconciler.run();
+
+        assertTrue(context.resourceResolver().getResource(claimed.getPath())
+                .getValueMap().get(CouponPoolService.PN_CLAIMED, false));
+
+        // an unrelated change publishes a new snapshot before the claim event arrives
+        context.create().resource(POOL + "/coupon3", "code", "COUPON-789");
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, POOL + "/coupon3", false)));
+
+        CouponEntry next = fixture.claim(POOL);
+        CouponEntry last = fixture.claim(POOL);
+        assertNotEquals(claimed.getPath(), next.getPath());
+        assertNotEquals(claimed.getPath(), last.getPath());
+        assertNull(fixture.claim(POOL));
+    }
+
+    @Test
+    void claim_staysHandedOutAfterReconcileAndLaterSnapshots() {
+        CouponEntry claimed = fixture.claim(POOL);
+        reconciler.run();
+        // the claim event drops the coupon from the pool and from the handed out paths
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, claimed.getPath(), false)));
+        assertEquals(1, fixture.getPool(POOL).size());
+
+        // later snapshots inherit the claim bits without marking old claims again
+        context.create().resource(POOL + "/coupon3", "code", "COUPON-789");
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, POOL + "/coupon3", false)));
+        CouponEntry next = fixture.claim(POOL);
+        context.create().resource(POOL + "/coupon4", "code", "COUPON-000");
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, POOL + "/coupon4", false)));
+
+        Set<String> handedOut = new HashSet<>();
+        handedOut.add(claimed.getPath());
+        assertTrue(handedOut.add(next.getPath()));
+        for (CouponEntry entry = fixture.claim(POOL); entry != null; entry = fixture.claim(POOL)) {
+            assertTrue(handedOut.add(entry.getPath()), "Handed out twice: " + entry.getPath());
+        }
+        assertEquals(4, handedOut.size());
+    }
+
+    @Test
+    void claim_followsCouponMovedByMigrationBeforeReconcile() throws Exception {
+        CouponEntry claimed = fixture.claim(POOL);
+        String id = claimed.getPath().substring(POOL.length() + 1);
+        ResourceResolver resolver = context.resourceResolver();
+
+        assertEquals(2, CouponShards.migrate(resolver, resolver.getResource(POOL), 10));
+        fixture.onChange(Arrays.asList(
+                new ResourceChange(ChangeType.REMOVED, POOL + "/coupon1", false),
+                new ResourceChange(ChangeType.REMOVED, POOL + "/coupon2", false),
+                new ResourceChange(ChangeType.ADDED, CouponShards.couponPath(POOL, "coupon1"), false),
+                new ResourceChange(ChangeType.ADDED, CouponShards.couponPath(POOL, "coupon2"), false)));
+
+        CouponEntry other = fixture.claim(POOL);
+        assertNotNull(other);
+        assertNotEquals(CouponShards.couponPath(POOL, id), other.getPath(), "The moved claim was handed out again");
+        assertNull(fixture.claim(POOL));
+
+        reconciler.run();
+        assertTrue(resolver.getResource(CouponShards.couponPath(POOL, id)).getValueMap()
+                .get(CouponPoolService.PN_CLAIMED, false), "The claim is written to the moved coupon");
+    }
+
+    @Test
+    void claim_refusesCouponWhenJournalFails() {
+        CouponClaimJournal journal = mock(CouponClaimJournal.class);
+        context.registerService(CouponClaimJournal.class, journal, Constants.SERVICE_RANKING, 100);
+        CouponPoolServiceImpl service = context.registerInjectActivateService(new CouponPoolServiceImpl());
+
+        assertThrows(CouponClaimException.class, () -> service.claim(POOL));
+
+        when(journal.append(anyString())).thenReturn(true);
+        assertNotNull(service.claim(POOL));
+        assertNull(service.claim(POOL), "The refused coupon must not be handed out later");
+    }
+
+    @Test
+    void getPool_restoresSnapshotAfterRestart(@TempDir File snapshotDir) throws Exception {
+        CouponPoolServiceImpl first = context.registerInjectActivateService(new CouponPoolServiceImpl(),
+                "snapshotDirectory", snapshotDir.getPath());
+        CouponEntry claimed = first.claim(POOL);
+        // removed behind the back of the listener: a restored pool still has it, a walked one would not
+        String unclaimed = claimed.getPath().endsWith("coupon1") ? POOL + "/coupon2" : POOL + "/coupon1";
+        context.resourceResolver().delete(context.resourceResolver().getResource(unclaimed));
+
+        CouponPoolServiceImpl restarted = context.registerInjectActivateService(new CouponPoolServiceImpl(),
+                "snapshotDirectory", snapshotDir.getPath());
+
+        CouponPool pool = restarted.getPool(POOL);
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.available(), "Claims since the snapshot should be replayed");
+        assertEquals(unclaimed, restarted.claim(POOL).getPath());
+        assertNull(restarted.claim(POOL));
+    }
+
+    @Test
+    void getPool_ignoresSnapshotOfOlderRevision(@TempDir File snapshotDir) throws Exception {
+        CouponPoolServiceImpl first = context.registerInjectActivateService(new CouponPoolServiceImpl(),
+                "snapshotDirectory", snapshotDir.getPath());
+        first.getPool(POOL);
+        context.create().resource(POOL + "/coupon3", "code", "COUPON-789");
+        CouponShards.newRevision(context.resourceResolver().getResource(POOL));
+        context.resourceResolver().commit();
+
+        CouponPoolServiceImpl restarted = context.registerInjectActivateService(new CouponPoolServiceImpl(),
+                "snapshotDirectory", snapshotDir.getPath());
+
+        assertEquals(3, restarted.getPool(POOL).size());
+    }
+
+    @Test
+    void onChange_setsNewRevisionUnlessOwnClaim(@TempDir File snapshotDir) throws Exception {
+        CouponPoolServiceImpl service = context.registerInjectActivateService(new CouponPoolServiceImpl(),
+                "snapshotDirectory", snapshotDir.getPath());
+        CouponEntry claimed = service.claim(POOL);
+        String revision = revision();
+        assertNotNull(revision);
+
+        reconciler.run();
+        service.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, claimed.getPath(), false)));
+        assertEquals(revision, revision(), "Own claims are replayed from the journal");
+
+        String edited = claimed.getPath().endsWith("coupon1") ? POOL + "/coupon2" : POOL + "/coupon1";
+        context.resourceResolver().getResource(edited).adaptTo(ModifiableValueMap.class).put("code", "COUPON-EDITED");
+        context.resourceResolver().commit();
+        service.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, edited, false)));
+        assertNotEquals(revision, revision());
+    }
+
+    @Test
+    void onChange_archivingClaimedCouponKeepsRevision(@TempDir File snapshotDir) throws Exception {
+        CouponPoolServiceImpl service = context.registerInjectActivateService(new CouponPoolServiceImpl(),
+                "snapshotDirectory", snapshotDir.getPath());
+        CouponEntry claimed = service.claim(POOL);
+        reconciler.run();
+        service.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, claimed.getPath(), false)));
+        String revision = revision();
+
+        ResourceResolver resolver = context.resourceResolver();
+        resolver.delete(resolver.getResource(claimed.getPath()));
+        resolver.commit();
+        service.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, claimed.getPath(), false)));
+        assertEquals(revision, revision(), "The archived coupon had already left the pool");
+
+        String other = claimed.getPath().endsWith("coupon1") ? POOL + "/coupon2" : POOL + "/coupon1";
+        resolver.delete(resolver.getResource(other));
+        resolver.commit();
+        service.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, other, false)));
+        assertNotEquals(revision, revision());
+    }
+
+    @Test
+    void getPool_ignoresSnapshotAfterChangeOfUnloadedPool(@TempDir File snapshotDir) throws Exception {
+        CouponPoolServiceImpl first = context.registerInjectActivateService(new CouponPoolServiceImpl(),
+                "snapshotDirectory", snapshotDir.getPath());
+        first.getPool(POOL);
+
+        // e.g. a replicated coupon that arrives before the restarted instance loaded the pool
+        CouponPoolServiceImpl restarted = context.registerInjectActivateService(new CouponPoolServiceImpl(),
+                "snapshotDirectory", snapshotDir.getPath());
+        context.create().resource(POOL + "/coupon3", "code", "COUPON-789");
+        restarted.onChange(Collections.singletonList(new ResourceChange(ChangeType.ADDED, POOL + "/coupon3", false)));
+
+        assertEquals(3, restarted.getPool(POOL).size());
+    }
+
+    private String revision() {
+        return context.resourceResolver().getResource(POOL).getValueMap().get(CouponPoolService.PN_REVISION, String.class);
+    }
+}
@@ -0,0 +1,91 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.common.collect.ImmutableMap;
+import com.theme.xerago.core.services.CouponEntry;
+import com.theme.xerago.core.services.CouponPool;
+
+class CouponPoolSnapshotsTest {
+
+    private static final String POOL = "/content/coupons/static";
+
+    @TempDir
+    File directory;
+
+    private static CouponPool pool() {
+        return new CouponPool(POOL, Arrays.asList(
+                new CouponEntry("c1", POOL + "/ab/cd/c1", ImmutableMap.of("code", "COUPON-1", "discount", 10L)),
+                new CouponEntry("c2", POOL + "/ef/01/c2", ImmutableMap.of("code", "COUPON-2"))));
+    }
+
+    private static String json(CouponEntry entry) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entry.writeJson(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void load_restoresSavedEntries() throws Exception {
+        CouponPoolSnapshots snapshots = new CouponPoolSnapshots(directory);
+        snapshots.save(pool(), Collections.emptySet(), "r1");
+
+        CouponPoolSnapshots.Snapshot snapshot = new CouponPoolSnapshots(directory).load(POOL, "r1");
+
+        assertNotNull(snapshot);
+        assertEquals(2, snapshot.entries.size());
+        CouponEntry first = snapshot.entries.get(0);
+        assertEquals("c1", first.getName());
+        assertEquals(POOL + "/ab/cd/c1", first.getPath());
+        assertEquals("{\"code\":\"COUPON-1\",\"discount\":10}", json(first));
+        assertEquals("COUPON-1", first.getProperties().get("code"));
+        assertTrue(snapshot.claimed.isEmpty());
+    }
+
+    @Test
+    void load_replaysJournalledClaims() {
+        CouponPoolSnapshots snapshots = new CouponPoolSnapshots(directory);
+        snapshots.save(pool(), Collections.singleton(POOL + "/ef/01/c2"), "r1");
+        snapshots.appendClaim(POOL, POOL + "/ab/cd/c1");
+        snapshots.close();
+
+        CouponPoolSnapshots.Snapshot snapshot = new CouponPoolSnapshots(directory).load(POOL, "r1");
+
+        assertEquals(1, snapshot.entries.size(), "Coupons handed out before saving are left out");
+        assertEquals(Collections.singleton(POOL + "/ab/cd/c1"), snapshot.claimed);
+    }
+
+    @Test
+    void save_startsNewJournal() {
+        CouponPoolSnapshots snapshots = new CouponPoolSnapshots(directory);
+        snapshots.appendClaim(POOL, POOL + "/ab/cd/c1");
+        snapshots.save(pool(), Collections.emptySet(), "r2");
+
+        assertTrue(snapshots.load(POOL, "r2").claimed.isEmpty());
+    }
+
+    @Test
+    void load_ignoresOtherRevisionsAndMissingFiles() {
+        CouponPoolSnapshots snapshots = new CouponPoolSnapshots(directory);
+        assertNull(snapshots.load(POOL, "r1"));
+
+        snapshots.save(pool(), Collections.emptySet(), "r1");
+
+        assertNull(snapshots.load(POOL, "r2"));
+        assertNull(snapshots.load(POOL, null));
+        snapshots.discard(POOL);
+        assertNull(snapshots.load(POOL, "r1"));
+    }
+}
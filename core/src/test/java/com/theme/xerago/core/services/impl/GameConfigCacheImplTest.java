@@ -0,0 +1,115 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.theme.xerago.core.models.WheelSpinGameModel;
+import com.theme.xerago.core.models.WheelSpinGameSegments;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class GameConfigCacheImplTest {
+
+    private static final String WHEEL = "/content/page/jcr:content/wheel";
+
+    private final AemContext context = new AemContext();
+
+    private final AtomicInteger builds = new AtomicInteger();
+
+    private GameConfigCacheImpl fixture;
+
+    @BeforeEach
+    void setUp() {
+        context.addModelsForClasses(WheelSpinGameModel.class, WheelSpinGameSegments.class);
+        context.create().resource(WHEEL, "sling:resourceType", PrizeTableServiceImpl.WHEEL_RESOURCE_TYPE);
+        context.create().resource(WHEEL + "/segments/item0", "text", "Grand Prize", "redeemCode", "WHEELGRAND");
+        fixture = context.registerInjectActivateService(new GameConfigCacheImpl());
+    }
+
+    @Test
+    void get_buildsOncePerRevision() {
+        Resource wheel = context.resourceResolver().getResource(WHEEL);
+
+        assertEquals("v1", fixture.get(wheel, String.class, this::build));
+        assertEquals("v1", fixture.get(wheel, String.class, this::build));
+        assertEquals(1, builds.get());
+
+        Calendar modified = Calendar.getInstance();
+        wheel.adaptTo(ModifiableValueMap.class).put(GameConfigCacheImpl.PN_CQ_LAST_MODIFIED, modified);
+        wheel = context.resourceResolver().getResource(WHEEL);
+        assertEquals("v2", fixture.get(wheel, String.class, this::build), "A new revision must be built again");
+        assertEquals("v2", fixture.get(wheel, String.class, this::build));
+    }
+
+    @Test
+    void get_keepsValuesOfOtherTypesApart() {
+        Resource wheel = context.resourceResolver().getResource(WHEEL);
+        fixture.get(wheel, String.class, this::build);
+
+        assertEquals(42, (int) fixture.get(wheel, Integer.class, component -> 42));
+    }
+
+    @Test
+    void onChange_dropsComponentOfChangedItem() {
+        Resource wheel = context.resourceResolver().getResource(WHEEL);
+        fixture.get(wheel, String.class, this::build);
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/page", false)));
+        assertEquals("v1", fixture.get(wheel, String.class, this::build), "Changes above the component do not matter");
+
+        fixture.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, WHEEL + "/segments/item0", false)));
+        assertEquals("v2", fixture.get(wheel, String.class, this::build));
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, "/content/page", false)));
+        assertEquals("v3", fixture.get(wheel, String.class, this::build));
+    }
+
+    @Test
+    void onChange_dropsOnlyTheRemovedSubtree() {
+        Resource wheel = context.resourceResolver().getResource(WHEEL);
+        fixture.get(wheel, String.class, this::build);
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, "/content/pag", false)));
+        assertEquals("v1", fixture.get(wheel, String.class, this::build), "A sibling sharing the prefix was removed");
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, "/content", false)));
+        assertEquals("v2", fixture.get(wheel, String.class, this::build));
+    }
+
+    @Test
+    void wheelSpinModel_rendersFromCache() {
+        String json = context.resourceResolver().getResource(WHEEL).adaptTo(WheelSpinGameModel.class)
+                .getPrizeTableJson();
+        assertTrue(json.contains("WHEELGRAND"));
+
+        Resource item = context.resourceResolver().getResource(WHEEL + "/segments/item0");
+        item.adaptTo(ModifiableValueMap.class).put("redeemCode", "WHEELNEW");
+        assertEquals(json, context.resourceResolver().getResource(WHEEL).adaptTo(WheelSpinGameModel.class)
+                .getPrizeTableJson(), "Cached until the change is observed");
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, item.getPath(), false)));
+        WheelSpinGameModel changed = context.resourceResolver().getResource(WHEEL).adaptTo(WheelSpinGameModel.class);
+        assertTrue(changed.getPrizeTableJson().contains("WHEELNEW"));
+        assertFalse(changed.getSegmentsJson().contains("WHEELNEW"), "Redeem codes are never rendered");
+    }
+
+    private String build(Resource component) {
+        return "v" + builds.incrementAndGet();
+    }
+}
@@ -0,0 +1,178 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.collect.ImmutableMap;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.RateMeter;
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+import com.theme.xerago.core.models.PickAGiftModel;
+import com.theme.xerago.core.models.PickAGiftPrizes;
+import com.theme.xerago.core.services.OpenedGift;
+import com.theme.xerago.core.services.Prize;
+import com.theme.xerago.core.services.PrizeTable;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class GiftBoardServiceImplTest {
+
+    private static final String GIFT = "/content/page/jcr:content/gift";
+
+    private final AemContext context = new AemContext();
+
+    private PrizeTableServiceImpl prizeTables;
+
+    private MetricsRegistry metrics;
+
+    private GiftBoardServiceImpl fixture;
+
+    @BeforeEach
+    void setUp() {
+        context.addModelsForClasses(PickAGiftModel.class, PickAGiftPrizes.class);
+        context.create().resource(GIFT, "sling:resourceType", PrizeTableServiceImpl.GIFT_RESOURCE_TYPES[0]);
+        context.create().resource(GIFT + "/prizes/item0", "text", "10% Off", "probability", 1.0);
+        context.create().resource(GIFT + "/prizes/item1", "text", "Free Shipping", "probability", 1.0);
+        metrics = context.registerInjectActivateService(new MetricsRegistryImpl());
+        prizeTables = context.registerInjectActivateService(new PrizeTableServiceImpl());
+        fixture = context.registerInjectActivateService(new GiftBoardServiceImpl(),
+                ImmutableMap.of("boardsPerComponent", 8));
+    }
+
+    @Test
+    void open_putsTheDrawnPrizeInTheChosenBox() {
+        Resource gift = context.resourceResolver().getResource(GIFT);
+
+        for (int i = 0; i < 100; i++) {
+            OpenedGift opened = fixture.open(gift, i % 3);
+            int[] board = opened.getBoard();
+            int drawn = opened.getPrize() != null ? opened.getPrize().getIndex() : GiftBoardServiceImpl.BETTER_LUCK;
+            assertEquals(drawn, board[opened.getBox()]);
+            Arrays.sort(board);
+            assertEquals("[-1, 0, 1]", Arrays.toString(board), "The other boxes hold the other prizes");
+        }
+    }
+
+    @Test
+    void open_pacesPrizes() {
+        Resource gift = context.create().resource("/content/page/jcr:content/paced",
+                "sling:resourceType", PrizeTableServiceImpl.GIFT_RESOURCE_TYPES[0],
+                PrizeTableServiceImpl.PN_HOURLY_LIMITS, new String[] { "PICK25OFF=1" });
+        context.create().resource(gift.getPath() + "/prizes/item0", "text", "$25 Off", "redeemCode", "PICK25OFF");
+
+        int won = 0;
+        for (int i = 0; i < 200; i++) {
+            if (fixture.open(gift, 0).getPrize() != null) {
+                won++;
+            }
+        }
+        assertEquals(1, won, "One $25 Off per hour, the other boxes open as better luck");
+    }
+
+    @Test
+    void open_rejectsBoxOffTheBoard() {
+        Resource gift = context.resourceResolver().getResource(GIFT);
+
+        assertThrows(IllegalArgumentException.class, () -> fixture.open(gift, 3));
+        assertThrows(IllegalArgumentException.class, () -> fixture.open(gift, -1));
+    }
+
+    @Test
+    void open_servesBoardsFromRingFilledInBackground() throws InterruptedException {
+        Resource gift = context.resourceResolver().getResource(GIFT);
+        RateMeter misses = metrics.meter("gift.boards.misses");
+
+        fixture.open(gift, 0);
+        assertEquals(1, misses.getCount(), "The first board of a component is generated by the request");
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        long before;
+        do {
+            Thread.sleep(10);
+            before = misses.getCount();
+            fixture.open(gift, 0);
+        } while (misses.getCount() > before && System.currentTimeMillis() < deadline);
+        assertEquals(before, misses.getCount(), "Later boards come from the ring the producer fills");
+    }
+
+    @Test
+    void open_otherResource() {
+        assertNull(fixture.open(context.create().resource("/content/other"), 0));
+        assertNull(fixture.open(context.create().resource("/content/wheel",
+                "sling:resourceType", PrizeTableServiceImpl.WHEEL_RESOURCE_TYPE), 0));
+    }
+
+    @Test
+    void open_followsChangedPrizes() {
+        Resource gift = context.resourceResolver().getResource(GIFT);
+        fixture.open(gift, 0);
+
+        context.create().resource(GIFT + "/prizes/item2", "text", "20% Off", "probability", 1.0);
+        prizeTables.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.ADDED, GIFT + "/prizes/item2", false)));
+
+        assertEquals(4, fixture.open(gift, 3).getBoard().length, "Boards of the old prizes must not be served");
+    }
+
+    @Test
+    void draw_betterLuckWeighsAsAnAveragePrize() {
+        PrizeTable table = new PrizeTable(Arrays.asList(new Prize(0, "Grand", "G", 8), new Prize(1, "Small", "S", 2),
+                new Prize(2, "Never", "N", 0)));
+        Random random = new Random(42);
+        int[] drawn = new int[3];
+        int betterLuck = 0;
+        for (int i = 0; i < 20_000; i++) {
+            Prize prize = GiftBoardServiceImpl.draw(table, random);
+            if (prize == null) {
+                betterLuck++;
+            } else {
+                drawn[prize.getIndex()]++;
+            }
+        }
+
+        // one in four is better luck, the rest as authored
+        assertEquals(0.25, betterLuck / 20_000.0, 0.02);
+        assertEquals(0.6, drawn[0] / 20_000.0, 0.02);
+        assertEquals(0.15, drawn[1] / 20_000.0, 0.02);
+        assertEquals(0, drawn[2]);
+    }
+
+    @Test
+    void generate_firstBoxFollowsProbabilities() {
+        PrizeTable table = new PrizeTable(Arrays.asList(new Prize(0, "Grand", "G", 8), new Prize(1, "Small", "S", 2),
+                new Prize(2, "Never", "N", 0)));
+        Random random = new Random(42);
+        int[] first = new int[3];
+        int betterLuckFirst = 0;
+        for (int i = 0; i < 20_000; i++) {
+            int[] board = GiftBoardServiceImpl.generate(table, random);
+            assertEquals(2, board[board.length - 1], "A prize without probability always lies last");
+            if (board[0] == GiftBoardServiceImpl.BETTER_LUCK) {
+                betterLuckFirst++;
+            } else {
+                first[board[0]]++;
+            }
+        }
+
+        // weights 8, 2, 0 and 10 / 3 for "better luck"
+        assertEquals(0.6, first[0] / 20_000.0, 0.02);
+        assertEquals(0.15, first[1] / 20_000.0, 0.02);
+        assertEquals(0.25, betterLuckFirst / 20_000.0, 0.02);
+        assertNotEquals(0, first[1]);
+    }
+}
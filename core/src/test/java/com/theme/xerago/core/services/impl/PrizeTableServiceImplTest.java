@@ -0,0 +1,151 @@
+package com.theme.xerago.core.services.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChange.ChangeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.collect.ImmutableMap;
+import com.theme.xerago.core.models.PickAGiftModel;
+import com.theme.xerago.core.models.PickAGiftPrizes;
+import com.theme.xerago.core.models.WheelSpinGameModel;
+import com.theme.xerago.core.models.WheelSpinGameSegments;
+import com.theme.xerago.core.services.PrizeTable;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class PrizeTableServiceImplTest {
+
+    private static final String WHEEL = "/content/page/jcr:content/wheel";
+
+    private final AemContext context = new AemContext();
+
+    private PrizeTableServiceImpl fixture;
+
+    @BeforeEach
+    void setUp() {
+        context.addModelsForClasses(WheelSpinGameModel.class, WheelSpinGameSegments.class,
+                PickAGiftModel.class, PickAGiftPrizes.class);
+        context.create().resource(WHEEL, "sling:resourceType", PrizeTableServiceImpl.WHEEL_RESOURCE_TYPE);
+        context.create().resource(WHEEL + "/segments/item0", "text", "Grand Prize", "probability", 0.0,
+                "redeemCode", "WHEELGRAND");
+        context.create().resource(WHEEL + "/segments/item1", "text", "Try Again", "probability", 1.0);
+        fixture = context.registerInjectActivateService(new PrizeTableServiceImpl());
+    }
+
+    @Test
+    void getPrizeTable_usesAuthoredProbabilities() {
+        PrizeTable table = fixture.getPrizeTable(context.resourceResolver().getResource(WHEEL));
+
+        assertEquals(2, table.size());
+        assertEquals("WHEELGRAND", table.getPrizes().get(0).getRedeemCode());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(1, table.draw().getIndex(), "Zero probability segments must never be drawn");
+        }
+    }
+
+    @Test
+    void getPrizeTable_defaultGiftPrizes() {
+        Resource gift = context.create().resource("/content/page/jcr:content/gift",
+                "sling:resourceType", PrizeTableServiceImpl.GIFT_RESOURCE_TYPES[0]);
+
+        PrizeTable table = fixture.getPrizeTable(gift);
+
+        assertEquals(6, table.size());
+        assertEquals(2, table.getPrizes().get(5).getWeight());
+    }
+
+    @Test
+    void getPrizeTable_otherResource() {
+        assertNull(fixture.getPrizeTable(context.create().resource("/content/other")));
+    }
+
+    @Test
+    void onChange_rebuildsOnlyWhenComponentOrPageChanges() {
+        Resource wheel = context.resourceResolver().getResource(WHEEL);
+        PrizeTable table = fixture.getPrizeTable(wheel);
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/page", false)));
+        fixture.onChange(Collections.singletonList(
+                new ResourceChange(ChangeType.CHANGED, "/content/page/jcr:content/other", false)));
+        assertSame(table, fixture.getPrizeTable(wheel));
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, WHEEL + "/segments/item0", false)));
+        assertNotSame(table, fixture.getPrizeTable(wheel));
+
+        table = fixture.getPrizeTable(wheel);
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, WHEEL, false)));
+        assertNotSame(table, fixture.getPrizeTable(wheel), "The component holds its hourly limits");
+
+        table = fixture.getPrizeTable(wheel);
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, "/content/page/jcr:content", false)));
+        assertNotSame(table, fixture.getPrizeTable(wheel), "Page properties hold hourly limits");
+    }
+
+    @Test
+    void getPrizeTable_pacesConfiguredPrizes() {
+        fixture = context.registerInjectActivateService(new PrizeTableServiceImpl(),
+                ImmutableMap.of("hourlyLimits", new String[] { "WHEELGRAND=1", "malformed", "PICK25OFF=0" }));
+        context.resourceResolver().getResource(WHEEL + "/segments/item0").adaptTo(ModifiableValueMap.class)
+                .put("probability", 1.0);
+
+        PrizeTable table = fixture.getPrizeTable(context.resourceResolver().getResource(WHEEL));
+
+        assertTrue(table.isPaced());
+        int grand = 0;
+        for (int i = 0; i < 100; i++) {
+            if (table.draw().getIndex() == 0) {
+                grand++;
+            }
+        }
+        assertEquals(1, grand, "Only one grand prize per hour");
+    }
+
+    @Test
+    void onChange_keepsBudgetsAcrossRebuilds() {
+        fixture = context.registerInjectActivateService(new PrizeTableServiceImpl(),
+                ImmutableMap.of("hourlyLimits", new String[] { "WHEELGRAND=1" }));
+        context.resourceResolver().getResource(WHEEL + "/segments/item0").adaptTo(ModifiableValueMap.class)
+                .put("probability", 1.0);
+        context.resourceResolver().getResource(WHEEL + "/segments/item1").adaptTo(ModifiableValueMap.class)
+                .put("probability", 0.0);
+        Resource wheel = context.resourceResolver().getResource(WHEEL);
+        assertEquals(0, fixture.getPrizeTable(wheel).draw().getIndex());
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.CHANGED, WHEEL, false)));
+        assertNull(fixture.getPrizeTable(wheel).draw(), "A rebuilt table must not grant another grand prize");
+
+        fixture.onChange(Collections.singletonList(new ResourceChange(ChangeType.REMOVED, "/content/page", false)));
+        assertEquals(0, fixture.getPrizeTable(wheel).draw().getIndex(), "A removed component takes its budget along");
+    }
+
+    @Test
+    void getPrizeTable_componentLimitsOverridePage() {
+        context.create().page("/content/site/en", "/conf/xeragotheme/settings/wcm/templates/page",
+                ImmutableMap.of(PrizeTableServiceImpl.PN_HOURLY_LIMITS, new String[] { "WHEELGRAND=1" }));
+        Resource paced = context.create().resource("/content/site/en/jcr:content/paced",
+                "sling:resourceType", PrizeTableServiceImpl.WHEEL_RESOURCE_TYPE);
+        context.create().resource(paced.getPath() + "/segments/item0", "text", "Grand Prize", "redeemCode", "WHEELGRAND");
+        Resource unpaced = context.create().resource("/content/site/en/jcr:content/unpaced",
+                "sling:resourceType", PrizeTableServiceImpl.WHEEL_RESOURCE_TYPE,
+                PrizeTableServiceImpl.PN_HOURLY_LIMITS, new String[] { "WHEELGRAND=0", "OTHER=5" });
+        context.create().resource(unpaced.getPath() + "/segments/item0", "text", "Grand Prize", "redeemCode", "WHEELGRAND");
+
+        assertTrue(fixture.getPrizeTable(paced).isPaced(), "Limits of the page apply to its components");
+        assertFalse(fixture.getPrizeTable(unpaced).isPaced(), "A limit of zero on the component lifts the page's");
+    }
+}
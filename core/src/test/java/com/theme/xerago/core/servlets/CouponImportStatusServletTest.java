@@ -0,0 +1,83 @@
+package com.theme.xerago.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.apache.sling.event.jobs.Job;
+import org.apache.sling.event.jobs.JobManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.theme.xerago.core.services.CouponImportProgress;
+import com.theme.xerago.core.services.CouponImportService;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class CouponImportStatusServletTest {
+
+	AemContext context = new AemContext();
+
+	CouponImportService importService = mock(CouponImportService.class);
+
+	JobManager jobManager = mock(JobManager.class);
+
+	CouponImportStatusServlet servlet = new CouponImportStatusServlet();
+
+	@BeforeEach
+	void setUp() {
+		context.registerService(CouponImportService.class, importService);
+		context.registerService(JobManager.class, jobManager);
+		context.registerInjectActivateService(servlet);
+	}
+
+	@Test
+	void testDoGet_reportsCounters() throws Exception {
+		Job job = mock(Job.class);
+		when(job.getJobState()).thenReturn(Job.JobState.ACTIVE);
+		when(jobManager.getJobById("job-1")).thenReturn(job);
+		CouponImportProgress progress = new CouponImportProgress();
+		progress.created(5);
+		progress.skipped();
+		when(importService.getProgress("job-1")).thenReturn(progress);
+		context.request().setParameterMap(ImmutableMap.of("jobId", "job-1"));
+
+		servlet.doGet(context.request(), context.response());
+
+		JsonObject status = JsonParser.parseString(context.response().getOutputAsString()).getAsJsonObject();
+		assertEquals("ACTIVE", status.get("state").getAsString());
+		assertEquals(6, status.get("processed").getAsLong());
+		assertEquals(5, status.get("created").getAsLong());
+		assertEquals(1, status.get("skipped").getAsLong());
+		assertEquals(0, status.get("failed").getAsLong());
+	}
+
+	@Test
+	void testDoGet_queuedJob() throws Exception {
+		Job job = mock(Job.class);
+		when(job.getJobState()).thenReturn(Job.JobState.QUEUED);
+		when(jobManager.getJobById("job-1")).thenReturn(job);
+		context.request().setParameterMap(ImmutableMap.of("jobId", "job-1"));
+
+		servlet.doGet(context.request(), context.response());
+
+		JsonObject status = JsonParser.parseString(context.response().getOutputAsString()).getAsJsonObject();
+		assertEquals("QUEUED", status.get("state").getAsString());
+		assertEquals(0, status.get("processed").getAsLong());
+	}
+
+	@Test
+	void testDoGet_unknownJob() throws Exception {
+		context.request().setParameterMap(ImmutableMap.of("jobId", "missing"));
+
+		servlet.doGet(context.request(), context.response());
+
+		assertEquals(404, context.response().getStatus());
+	}
+}
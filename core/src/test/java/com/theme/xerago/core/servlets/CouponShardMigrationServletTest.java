@@ -0,0 +1,68 @@
+package com.theme.xerago.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.testing.mock.sling.ResourceResolverType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.collect.ImmutableMap;
+import com.theme.xerago.core.services.CouponShards;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class CouponShardMigrationServletTest {
+
+	private static final String POOL = "/content/coupons/static";
+
+	AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
+
+	CouponShardMigrationServlet servlet = new CouponShardMigrationServlet();
+
+	@BeforeEach
+	void setUp() {
+		for (int i = 0; i < 25; i++) {
+			context.create().resource(POOL + "/c" + i, "code", "COUPON-" + i);
+		}
+	}
+
+	@Test
+	void testDoPost_movesFlatCouponsIntoBuckets() throws Exception {
+		context.request().setParameterMap(ImmutableMap.of("poolPath", POOL));
+
+		servlet.doPost(context.request(), context.response());
+
+		ResourceResolver resolver = context.resourceResolver();
+		assertEquals("migrated 25 coupons", context.response().getOutputAsString());
+		for (int i = 0; i < 25; i++) {
+			assertNull(resolver.getResource(POOL + "/c" + i));
+			assertNotNull(resolver.getResource(CouponShards.couponPath(POOL, "c" + i)));
+		}
+	}
+
+	@Test
+	void testDoPost_isRepeatable() throws Exception {
+		context.request().setParameterMap(ImmutableMap.of("poolPath", POOL));
+		servlet.doPost(context.request(), context.response());
+
+		context.response().resetBuffer();
+		servlet.doPost(context.request(), context.response());
+
+		assertEquals("migrated 0 coupons", context.response().getOutputAsString());
+	}
+
+	@Test
+	void testDoPost_missingPool() throws Exception {
+		context.request().setParameterMap(ImmutableMap.of("poolPath", "/content/coupons/missing"));
+
+		servlet.doPost(context.request(), context.response());
+
+		assertEquals(404, context.response().getStatus());
+	}
+}
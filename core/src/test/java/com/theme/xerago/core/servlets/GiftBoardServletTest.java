@@ -0,0 +1,86 @@
+package com.theme.xerago.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+import com.theme.xerago.core.models.PickAGiftModel;
+import com.theme.xerago.core.models.PickAGiftPrizes;
+import com.theme.xerago.core.services.impl.GiftBoardServiceImpl;
+import com.theme.xerago.core.services.impl.PrizeTableServiceImpl;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class GiftBoardServletTest {
+
+	private static final String GIFT = "/content/page/jcr:content/gift";
+
+	AemContext context = new AemContext();
+
+	GiftBoardServlet servlet = new GiftBoardServlet();
+
+	MetricsRegistry metrics;
+
+	@BeforeEach
+	void setUp() {
+		context.addModelsForClasses(PickAGiftModel.class, PickAGiftPrizes.class);
+		metrics = context.registerInjectActivateService(new MetricsRegistryImpl());
+		context.registerInjectActivateService(new PrizeTableServiceImpl());
+		context.registerInjectActivateService(new GiftBoardServiceImpl());
+		context.registerInjectActivateService(servlet);
+	}
+
+	@Test
+	void testDoGet_opensChosenBox() throws Exception {
+		context.currentResource(context.create().resource(GIFT,
+				"sling:resourceType", "xeragotheme/components/floating-pick-a-gift"));
+		context.request().setParameterMap(ImmutableMap.of("box", "2"));
+
+		servlet.doGet(context.request(), context.response());
+
+		JsonObject opened = JsonParser.parseString(context.response().getOutputAsString()).getAsJsonObject();
+		JsonArray board = opened.getAsJsonArray("board");
+		assertEquals(7, board.size(), "Six default prizes and the better luck box");
+		assertEquals(2, opened.get("box").getAsInt());
+		assertEquals(opened.get("index").getAsInt(), board.get(2).getAsInt());
+		assertEquals(opened.get("index").getAsInt() >= 0, opened.has("redeemCode"));
+		assertEquals("no-store", context.response().getHeader("Cache-Control"));
+		assertEquals(1, metrics.meter("gift.boards").getCount());
+	}
+
+	@Test
+	void testDoGet_badBox() throws Exception {
+		context.currentResource(context.create().resource(GIFT,
+				"sling:resourceType", "xeragotheme/components/floating-pick-a-gift"));
+
+		servlet.doGet(context.request(), context.response());
+		assertEquals(400, context.response().getStatus(), "No box chosen");
+
+		context.request().setParameterMap(ImmutableMap.of("box", "7"));
+		MockSlingHttpServletResponse offBoard = new MockSlingHttpServletResponse();
+		servlet.doGet(context.request(), offBoard);
+		assertEquals(400, offBoard.getStatus());
+		assertEquals(0, metrics.meter("gift.boards").getCount());
+	}
+
+	@Test
+	void testDoGet_notAGift() throws Exception {
+		context.currentResource(context.create().resource("/content/page/jcr:content/text"));
+		context.request().setParameterMap(ImmutableMap.of("box", "0"));
+
+		servlet.doGet(context.request(), context.response());
+
+		assertEquals(404, context.response().getStatus());
+	}
+}
@@ -0,0 +1,46 @@
+package com.theme.xerago.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class MetricsServletTest {
+
+	AemContext context = new AemContext();
+
+	MetricsServlet servlet = new MetricsServlet();
+
+	MetricsRegistry metrics;
+
+	@BeforeEach
+	void setUp() {
+		metrics = context.registerInjectActivateService(new MetricsRegistryImpl());
+		context.registerInjectActivateService(servlet);
+	}
+
+	@Test
+	void testDoGet_reportsAllMetrics() throws Exception {
+		metrics.histogram("coupon.select").record(1_500_000);
+		metrics.meter("coupon.claims").mark(2);
+
+		servlet.doGet(context.request(), context.response());
+
+		JsonObject values = JsonParser.parseString(context.response().getOutputAsString()).getAsJsonObject();
+		assertTrue(context.response().getContentType().startsWith("application/json"));
+		assertEquals(1, values.get("coupon.select.count").getAsLong());
+		assertEquals(1_500, values.get("coupon.select.max").getAsLong());
+		assertEquals(2, values.get("coupon.claims.count").getAsLong());
+	}
+}
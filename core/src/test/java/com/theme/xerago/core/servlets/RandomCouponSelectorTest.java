@@ -2,6 +2,8 @@ package com.theme.xerago.core.servlets;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.Collections;
+
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.resource.Resource;
@@ -10,6 +12,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+import com.theme.xerago.core.services.impl.CouponClaimJournal;
+import com.theme.xerago.core.services.impl.CouponPoolServiceImpl;
+
 import io.wcm.testing.mock.aem.junit5.AemContext;
 import io.wcm.testing.mock.aem.junit5.AemContextExtension;
 
@@ -21,6 +28,8 @@ class RandomCouponSelectorTest {
     // wcm.io will inject AemContext for each test
     private final AemContext context = new AemContext(ResourceResolverType.JCR_MOCK);
 
+    private MetricsRegistry metrics;
+
     @BeforeEach
     void setUp() {
         // Create test coupon structure in JCR
@@ -31,6 +40,11 @@ class RandomCouponSelectorTest {
         context.create().resource("/content/coupons/static/coupon2",
                 "code", "COUPON-456",
                 "discount", "20%");
+
+        metrics = context.registerInjectActivateService(new MetricsRegistryImpl());
+        context.registerInjectActivateService(new CouponClaimJournal());
+        context.registerInjectActivateService(new CouponPoolServiceImpl());
+        context.registerInjectActivateService(servlet);
     }
 
     @Test
@@ -45,7 +59,37 @@ class RandomCouponSelectorTest {
         assertNotNull(result);
         assertTrue(result.contains("COUPON-123") || result.contains("COUPON-456"),
                 "Response should contain one of the coupons");
-        assertEquals("application/Json", response.getContentType());
+        assertFalse(result.contains("jcr:primaryType"), "System properties must not be sent");
+        assertTrue(response.getContentType().startsWith("application/json"));
+        assertEquals("UTF-8", response.getCharacterEncoding());
+    }
+
+    @Test
+    void testDoGet_recordsLatencyAndClaims(AemContext context) throws Exception {
+        servlet.doGet(context.request(), context.response());
+
+        assertEquals(1, metrics.histogram("coupon.select").snapshot().getCount());
+        assertEquals(1, metrics.meter("coupon.claims").getCount());
+        assertEquals(1L, metrics.getValues().get("coupon.pool.content.coupons.static.available"));
+    }
+
+    @Test
+    void testDoGet_handsOutEachCouponOnce(AemContext context) throws Exception {
+        servlet.doGet(context.request(), context.response());
+        String first = context.response().getOutputAsString();
+
+        context.response().resetBuffer();
+        servlet.doGet(context.request(), context.response());
+        String second = context.response().getOutputAsString();
+
+        assertNotEquals(first.contains("COUPON-123"), second.contains("COUPON-123"),
+                "Both coupons should be handed out exactly once");
+
+        context.response().resetBuffer();
+        servlet.doGet(context.request(), context.response());
+
+        assertEquals(404, context.response().getStatus());
+        assertTrue(context.response().getOutputAsString().contains("No coupons available"));
     }
 
     @Test
@@ -82,4 +126,53 @@ class RandomCouponSelectorTest {
         assertEquals(404, response.getStatus());
         assertTrue(result.contains("coupon folder not found"));
     }
+
+    @Test
+    void testDoGet_drawsFromTierOfScore(AemContext context) throws Exception {
+        context.create().resource("/content/coupons/gold/coupon3", "code", "GOLD-789");
+        RandomCouponSelector tiered = context.registerInjectActivateService(new RandomCouponSelector(),
+                "tiers", new String[] { "0=/content/coupons/static", "500=/content/coupons/gold" });
+
+        context.request().setParameterMap(Collections.<String, Object>singletonMap("points", "650"));
+        tiered.doGet(context.request(), context.response());
+        assertTrue(context.response().getOutputAsString().contains("GOLD-789"));
+
+        // the gold pool is exhausted now, the next lower tier steps in
+        context.response().resetBuffer();
+        tiered.doGet(context.request(), context.response());
+        String fallback = context.response().getOutputAsString();
+        assertTrue(fallback.contains("COUPON-123") || fallback.contains("COUPON-456"));
+    }
+
+    @Test
+    void testDoGet_capsPointsAtMaxPoints(AemContext context) throws Exception {
+        context.create().resource("/content/coupons/gold/coupon3", "code", "GOLD-789");
+        RandomCouponSelector tiered = context.registerInjectActivateService(new RandomCouponSelector(),
+                "tiers", new String[] { "0=/content/coupons/static", "500=/content/coupons/gold" },
+                "maxPoints", 400);
+
+        context.request().setParameterMap(Collections.<String, Object>singletonMap("points", "100000"));
+        tiered.doGet(context.request(), context.response());
+
+        assertFalse(context.response().getOutputAsString().contains("GOLD-789"), "No game reaches the gold tier");
+    }
+
+    @Test
+    void testDoGet_noPointsBelowLowestTier(AemContext context) throws Exception {
+        RandomCouponSelector tiered = context.registerInjectActivateService(new RandomCouponSelector(),
+                "tiers", new String[] { "100=/content/coupons/static" });
+
+        tiered.doGet(context.request(), context.response());
+
+        assertEquals(404, context.response().getStatus());
+    }
+
+    @Test
+    void testDoGet_invalidPoints(AemContext context) throws Exception {
+        context.request().setParameterMap(Collections.<String, Object>singletonMap("points", "lots"));
+
+        servlet.doGet(context.request(), context.response());
+
+        assertEquals(400, context.response().getStatus());
+    }
 }
@@ -0,0 +1,56 @@
+package com.theme.xerago.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.theme.xerago.core.metrics.LatencyHistogram;
+import com.theme.xerago.core.metrics.RequestTimings;
+import com.theme.xerago.core.metrics.SlowRequest;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class RequestTimingsServletTest {
+
+	AemContext context = new AemContext();
+
+	RequestTimings requestTimings = mock(RequestTimings.class);
+
+	RequestTimingsServlet servlet = new RequestTimingsServlet();
+
+	@BeforeEach
+	void setUp() {
+		context.registerService(RequestTimings.class, requestTimings);
+		context.registerInjectActivateService(servlet);
+	}
+
+	@Test
+	void testDoGet_reportsTimingsAndSlowestRequests() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(3_000_000);
+		when(requestTimings.getTimings()).thenReturn(
+				Collections.singletonMap("xeragotheme/components/wheel-spin-game.html", histogram.snapshot()));
+		when(requestTimings.getSlowestRequests()).thenReturn(Collections.singletonList(
+				new SlowRequest("/content/game/wheel", "xeragotheme/components/wheel-spin-game.html", 3_000, 1L)));
+
+		servlet.doGet(context.request(), context.response());
+
+		JsonObject result = JsonParser.parseString(context.response().getOutputAsString()).getAsJsonObject();
+		JsonObject timing = result.getAsJsonObject("timings")
+				.getAsJsonObject("xeragotheme/components/wheel-spin-game.html");
+		assertEquals(1, timing.get("count").getAsLong());
+		assertEquals(3_000, timing.get("max").getAsLong());
+		assertEquals("/content/game/wheel",
+				result.getAsJsonArray("slowest").get(0).getAsJsonObject().get("path").getAsString());
+	}
+}
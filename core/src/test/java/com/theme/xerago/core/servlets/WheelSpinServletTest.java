@@ -0,0 +1,83 @@
+package com.theme.xerago.core.servlets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.sling.testing.mock.sling.servlet.MockSlingHttpServletResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.theme.xerago.core.metrics.MetricsRegistry;
+import com.theme.xerago.core.metrics.impl.MetricsRegistryImpl;
+import com.theme.xerago.core.models.WheelSpinGameModel;
+import com.theme.xerago.core.models.WheelSpinGameSegments;
+import com.theme.xerago.core.services.impl.PrizeTableServiceImpl;
+
+import io.wcm.testing.mock.aem.junit5.AemContext;
+import io.wcm.testing.mock.aem.junit5.AemContextExtension;
+
+@ExtendWith(AemContextExtension.class)
+class WheelSpinServletTest {
+
+	private static final String WHEEL = "/content/page/jcr:content/wheel";
+
+	AemContext context = new AemContext();
+
+	WheelSpinServlet servlet = new WheelSpinServlet();
+
+	MetricsRegistry metrics;
+
+	@BeforeEach
+	void setUp() {
+		context.addModelsForClasses(WheelSpinGameModel.class, WheelSpinGameSegments.class);
+		context.create().resource(WHEEL, "sling:resourceType", "xeragotheme/components/wheel-spin-game");
+		context.create().resource(WHEEL + "/segments/item0", "text", "Try Again", "probability", 0.0);
+		context.create().resource(WHEEL + "/segments/item1", "text", "Grand Prize", "probability", 1.0,
+				"redeemCode", "WHEELGRAND");
+		metrics = context.registerInjectActivateService(new MetricsRegistryImpl());
+		context.registerInjectActivateService(new PrizeTableServiceImpl());
+		context.registerInjectActivateService(servlet);
+	}
+
+	@Test
+	void testDoGet_drawsOnTheServer() throws Exception {
+		context.currentResource(WHEEL);
+
+		servlet.doGet(context.request(), context.response());
+
+		JsonObject outcome = JsonParser.parseString(context.response().getOutputAsString()).getAsJsonObject();
+		assertEquals(1, outcome.get("index").getAsInt());
+		assertEquals("Grand Prize", outcome.get("text").getAsString());
+		assertEquals("WHEELGRAND", outcome.get("redeemCode").getAsString());
+		assertEquals("no-store", context.response().getHeader("Cache-Control"));
+		assertEquals(1, metrics.meter("wheel.spins").getCount());
+	}
+
+	@Test
+	void testDoGet_pacedOut() throws Exception {
+		String paced = "/content/page/jcr:content/paced";
+		context.create().resource(paced, "sling:resourceType", "xeragotheme/components/wheel-spin-game",
+				"prizeHourlyLimits", new String[] { "WHEELGRAND=1" });
+		context.create().resource(paced + "/segments/item0", "text", "Grand Prize", "redeemCode", "WHEELGRAND");
+		context.currentResource(paced);
+
+		servlet.doGet(context.request(), context.response());
+		assertEquals(200, context.response().getStatus());
+
+		MockSlingHttpServletResponse again = new MockSlingHttpServletResponse();
+		servlet.doGet(context.request(), again);
+		assertEquals(503, again.getStatus(), "The hourly grand prize is gone");
+	}
+
+	@Test
+	void testDoGet_notAWheel() throws Exception {
+		context.currentResource(context.create().resource("/content/page/jcr:content/text"));
+
+		servlet.doGet(context.request(), context.response());
+
+		assertEquals(404, context.response().getStatus());
+		assertEquals(0, metrics.meter("wheel.spins").getCount());
+	}
+}
@@ -0,0 +1,56 @@
+package com.theme.xerago.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class AliasTableTest {
+
+    private static final int DRAWS = 200_000;
+
+    @Test
+    void next_followsWeights() {
+        double[] weights = { 30, 25, 20, 15, 8, 2 };
+        int[] counts = draw(new AliasTable(weights));
+
+        for (int i = 0; i < weights.length; i++) {
+            assertEquals(weights[i] / 100, counts[i] / (double) DRAWS, 0.01, "Outcome " + i);
+        }
+    }
+
+    @Test
+    void next_neverReturnsZeroWeights() {
+        int[] counts = draw(new AliasTable(new double[] { 0, 1, Double.NaN, -3, 1 }));
+
+        assertEquals(0, counts[0]);
+        assertEquals(0, counts[2]);
+        assertEquals(0, counts[3]);
+        assertEquals(DRAWS, counts[1] + counts[4]);
+    }
+
+    @Test
+    void next_isUniformWithoutPositiveWeights() {
+        int[] counts = draw(new AliasTable(new double[] { 0, 0, 0, 0 }));
+
+        for (int count : counts) {
+            assertEquals(0.25, count / (double) DRAWS, 0.01);
+        }
+    }
+
+    @Test
+    void constructor_rejectsEmptyWeights() {
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]));
+    }
+
+    private static int[] draw(AliasTable table) {
+        Random random = new Random(42);
+        int[] counts = new int[table.size()];
+        for (int i = 0; i < DRAWS; i++) {
+            counts[table.next(random)]++;
+        }
+        return counts;
+    }
+}
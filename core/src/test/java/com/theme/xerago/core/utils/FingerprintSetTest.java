@@ -0,0 +1,35 @@
+package com.theme.xerago.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class FingerprintSetTest {
+
+    @Test
+    void add_reportsDuplicates() {
+        FingerprintSet set = new FingerprintSet();
+
+        assertTrue(set.add("COUPON-1"));
+        assertFalse(set.add("COUPON-1"));
+        assertTrue(set.add(""));
+        assertFalse(set.add(""));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    void contains_survivesResizing() {
+        FingerprintSet set = new FingerprintSet(4);
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(set.add("c" + i), "c" + i);
+        }
+
+        assertEquals(100_000, set.size());
+        for (int i = 0; i < 100_000; i++) {
+            assertTrue(set.contains("c" + i));
+        }
+        assertFalse(set.contains("c100000"));
+    }
+}
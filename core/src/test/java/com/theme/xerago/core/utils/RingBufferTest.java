@@ -0,0 +1,79 @@
+package com.theme.xerago.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferTest {
+
+    @Test
+    void offer_isBoundedAndFifo() {
+        RingBuffer<Integer> ring = new RingBuffer<>(3);
+        assertEquals(4, ring.capacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4), "A full ring must refuse elements");
+        assertEquals(4, ring.size());
+
+        assertEquals(0, (int) ring.poll());
+        assertTrue(ring.offer(4), "A polled slot is free for the next lap");
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, (int) ring.poll());
+        }
+        assertNull(ring.poll());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    void pollAndOffer_concurrentlyHandOutEveryElementOnce() throws InterruptedException {
+        RingBuffer<Integer> ring = new RingBuffer<>(64);
+        int perProducer = 20_000;
+        int producers = 4;
+        Set<Integer> taken = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(perProducer * producers);
+        CountDownLatch done = new CountDownLatch(2 * producers);
+        ExecutorService executor = Executors.newFixedThreadPool(2 * producers);
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            executor.execute(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+                done.countDown();
+            });
+            executor.execute(() -> {
+                while (remaining.get() > 0) {
+                    Integer element = ring.poll();
+                    if (element != null) {
+                        remaining.decrementAndGet();
+                        if (!taken.add(element)) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                }
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertEquals(0, duplicates.get());
+        assertEquals(perProducer * producers, taken.size());
+    }
+}
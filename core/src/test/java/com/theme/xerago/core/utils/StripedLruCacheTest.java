@@ -0,0 +1,89 @@
+package com.theme.xerago.core.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class StripedLruCacheTest {
+
+    @Test
+    void computeIfAbsent_createsOnce() {
+        StripedLruCache<String, AtomicInteger> cache = new StripedLruCache<>(4, 100, 1, TimeUnit.HOURS);
+
+        cache.computeIfAbsent("a", key -> new AtomicInteger()).incrementAndGet();
+        cache.computeIfAbsent("a", key -> new AtomicInteger()).incrementAndGet();
+
+        assertEquals(2, cache.get("a").get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void computeIfAbsent_staysBounded() {
+        StripedLruCache<String, Integer> cache = new StripedLruCache<>(4, 100, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 10_000; i++) {
+            cache.computeIfAbsent("k" + i, key -> 1);
+        }
+
+        assertTrue(cache.size() <= 100, "size " + cache.size());
+        assertNotNull(cache.get("k9999"));
+        assertNull(cache.get("k0"));
+    }
+
+    @Test
+    void get_dropsIdleEntries() throws InterruptedException {
+        StripedLruCache<String, Integer> cache = new StripedLruCache<>(1, 100, 1, TimeUnit.MILLISECONDS);
+        cache.computeIfAbsent("a", key -> 1);
+
+        Thread.sleep(20);
+
+        assertNull(cache.get("a"));
+        cache.computeIfAbsent("b", key -> 2);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void forEach_visitsEveryEntry() {
+        StripedLruCache<String, Integer> cache = new StripedLruCache<>(4, 100, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 10; i++) {
+            cache.computeIfAbsent("k" + i, key -> 1);
+        }
+        AtomicInteger sum = new AtomicInteger();
+
+        cache.forEach((key, value) -> sum.addAndGet(value));
+
+        assertEquals(10, sum.get());
+    }
+
+    @Test
+    void put_replacesWithoutEvicting() {
+        StripedLruCache<String, Integer> cache = new StripedLruCache<>(1, 2, 1, TimeUnit.HOURS);
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        cache.put("a", 3);
+
+        assertEquals(3, (int) cache.get("a"));
+        assertEquals(2, (int) cache.get("b"));
+    }
+
+    @Test
+    void remove_andRemoveIf() {
+        StripedLruCache<String, Integer> cache = new StripedLruCache<>(4, 100, 1, TimeUnit.HOURS);
+        cache.put("/a", 1);
+        cache.put("/a/b", 2);
+        cache.put("/c", 3);
+
+        assertEquals(1, (int) cache.remove("/a"));
+        assertNull(cache.remove("/a"));
+        assertTrue(cache.removeIf(key -> key.startsWith("/a/")));
+
+        assertEquals(1, cache.size());
+        assertEquals(3, (int) cache.get("/c"));
+    }
+}
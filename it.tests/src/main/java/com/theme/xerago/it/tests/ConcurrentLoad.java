@@ -0,0 +1,196 @@
+package com.theme.xerago.it.tests;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Fires a number of GET requests at a URL from a fixed number of threads and
+ * records the latency, status and body of each. The testing clients keep only
+ * a couple of connections per host, so the requests go through a client of
+ * their own with one pooled connection per thread.
+ * <p>
+ * Bodies of successful responses are counted by a key taken from them, so
+ * the same payload handed out twice shows up as a duplicate.
+ */
+class ConcurrentLoad {
+
+    private final URI uri;
+    private final int requests;
+    private final int concurrency;
+    private String authorization;
+    private Function<String, String> bodyKey = Function.identity();
+
+    ConcurrentLoad(URI uri, int requests, int concurrency) {
+        this.uri = uri;
+        this.requests = requests;
+        this.concurrency = concurrency;
+    }
+
+    ConcurrentLoad withAuthorization(String authorization) {
+        this.authorization = authorization;
+        return this;
+    }
+
+    /**
+     * @param bodyKey maps the body of a successful response to the key duplicates are detected by
+     */
+    ConcurrentLoad withBodyKey(Function<String, String> bodyKey) {
+        this.bodyKey = bodyKey;
+        return this;
+    }
+
+    Result run() throws InterruptedException, IOException {
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(concurrency);
+        connections.setDefaultMaxPerRoute(concurrency);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try (CloseableHttpClient client = HttpClients.custom().setConnectionManager(connections).build()) {
+            Result result = new Result(requests);
+            AtomicInteger next = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(concurrency);
+            long start = System.nanoTime();
+            for (int i = 0; i < concurrency; i++) {
+                executor.execute(() -> {
+                    try {
+                        for (int request = next.getAndIncrement(); request < requests;
+                             request = next.getAndIncrement()) {
+                            send(client, request, result);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            result.elapsedNanos = System.nanoTime() - start;
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void send(CloseableHttpClient client, int request, Result result) {
+        HttpGet get = new HttpGet(uri);
+        if (authorization != null) {
+            get.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        long start = System.nanoTime();
+        try (CloseableHttpResponse response = client.execute(get)) {
+            int status = response.getStatusLine().getStatusCode();
+            String body = response.getEntity() != null
+                    ? EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8)
+                    : "";
+            result.latencyNanos[request] = System.nanoTime() - start;
+            result.record(status, status == 200 ? bodyKey.apply(body) : null);
+        } catch (IOException | RuntimeException e) {
+            result.latencyNanos[request] = System.nanoTime() - start;
+            result.record(-1, null);
+        }
+    }
+
+    static String basicAuthorization(String user, String password) {
+        String credentials = user + ":" + password;
+        return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Outcome of a run. Failed connections are counted with status -1.
+     */
+    static final class Result {
+
+        private final long[] latencyNanos;
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> keys = new ConcurrentHashMap<>();
+        private final LongAdder duplicates = new LongAdder();
+        private long elapsedNanos;
+        private long[] sorted;
+
+        Result(int requests) {
+            latencyNanos = new long[requests];
+        }
+
+        void record(int status, String key) {
+            statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+            if (key != null && keys.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet() > 1) {
+                duplicates.increment();
+            }
+        }
+
+        int getRequests() {
+            return latencyNanos.length;
+        }
+
+        long getCount(int status) {
+            LongAdder count = statuses.get(status);
+            return count != null ? count.sum() : 0;
+        }
+
+        /**
+         * @return requests that neither succeeded nor got the given expected status
+         */
+        long getErrors(int... expected) {
+            long errors = getRequests() - getCount(200);
+            for (int status : expected) {
+                errors -= getCount(status);
+            }
+            return errors;
+        }
+
+        /**
+         * @return successful responses whose key was already handed out before
+         */
+        long getDuplicates() {
+            return duplicates.sum();
+        }
+
+        double getDuplicateRate() {
+            long served = getCount(200);
+            return served == 0 ? 0 : (double) getDuplicates() / served;
+        }
+
+        double getThroughput() {
+            return getRequests() / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the latency below or at which the given share of the requests completed, in milliseconds
+         */
+        synchronized double getLatencyMillis(double percentile) {
+            if (sorted == null) {
+                sorted = latencyNanos.clone();
+                Arrays.sort(sorted);
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests in %.1f s: %.0f req/s, p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms,"
+                            + " statuses %s, %d duplicates (%.4f%%)",
+                    getRequests(), elapsedNanos / 1e9, getThroughput(), getLatencyMillis(50), getLatencyMillis(99),
+                    getLatencyMillis(99.9), statuses, getDuplicates(), getDuplicateRate() * 100);
+        }
+    }
+}
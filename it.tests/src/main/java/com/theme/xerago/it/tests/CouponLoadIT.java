@@ -0,0 +1,147 @@
+package com.theme.xerago.it.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.testing.clients.ClientException;
+import org.apache.sling.testing.clients.osgi.OsgiConsoleClient;
+import org.apache.sling.testing.clients.util.FormEntityBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.adobe.cq.testing.client.CQClient;
+import com.adobe.cq.testing.junit.rules.CQAuthorPublishClassRule;
+import com.adobe.cq.testing.junit.rules.CQRule;
+
+/**
+ * Hammers the coupon servlet on publish with concurrent {@code .coupon.json}
+ * requests and fails when throughput, latency or the share of coupons handed
+ * out twice exceed their budgets. The servlet is reached through a resource of
+ * the game start screen type created for the test. The test seeds a pool of
+ * its own below {@code /content/coupons} with a coupon for every request and
+ * points the lowest reward tier at it, and turns off the per client throttling, which would otherwise
+ * answer almost all of the requests from the one test client with 429. Both
+ * configurations and the pool are deleted again afterwards.
+ * <p>
+ * Load and budgets are read from system properties, see the {@code it.load.*}
+ * properties of the {@code local} profile. Responses telling that the pool is
+ * exhausted are not counted as errors; throttled responses fail the test on
+ * their own, as they mean the throttling configuration did not apply.
+ */
+public class CouponLoadIT {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CouponLoadIT.class);
+
+    private static final String FIXTURE_PATH = "/content/xeragotheme-it/coupon-load";
+
+    // below the only tree the coupon service user may read and the pool service listens to
+    private static final String POOL_PATH = "/content/coupons/xeragotheme-it-load";
+
+    private static final String RESOURCE_TYPE = "xeragotheme/components/smartRushGame/gamestartscreen";
+
+    private static final String THROTTLING_PID = "com.theme.xerago.core.filters.ThrottlingFilter";
+
+    private static final String TIERS_PID = "com.theme.xerago.core.servlets.RandomCouponSelector";
+
+    private static final int WARM_UP_REQUESTS = 100;
+
+    // the servlet answers 404 once the pool of every tier is exhausted
+    private static final int EXHAUSTED = 404;
+
+    private static final int THROTTLED = 429;
+
+    // rounds the console waits for the reconfigured components to come back
+    private static final int CONFIG_WAIT = 10;
+
+    @ClassRule
+    public static final CQAuthorPublishClassRule cqBaseClassRule = new CQAuthorPublishClassRule(true);
+
+    @Rule
+    public CQRule cqBaseRule = new CQRule(cqBaseClassRule.publishRule);
+
+    private static CQClient adminPublish;
+
+    private static OsgiConsoleClient console;
+
+    @BeforeClass
+    public static void beforeClass() throws ClientException, InterruptedException {
+        adminPublish = cqBaseClassRule.publishRule.getAdminClient(CQClient.class);
+        console = adminPublish.adaptTo(OsgiConsoleClient.class);
+        adminPublish.createNode(FIXTURE_PATH, "nt:unstructured");
+        adminPublish.setPropertyString(FIXTURE_PATH, "sling:resourceType", RESOURCE_TYPE, 200);
+        seedPool(WARM_UP_REQUESTS + Integer.getInteger("it.load.requests", 5000));
+
+        console.editConfigurationWithWait(CONFIG_WAIT, THROTTLING_PID, null,
+                Collections.<String, Object>singletonMap("enabled", false));
+        Map<String, Object> tiers = new HashMap<>();
+        tiers.put("tiers", new String[] { "0=" + POOL_PATH });
+        console.editConfigurationWithWait(CONFIG_WAIT, TIERS_PID, null, tiers);
+    }
+
+    @AfterClass
+    public static void afterClass() throws ClientException {
+        console.deleteConfiguration(THROTTLING_PID);
+        console.deleteConfiguration(TIERS_PID);
+        adminPublish.deletePath(FIXTURE_PATH, 200);
+        adminPublish.deletePath(POOL_PATH, 200);
+    }
+
+    /**
+     * Imports a flat pool with the given number of coupons in one request.
+     */
+    private static void seedPool(int coupons) throws ClientException {
+        StringBuilder json = new StringBuilder(32 * coupons).append("{\"jcr:primaryType\":\"nt:unstructured\"");
+        for (int i = 0; i < coupons; i++) {
+            json.append(",\"coupon").append(i).append("\":{\"jcr:primaryType\":\"nt:unstructured\",\"code\":\"IT-LOAD-")
+                    .append(i).append("\"}");
+        }
+        json.append('}');
+        String parent = POOL_PATH.substring(0, POOL_PATH.lastIndexOf('/'));
+        adminPublish.doPost(parent, FormEntityBuilder.create()
+                .addParameter(":operation", "import")
+                .addParameter(":contentType", "json")
+                .addParameter(":name", POOL_PATH.substring(parent.length() + 1))
+                .addParameter(":replace", "true")
+                .addParameter(":content", json.toString())
+                .build(), 200, 201);
+    }
+
+    @Test
+    public void couponsUnderConcurrentLoad() throws Exception {
+        URI uri = adminPublish.getUrl(FIXTURE_PATH + ".coupon.json");
+        String authorization = ConcurrentLoad.basicAuthorization(adminPublish.getUser(), adminPublish.getPassword());
+
+        // one round to warm up the pool snapshot and the JIT, not held against the budgets
+        new ConcurrentLoad(uri, WARM_UP_REQUESTS, 4).withAuthorization(authorization).run();
+        ConcurrentLoad.Result result = new ConcurrentLoad(uri, Integer.getInteger("it.load.requests", 5000),
+                Integer.getInteger("it.load.concurrency", 64)).withAuthorization(authorization).run();
+        LOG.info("Coupon load: {}", result);
+
+        assertEquals("Throttled requests " + result, 0, result.getCount(THROTTLED));
+        assertTrue("No coupon was served " + result, result.getCount(200) > 0);
+        assertTrue("Error rate " + result, result.getErrors(EXHAUSTED)
+                <= budget("it.load.maxErrorRate", 0.001) * result.getRequests());
+        assertTrue("Coupons handed out more than once " + result,
+                result.getDuplicateRate() <= budget("it.load.maxDuplicateRate", 0));
+        assertTrue("Throughput " + result, result.getThroughput() >= budget("it.load.minThroughput", 100));
+        assertTrue("p50 latency " + result, result.getLatencyMillis(50) <= budget("it.load.maxP50Millis", 50));
+        assertTrue("p99 latency " + result, result.getLatencyMillis(99) <= budget("it.load.maxP99Millis", 250));
+        assertTrue("p99.9 latency " + result,
+                result.getLatencyMillis(99.9) <= budget("it.load.maxP999Millis", 1000));
+    }
+
+    private static double budget(String property, double defaultValue) {
+        String value = System.getProperty(property);
+        return value == null || value.trim().isEmpty() ? defaultValue : Double.parseDouble(value.trim());
+    }
+}
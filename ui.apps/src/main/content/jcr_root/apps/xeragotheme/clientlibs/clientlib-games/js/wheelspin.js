@@ -99,6 +99,7 @@ setTimeout(function () {
                 var onSpinEnd = props.onSpinEnd;
                 var onSpinClick = props.onSpinClick;
                 var userEmail = props.userEmail;
+                var spinUrl = props.spinUrl;
 
                 var canvasRef = React.useRef(null);
                 var spinning = useState(false);
@@ -235,41 +236,65 @@ setTimeout(function () {
                         onSpinStart();
                     }
 
-                    var totalRevolutions = minRevolutions + Math.random() * (maxRevolutions - minRevolutions);
-                    var targetSegmentIndex = Math.floor(Math.random() * segments.length);
-                    var segmentAngle = (2 * Math.PI) / segments.length;
-                    var targetSegmentCenterAngle = targetSegmentIndex * segmentAngle + segmentAngle / 2;
-                    var rotationToAlignTarget = ((0 - targetSegmentCenterAngle + 2 * Math.PI) % (2 * Math.PI));
-                    var finalRot = totalRevolutions * 2 * Math.PI + rotationToAlignTarget;
-
-                    var startTime = Date.now();
-                    var animate = function () {
-                        var elapsed = Date.now() - startTime;
-                        var progress = Math.min(elapsed / animationDuration, 1);
-                        var easedProgress = 1 - Math.pow(1 - progress, 4);
-
-                        setRotation(finalRot * easedProgress);
-
-                        if (progress < 1) {
-                            requestAnimationFrame(animate);
-                        } else {
-                            setSpinning(false);
-
-                            // Calculate the actual winning segment based on final rotation
-                            var normalizedRotation = (finalRot % (2 * Math.PI));
-                            var pointerAngle = (2 * Math.PI - normalizedRotation) % (2 * Math.PI);
-                            var segmentSize = (2 * Math.PI) / segments.length;
-                            var winningSegmentIndex = Math.floor(pointerAngle / segmentSize) % segments.length;
-
-                            var result = segments[winningSegmentIndex];
-                            setSpinResult(result);
-                            if (onSpinEnd) {
-                                onSpinEnd(result);
+                    // the server draws the outcome; the wheel is only animated to it
+                    var startSpin = function (targetSegmentIndex, outcome) {
+                        var totalRevolutions = minRevolutions + Math.random() * (maxRevolutions - minRevolutions);
+                        var segmentAngle = (2 * Math.PI) / segments.length;
+                        var targetSegmentCenterAngle = targetSegmentIndex * segmentAngle + segmentAngle / 2;
+                        var rotationToAlignTarget = ((0 - targetSegmentCenterAngle + 2 * Math.PI) % (2 * Math.PI));
+                        var finalRot = totalRevolutions * 2 * Math.PI + rotationToAlignTarget;
+
+                        var startTime = Date.now();
+                        var animate = function () {
+                            var elapsed = Date.now() - startTime;
+                            var progress = Math.min(elapsed / animationDuration, 1);
+                            var easedProgress = 1 - Math.pow(1 - progress, 4);
+
+                            setRotation(finalRot * easedProgress);
+
+                            if (progress < 1) {
+                                requestAnimationFrame(animate);
+                            } else {
+                                setSpinning(false);
+
+                                // Calculate the actual winning segment based on final rotation
+                                var normalizedRotation = (finalRot % (2 * Math.PI));
+                                var pointerAngle = (2 * Math.PI - normalizedRotation) % (2 * Math.PI);
+                                var segmentSize = (2 * Math.PI) / segments.length;
+                                var winningSegmentIndex = Math.floor(pointerAngle / segmentSize) % segments.length;
+
+                                var result = segments[winningSegmentIndex];
+                                if (outcome) {
+                                    result = Object.assign({}, result, { redeemCode: outcome.redeemCode });
+                                }
+                                setSpinResult(result);
+                                if (onSpinEnd) {
+                                    onSpinEnd(result);
+                                }
                             }
-                        }
+                        };
+
+                        requestAnimationFrame(animate);
                     };
 
-                    requestAnimationFrame(animate);
+                    if (!spinUrl) {
+                        startSpin(Math.floor(Math.random() * segments.length));
+                        return;
+                    }
+                    fetch(spinUrl, { credentials: 'same-origin', cache: 'no-store' })
+                        .then(function (response) {
+                            if (!response.ok) {
+                                throw new Error('HTTP ' + response.status);
+                            }
+                            return response.json();
+                        })
+                        .then(function (outcome) {
+                            startSpin(outcome.index % segments.length, outcome);
+                        })
+                        .catch(function (e) {
+                            console.warn('Spin outcome not available:', e);
+                            setSpinning(false);
+                        });
                 };
 
                 return React.createElement('div', {
@@ -372,6 +397,7 @@ setTimeout(function () {
                     config.animationDuration = parseInt(configElement.getAttribute('data-wsg-animation-duration')) || 3000;
                     config.minRevolutions = parseInt(configElement.getAttribute('data-wsg-min-revolutions')) || 3;
                     config.maxRevolutions = parseInt(configElement.getAttribute('data-wsg-max-revolutions')) || 5;
+                    config.spinUrl = configElement.getAttribute('data-wsg-spin-url');
                     console.log('🎮 Configuration loaded:', config);
                 } else {
                     console.warn('⚠️ Configuration element not found, using defaults');
@@ -424,7 +450,6 @@ setTimeout(function () {
                         if (segmentsScript && segmentsScript.textContent) {
                             segments = JSON.parse(segmentsScript.textContent.trim());
                             console.log('🎯 Segments loaded from AEM:', segments);
-                            console.log('🔍 Segments redeem codes check:', segments.map(function (s) { return { text: s.text, redeemCode: s.redeemCode }; }));
                             console.log('🔍 Raw segments data structure:', JSON.stringify(segments, null, 2));
                         }
                     } catch (e) {
@@ -445,7 +470,7 @@ setTimeout(function () {
                     }
                 }
 
-                // Normalize segments to ensure redeem codes are preserved
+                // Normalize segments; redeem codes are not part of them, the spin request returns the one won
                 segments = segments.map(function (segment) {
                     return {
                         text: segment.text || segment.segmentText || 'Prize',
@@ -453,25 +478,10 @@ setTimeout(function () {
                         value: segment.value || segment.segmentValue || '',
                         bgColor: segment.bgColor || segment.segmentBgColor || '',
                         icon: segment.icon || segment.segmentIcon || '',
-                        probability: segment.probability || 0.125,
-                        redeemCode: segment.redeemCode || null
+                        probability: segment.probability || 0.125
                     };
                 });
 
-                // IMMEDIATE FIX: Generate redeem codes if null
-                segments.forEach(function (segment) {
-                    if (!segment.redeemCode || segment.redeemCode.trim() === '') {
-                        var baseCode = segment.text.replace(/[^A-Za-z0-9]/g, '').toUpperCase();
-                        if (baseCode.length > 8) {
-                            baseCode = baseCode.substring(0, 8);
-                        }
-                        segment.redeemCode = "WHEEL" + baseCode + "123";
-                        console.log('🔧 Generated redeem code for:', segment.text, '->', segment.redeemCode);
-                    }
-                });
-
-                console.log('🔍 Segments redeem codes check:', segments.map(function (s) { return { text: s.text, redeemCode: s.redeemCode }; }));
-
                 // Handle ESC key to close modal
                 useEffect(function () {
                     var handleEscape = function (event) {
@@ -781,7 +791,8 @@ setTimeout(function () {
                             onSpinStart: onSpinStart,
                             onSpinEnd: handleSpinEnd,
                             onSpinClick: handleSpinClick,
-                            userEmail: userEmail
+                            userEmail: userEmail,
+                            spinUrl: config.spinUrl
                         })),
 
                         // Prize Reveal Overlay
@@ -2716,7 +2716,8 @@ createCoin(pos, index) {
         // }
         const resourcSelector = document.querySelector('#coupon-generator');
         console.log("resource selector" + resourcSelector);
-        let apiPath = resourcSelector.dataset.path + ".coupon.json";
+        // the score picks the reward tier the coupon is drawn from
+        let apiPath = resourcSelector.dataset.path + ".coupon.json?points=" + encodeURIComponent(points);
         console.log("api Path" + apiPath);
         // Determine the correct API path based on current location
         //let apiPath = `${window.appConfig.apiUrl}/uat-citigame/api/reward.php`;